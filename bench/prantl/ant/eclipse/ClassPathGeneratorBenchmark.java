@@ -0,0 +1,60 @@
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures ClassPathGenerator.generate with synthetic classpaths of libraries and
+ * variables, half of the entries being defined twice, with the binary entries merged
+ * in memory or streamed. The times of the counts ten times apart should grow about ten
+ * times too, as the merge of the entries is linear.
+ * 
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClassPathGeneratorBenchmark {
+
+  @Param({ "100", "5000", "10000", "50000", "100000" })
+  public int entries;
+
+  @Param({ "false", "true" })
+  public boolean streaming;
+
+  private EclipseTask task;
+
+  @Setup
+  public void setUp() {
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i != entries / 2; ++i) {
+      if (i != 0)
+        path.append(File.pathSeparatorChar);
+      path.append("lib/library").append(i).append(".jar");
+    }
+    ClassPathElement classPath = new ClassPathElement();
+    classPath.setStreaming(streaming);
+    classPath.createSource().setPath("src");
+    classPath.createLibrary().setPath(path.toString());
+    classPath.createVariable().setPath(path.toString());
+    classPath.createOutput().setPath("bin");
+    EclipseElement eclipse = new EclipseElement();
+    eclipse.setClassPath(classPath);
+    task = new DiscardingEclipseOutput(eclipse).createTask(new File(System.getProperty("java.io.tmpdir")));
+  }
+
+  @Benchmark
+  public void generate() {
+    new ClassPathGenerator(task).generate();
+  }
+}
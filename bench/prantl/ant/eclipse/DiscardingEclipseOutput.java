@@ -0,0 +1,92 @@
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.tools.ant.Project;
+
+/**
+ * An output of the generated files discarding everything written, so that benchmarks
+ * measure the generators and not the file system.
+ * 
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+class DiscardingEclipseOutput extends EclipseOutput {
+
+  private static final class DiscardingOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+
+  DiscardingEclipseOutput(EclipseElement element) {
+    super(element);
+  }
+
+  /**
+   * Creates a task writing into this output with a project which has no listeners.
+   * 
+   * @param baseDir
+   *        The base directory of the project.
+   * @return The task to pass to a generator.
+   */
+  EclipseTask createTask(File baseDir) {
+    EclipseTask task = new EclipseTask(this);
+    Project project = new Project();
+    project.setBaseDir(baseDir);
+    task.setProject(project);
+    return task;
+  }
+
+  @Override
+  boolean isPreferencesUpToDate(String name) {
+    return false;
+  }
+
+  @Override
+  boolean isProjectUpToDate() {
+    return false;
+  }
+
+  @Override
+  boolean isClassPathUpToDate() {
+    return false;
+  }
+
+  @Override
+  InputStream openPreferences(String name) {
+    return null;
+  }
+
+  @Override
+  InputStream openProject() {
+    return null;
+  }
+
+  @Override
+  InputStream openClassPath() {
+    return null;
+  }
+
+  @Override
+  OutputStream createPreferences(String name) {
+    return new DiscardingOutputStream();
+  }
+
+  @Override
+  OutputStream createProject() {
+    return new DiscardingOutputStream();
+  }
+
+  @Override
+  OutputStream createClassPath() {
+    return new DiscardingOutputStream();
+  }
+}
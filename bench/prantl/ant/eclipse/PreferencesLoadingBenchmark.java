@@ -0,0 +1,52 @@
+package prantl.ant.eclipse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures loading of large preference sets into PreferencesElement, which checks every
+ * variable name for duplicates and validates the whole set afterwards.
+ * 
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreferencesLoadingBenchmark {
+
+  @Param({ "400", "5000" })
+  public int variables;
+
+  @Benchmark
+  public PreferencesElement loadGeneral() {
+    SettingsElement settings = new SettingsElement();
+    GeneralPreferencesElement preferences = settings.createGeneral();
+    preferences.setName("org.example.plugin");
+    for (int i = variables; i != 0; --i) {
+      VariableElement variable = preferences.createVariable();
+      variable.setName("org.example.plugin.option" + i);
+      variable.setValue("value" + i);
+    }
+    preferences.validate();
+    return preferences;
+  }
+
+  @Benchmark
+  public PreferencesElement loadJdtCore() {
+    SettingsElement settings = new SettingsElement();
+    OrgEclipseJdtCorePreferencesElement preferences = settings.createJdtCore();
+    preferences.setCompilerCompliance("5.0");
+    for (int i = variables; i != 0; --i)
+      preferences.internalCreateVariable("org.eclipse.jdt.core.formatter.option" + i, "value" + i);
+    preferences.validate();
+    return preferences;
+  }
+}
@@ -0,0 +1,58 @@
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures SettingsGenerator.generate with large sets of general preferences.
+ * 
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SettingsGeneratorBenchmark {
+
+  private static final int FILES = 4;
+
+  @Param({ "100", "5000" })
+  public int variables;
+
+  @Param({ "false", "true" })
+  public boolean deterministic;
+
+  private EclipseTask task;
+
+  @Setup
+  public void setUp() {
+    SettingsElement settings = new SettingsElement();
+    settings.setDeterministic(deterministic);
+    for (int i = 0; i != FILES; ++i) {
+      GeneralPreferencesElement preferences = settings.createGeneral();
+      preferences.setName("org.example.plugin" + i);
+      for (int j = variables; j != 0; --j) {
+        VariableElement variable = preferences.createVariable();
+        variable.setName("org.example.plugin" + i + ".option" + j);
+        variable.setValue("value" + j);
+      }
+    }
+    EclipseElement eclipse = new EclipseElement();
+    eclipse.setSettings(settings);
+    task = new DiscardingEclipseOutput(eclipse).createTask(new File(System.getProperty("java.io.tmpdir")));
+  }
+
+  @Benchmark
+  public void generate() {
+    new SettingsGenerator(task).generate();
+  }
+}
@@ -0,0 +1,77 @@
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the discovery of source attachments for a thousand libraries, of which the
+ * given percentage has a source archive next to it.
+ * 
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SourceDiscoveryBenchmark {
+
+  private static final int LIBRARIES = 1000;
+
+  @Param({ "0", "50", "100" })
+  public int hitPercentage;
+
+  @Param({ "1", "4" })
+  public int threads;
+
+  private File baseDir;
+
+  private EclipseTask task;
+
+  @Setup
+  public void setUp() throws IOException {
+    baseDir = File.createTempFile("sources", "");
+    if (!baseDir.delete() || !baseDir.mkdir())
+      throw new IOException("Creating " + baseDir + " failed.");
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i != LIBRARIES; ++i) {
+      if (i != 0)
+        path.append(File.pathSeparatorChar);
+      path.append("library").append(i).append(".jar");
+      new File(baseDir, "library" + i + ".jar").createNewFile();
+      if (i * 100 < hitPercentage * LIBRARIES)
+        new File(baseDir, "library" + i + "-sources.jar").createNewFile();
+    }
+    ClassPathElement classPath = new ClassPathElement();
+    ClassPathEntryLibraryElement library = classPath.createLibrary();
+    library.setPath(path.toString());
+    library.setSourcePattern("sources,src");
+    EclipseElement eclipse = new EclipseElement();
+    eclipse.setClassPath(classPath);
+    eclipse.setSourceDiscoveryThreads(threads);
+    task = new DiscardingEclipseOutput(eclipse).createTask(baseDir);
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = baseDir.listFiles();
+    for (int i = 0; i != files.length; ++i)
+      files[i].delete();
+    baseDir.delete();
+  }
+
+  @Benchmark
+  public void generate() {
+    new ClassPathGenerator(task).generate();
+  }
+}
@@ -0,0 +1,77 @@
+package prantl.ant.eclipse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures escaping of attribute values and writing of whole elements by XmlWriter.
+ * 
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class XmlWriterBenchmark {
+
+  private static final String CLEAN = "/usr/share/java/commons-collections-3.2.jar";
+
+  private static final String ESCAPED = "${lib}/<generated> & \"quoted\" 'names'.jar";
+
+  private XmlWriter writer;
+
+  @Setup
+  public void setUp() {
+    writer = new XmlWriter(new OutputStream() {
+
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    });
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    writer.close();
+  }
+
+  @Benchmark
+  public void appendCleanAttribute() throws IOException {
+    writer.appendAttribute("path", CLEAN);
+  }
+
+  @Benchmark
+  public void appendEscapedAttribute() throws IOException {
+    writer.appendAttribute("path", ESCAPED);
+  }
+
+  @Benchmark
+  public void writeTextElement() throws IOException {
+    writer.openElement("nature");
+    writer.writeText("org.eclipse.jdt.core.javanature");
+    writer.closeElement("nature");
+  }
+
+  @Benchmark
+  public void writeClassPathEntry() throws IOException {
+    writer.openOpeningTag("classpathentry");
+    writer.appendAttribute("kind", "lib");
+    writer.appendAttribute("path", CLEAN);
+    writer.appendAttribute("sourcepath", ESCAPED);
+    writer.closeDegeneratedElement();
+  }
+}
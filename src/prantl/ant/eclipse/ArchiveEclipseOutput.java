@@ -0,0 +1,367 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarOutputStream;
+
+/**
+ * Implements the output interface writing the generated files into an archive instead
+ * of the project directory. An archive can be shared by the outputs of more modules,
+ * which place their files under a module directory; the files are collected in memory
+ * and appended to the archive one by one, so that the archive is written sequentially.
+ * The generated files are always written, there is nothing to compare them with.
+ * 
+ * @see EclipseOutput
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+class ArchiveEclipseOutput extends EclipseOutput {
+
+    /**
+     * Writes the entries of a zip or tar archive, the latter optionally compressed by
+     * gzip, depending on the extension of the archive file. It is safe to add entries
+     * from multiple threads.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    static final class Archive {
+
+        private File file;
+
+        private ZipOutputStream zip = null;
+
+        private TarOutputStream tar = null;
+
+        private int entries = 0;
+
+        private boolean closed = false;
+
+        /**
+         * Creates a new archive. Files with the extensions <tt>.tar</tt>,
+         * <tt>.tar.gz</tt> and <tt>.tgz</tt> are written as tar archives, other files as
+         * zip archives.
+         * 
+         * @param file
+         *        The archive file to create.
+         * @throws BuildException
+         *         If the archive file could not be created.
+         * @since Ant-Eclipse 1.0
+         */
+        Archive(File file) {
+            this.file = file;
+            String name = file.getName().toLowerCase();
+            try {
+                File directory = file.getAbsoluteFile().getParentFile();
+                if (!directory.isDirectory() && !directory.mkdirs())
+                    throw new IOException("Creation of the directory \""
+                            + directory.getAbsolutePath() + "\" failed.");
+                OutputStream output = new BufferedOutputStream(new FileOutputStream(file),
+                        65536);
+                if (name.endsWith(".tar.gz") || name.endsWith(".tgz"))
+                    output = new GZIPOutputStream(output, 65536);
+                if (name.endsWith(".tar") || output instanceof GZIPOutputStream) {
+                    tar = new TarOutputStream(output);
+                    tar.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+                } else
+                    zip = new ZipOutputStream(output);
+            } catch (IOException exception) {
+                throw new BuildException("Creation of the archive \"" + file.getAbsolutePath()
+                        + "\" failed.", exception);
+            }
+        }
+
+        /**
+         * Returns the archive file.
+         * 
+         * @return The archive file.
+         * @since Ant-Eclipse 1.0
+         */
+        File getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the count of the entries written into the archive.
+         * 
+         * @return The count of the entries written into the archive.
+         * @since Ant-Eclipse 1.0
+         */
+        synchronized int getEntries() {
+            return entries;
+        }
+
+        /**
+         * Appends a file to the archive.
+         * 
+         * @param name
+         *        The path of the file in the archive, separated by slashes.
+         * @param content
+         *        The buffer with the content of the file.
+         * @param length
+         *        The length of the content in the buffer.
+         * @throws IOException
+         *         If the file could not be written into the archive.
+         * @since Ant-Eclipse 1.0
+         */
+        synchronized void add(String name, byte[] content, int length) throws IOException {
+            if (closed)
+                throw new IOException("The archive \"" + file.getAbsolutePath()
+                        + "\" has been closed.");
+            if (tar != null) {
+                TarEntry entry = new TarEntry(name);
+                entry.setSize(length);
+                tar.putNextEntry(entry);
+                tar.write(content, 0, length);
+                tar.closeEntry();
+            } else {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(content, 0, length);
+                zip.closeEntry();
+            }
+            ++entries;
+        }
+
+        /**
+         * Finishes and closes the archive. Calling the method again has no effect.
+         * 
+         * @throws BuildException
+         *         If the archive could not be finished.
+         * @since Ant-Eclipse 1.0
+         */
+        synchronized void close() {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                if (tar != null)
+                    tar.close();
+                else
+                    zip.close();
+            } catch (IOException exception) {
+                throw new BuildException("Writing the archive \"" + file.getAbsolutePath()
+                        + "\" failed.", exception);
+            }
+        }
+
+    }
+
+    /**
+     * Collects the generated content and appends it to the archive when closed. A
+     * discarded stream appends nothing, so that a failed generation leaves no partial
+     * entry in the archive.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private final class EntryOutputStream extends ByteArrayOutputStream implements
+            EclipseOutput.Discardable {
+
+        private String name;
+
+        private boolean closed = false;
+
+        /**
+         * Creates a new instance of the output stream.
+         * 
+         * @param name
+         *        The path of the generated file relative to the project directory.
+         * @since Ant-Eclipse 1.0
+         */
+        EntryOutputStream(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Appends the collected content to the archive.
+         * 
+         * @throws IOException
+         *         If the file could not be written into the archive.
+         * @see java.io.OutputStream#close()
+         * @since Ant-Eclipse 1.0
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            archive.add(prefix + name, buf, count);
+        }
+
+        /**
+         * Drops the collected content without appending it to the archive.
+         * 
+         * @see EclipseOutput.Discardable#discard()
+         * @since Ant-Eclipse 1.0
+         */
+        public void discard() {
+            closed = true;
+            reset();
+        }
+
+    }
+
+    private Archive archive;
+
+    private String prefix;
+
+    /**
+     * Creates a new instance of the output object.
+     * 
+     * @param element
+     *        An object containing the configuration.
+     * @param object
+     *        The archive to write the generated files into.
+     * @param directory
+     *        The path of the module directory in the archive, separated by slashes, or
+     *        an empty string if the files should be placed in the root of the archive.
+     *        The destination directory of the configuration is appended to it.
+     * @since Ant-Eclipse 1.0
+     */
+    ArchiveEclipseOutput(EclipseElement element, Archive object, String directory) {
+        super(element);
+        archive = object;
+        prefix = appendDirectory(appendDirectory("", directory), element.getDestDir()
+                .getName());
+    }
+
+    /**
+     * Appends a directory to the path of an entry in the archive. Empty paths and the
+     * current directory are skipped.
+     * 
+     * @param prefix
+     *        The path to append to, either empty or ending with a slash.
+     * @param directory
+     *        The directory to append.
+     * @return The extended path, either empty or ending with a slash.
+     * @since Ant-Eclipse 1.0
+     */
+    private static String appendDirectory(String prefix, String directory) {
+        directory = directory.replace(File.separatorChar, '/');
+        if (directory.length() == 0 || directory.equals(".") || directory.equals("./"))
+            return prefix;
+        return prefix + (directory.endsWith("/") ? directory : directory + '/');
+    }
+
+    /**
+     * Returns the archive the generated files are written into.
+     * 
+     * @return The archive the generated files are written into.
+     * @since Ant-Eclipse 1.0
+     */
+    Archive getArchive() {
+        return archive;
+    }
+
+    /**
+     * @see EclipseOutput#isPreferencesUpToDate(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    boolean isPreferencesUpToDate(String name) {
+        return false;
+    }
+
+    /**
+     * @see EclipseOutput#isProjectUpToDate()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    boolean isProjectUpToDate() {
+        return false;
+    }
+
+    /**
+     * @see EclipseOutput#isClassPathUpToDate()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    boolean isClassPathUpToDate() {
+        return false;
+    }
+
+    /**
+     * @see EclipseOutput#openPreferences(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openPreferences(String name) {
+        return null;
+    }
+
+    /**
+     * @see EclipseOutput#openProject()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openProject() {
+        return null;
+    }
+
+    /**
+     * @see EclipseOutput#openClassPath()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openClassPath() {
+        return null;
+    }
+
+    /**
+     * @see EclipseOutput#createPreferences(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createPreferences(String name) {
+        return new EntryOutputStream(".settings/" + name + ".prefs");
+    }
+
+    /**
+     * @see EclipseOutput#createProject()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createProject() {
+        return new EntryOutputStream(".project");
+    }
+
+    /**
+     * @see EclipseOutput#createClassPath()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createClassPath() {
+        return new EntryOutputStream(".classpath");
+    }
+
+}
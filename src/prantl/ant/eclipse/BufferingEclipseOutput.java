@@ -0,0 +1,419 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+
+/**
+ * Implements the output interface collecting all generated files in memory and passing
+ * them to another output object in a single batch when flushed, so that the generation
+ * is not slowed down by the latency of the file system. The files can be written by
+ * more threads. Without the other output object the files are only kept in memory,
+ * which makes a fast output for tests.
+ * 
+ * @see EclipseOutput
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+class BufferingEclipseOutput extends ForwardingEclipseOutput {
+
+    /**
+     * Collects the generated content and stores it among the pending files when closed.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private abstract class BufferingOutputStream extends ByteArrayOutputStream implements
+            Discardable {
+
+        private String name;
+
+        private boolean closed = false;
+
+        /**
+         * Creates a new instance of the output stream.
+         * 
+         * @param name
+         *        The path of the generated file relative to the project directory.
+         * @since Ant-Eclipse 1.0
+         */
+        BufferingOutputStream(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the path of the generated file relative to the project directory.
+         * 
+         * @return The path of the generated file.
+         * @since Ant-Eclipse 1.0
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns a stream to write the collected content into the target output.
+         * 
+         * @return Target stream for the content.
+         * @since Ant-Eclipse 1.0
+         */
+        abstract OutputStream create();
+
+        /**
+         * Writes the collected content into the target output.
+         * 
+         * @throws IOException
+         *         If there was an error writing the target output.
+         * @since Ant-Eclipse 1.0
+         */
+        void writeToTarget() throws IOException {
+            OutputStream output = create();
+            try {
+                writeTo(output);
+            } catch (IOException exception) {
+                EclipseOutput.discard(output);
+                throw exception;
+            }
+            output.close();
+        }
+
+        /**
+         * Stores the collected content among the pending files; a file generated again
+         * replaces the previous content.
+         * 
+         * @see java.io.OutputStream#close()
+         * @since Ant-Eclipse 1.0
+         */
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            synchronized (files) {
+                files.put(name, this);
+            }
+        }
+
+        /**
+         * Drops the collected content; it is not stored among the pending files.
+         * 
+         * @see EclipseOutput.Discardable#discard()
+         * @since Ant-Eclipse 1.0
+         */
+        public void discard() {
+            closed = true;
+        }
+
+    }
+
+    private EclipseTask task;
+
+    private Map<String, BufferingOutputStream> files = new LinkedHashMap<String, BufferingOutputStream>();
+
+    /**
+     * Creates a new instance of the output object.
+     * 
+     * @param parent
+     *        The parent task.
+     * @param object
+     *        An object that the content is written into when flushed or <tt>null</tt>
+     *        if the content should be only kept in memory.
+     * @since Ant-Eclipse 1.0
+     */
+    BufferingEclipseOutput(EclipseTask parent, EclipseOutput object) {
+        super(parent.getEclipse(), object);
+        task = parent;
+    }
+
+    /**
+     * Returns the parent task.
+     * 
+     * @return The parent task.
+     * @since Ant-Eclipse 1.0
+     */
+    EclipseTask getTask() {
+        return task;
+    }
+
+    /**
+     * Returns the count of the files waiting to be written.
+     * 
+     * @return The count of the files waiting to be written.
+     * @since Ant-Eclipse 1.0
+     */
+    int getPendingFiles() {
+        synchronized (files) {
+            return files.size();
+        }
+    }
+
+    /**
+     * Returns the collected content of the specified file.
+     * 
+     * @param name
+     *        The path of the generated file relative to the project directory.
+     * @return The content of the file or <tt>null</tt> if it has not been generated.
+     * @since Ant-Eclipse 1.0
+     */
+    byte[] getContent(String name) {
+        BufferingOutputStream file;
+        synchronized (files) {
+            file = files.get(name);
+        }
+        return file != null ? file.toByteArray() : null;
+    }
+
+    /**
+     * Returns a stream to read the pending content of the file
+     * <tt>.settings/xxx.prefs</tt> or its current content in the target output.
+     * 
+     * @see EclipseOutput#openPreferences(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openPreferences(String name) {
+        InputStream input = open(".settings/" + name + ".prefs");
+        return input != null ? input : super.openPreferences(name);
+    }
+
+    /**
+     * Returns a stream to read the pending content of the file .project or its current
+     * content in the target output.
+     * 
+     * @see EclipseOutput#openProject()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openProject() {
+        InputStream input = open(".project");
+        return input != null ? input : super.openProject();
+    }
+
+    /**
+     * Returns a stream to read the pending content of the file .classpath or its
+     * current content in the target output.
+     * 
+     * @see EclipseOutput#openClassPath()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openClassPath() {
+        InputStream input = open(".classpath");
+        return input != null ? input : super.openClassPath();
+    }
+
+    /**
+     * Returns a stream collecting the content of the file <tt>.settings/xxx.prefs</tt>,
+     * which is written into the target output when flushed.
+     * 
+     * @see EclipseOutput#createPreferences(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createPreferences(final String name) {
+        return new BufferingOutputStream(".settings/" + name + ".prefs") {
+
+            @Override
+            OutputStream create() {
+                return getTarget().createPreferences(name);
+            }
+        };
+    }
+
+    /**
+     * Returns a stream collecting the content of the file .project, which is written
+     * into the target output when flushed.
+     * 
+     * @see EclipseOutput#createProject()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createProject() {
+        return new BufferingOutputStream(".project") {
+
+            @Override
+            OutputStream create() {
+                return getTarget().createProject();
+            }
+        };
+    }
+
+    /**
+     * Returns a stream collecting the content of the file .classpath, which is written
+     * into the target output when flushed.
+     * 
+     * @see EclipseOutput#createClassPath()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createClassPath() {
+        return new BufferingOutputStream(".classpath") {
+
+            @Override
+            OutputStream create() {
+                return getTarget().createClassPath();
+            }
+        };
+    }
+
+    /**
+     * Flushes the pending files, unless the parent task is a part of a workspace
+     * generated in a batch, which flushes the files of all modules at once when they
+     * have been generated.
+     * 
+     * @see EclipseOutput#close()
+     * @see #flush(int)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    void close() {
+        WorkspaceContext workspace = task.getWorkspace();
+        if (workspace != null && workspace.isBatch())
+            workspace.addPendingOutput(this);
+        else
+            flush(getEclipse().getFlushThreads());
+    }
+
+    /**
+     * Writes the pending files into the target output in the order of their generation
+     * and closes the target output. Errors writing the files are collected and
+     * reported together; the target output is closed even then, so that the files
+     * written successfully are committed. Nothing is written if there is no target
+     * output.
+     * 
+     * @param threads
+     *        A positive number of threads writing the files.
+     * @throws BuildException
+     *         If any file could not be written.
+     * @since Ant-Eclipse 1.0
+     */
+    void flush(int threads) {
+        if (getTarget() == null)
+            return;
+        List<BufferingOutputStream> pending;
+        synchronized (files) {
+            pending = new ArrayList<BufferingOutputStream>(files.values());
+            files.clear();
+        }
+        long start = System.currentTimeMillis();
+        List<BuildException> errors = new ArrayList<BuildException>();
+        int count = Math.max(1, Math.min(threads, pending.size()));
+        if (count == 1)
+            for (Iterator<BufferingOutputStream> iterator = pending.iterator(); iterator
+                    .hasNext();) {
+                BuildException error = flushFile(iterator.next());
+                if (error != null)
+                    errors.add(error);
+            }
+        else
+            flushFiles(pending, count, errors);
+        task.log("Flushed " + (pending.size() - errors.size()) + " of " + pending.size()
+                + " generated files in " + (System.currentTimeMillis() - start) + " ms.",
+                Project.MSG_VERBOSE);
+        BuildException failure = null;
+        if (errors.size() == 1)
+            failure = errors.get(0);
+        else if (errors.size() > 1) {
+            StringBuffer message = new StringBuffer("Writing the files failed with ");
+            message.append(errors.size()).append(" errors:");
+            for (int i = 0, size = errors.size(); i != size; ++i)
+                message.append(' ').append(errors.get(i).getMessage());
+            failure = new BuildException(message.toString(), errors.get(0));
+        }
+        try {
+            getTarget().close();
+        } catch (BuildException exception) {
+            if (failure == null)
+                throw exception;
+            // the failure of the files is reported instead
+            task.log(exception.getMessage(), Project.MSG_ERR);
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private InputStream open(String name) {
+        byte[] content = getContent(name);
+        return content != null ? new ByteArrayInputStream(content) : null;
+    }
+
+    private BuildException flushFile(BufferingOutputStream file) {
+        try {
+            file.writeToTarget();
+            return null;
+        } catch (IOException exception) {
+            return new BuildException("Writing the file \"" + file.getName()
+                    + "\" failed.", exception);
+        } catch (BuildException exception) {
+            return exception;
+        }
+    }
+
+    private void flushFiles(List<BufferingOutputStream> pending, int count,
+            List<BuildException> errors) {
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<BuildException>> results = new ArrayList<Future<BuildException>>(
+                    pending.size());
+            for (Iterator<BufferingOutputStream> iterator = pending.iterator(); iterator
+                    .hasNext();) {
+                final BufferingOutputStream file = iterator.next();
+                results.add(executor.submit(new Callable<BuildException>() {
+
+                    public BuildException call() {
+                        return flushFile(file);
+                    }
+                }));
+            }
+            // the errors are collected in the order of the generation
+            for (int i = 0, size = results.size(); i != size; ++i)
+                try {
+                    BuildException error = results.get(i).get();
+                    if (error != null)
+                        errors.add(error);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new BuildException("Writing the files was interrupted.", exception);
+                } catch (ExecutionException exception) {
+                    errors.add(new BuildException(exception.getCause()));
+                }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
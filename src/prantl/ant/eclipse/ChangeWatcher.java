@@ -0,0 +1,148 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Watches files and directories for changes by polling their stamps. Every watched file
+ * is registered with the kinds of the generated files which depend on it; polling
+ * returns the kinds affected by the changes since the previous poll. The stamp of a
+ * file consists of its time of the last modification and its size, the stamp of a
+ * directory of its time of the last modification and the count of its entries, so that
+ * adding or removing a file is noticed even if the time did not change.
+ * 
+ * @see EclipseTask#setWatch(boolean)
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class ChangeWatcher {
+
+    /**
+     * The file .project depends on the watched file.
+     */
+    static final int PROJECT = 1;
+
+    /**
+     * The file .classpath depends on the watched file.
+     */
+    static final int CLASS_PATH = 2;
+
+    /**
+     * The files <tt>.settings/xxx.prefs</tt> depend on the watched file.
+     */
+    static final int SETTINGS = 4;
+
+    /**
+     * The configuration itself depends on the watched file.
+     */
+    static final int CONFIGURATION = 8;
+
+    /**
+     * All generated files depend on the watched file.
+     */
+    static final int ALL = PROJECT | CLASS_PATH | SETTINGS;
+
+    private static final class Watch {
+
+        int kinds;
+
+        long stamp;
+
+    }
+
+    private Map<File, Watch> watches = new LinkedHashMap<File, Watch>();
+
+    /**
+     * Creates a new watcher with no files to watch.
+     * 
+     * @since Ant-Eclipse 1.0
+     */
+    ChangeWatcher() {
+    }
+
+    /**
+     * Starts watching a file or a directory. Watching a file again adds the kinds to the
+     * previous ones.
+     * 
+     * @param file
+     *        The file or directory to watch; it does not need to exist.
+     * @param kinds
+     *        The kinds of the generated files which depend on the file.
+     * @since Ant-Eclipse 1.0
+     */
+    void watch(File file, int kinds) {
+        file = file.getAbsoluteFile();
+        Watch watch = watches.get(file);
+        if (watch == null) {
+            watch = new Watch();
+            watch.stamp = getStamp(file);
+            watches.put(file, watch);
+        }
+        watch.kinds |= kinds;
+    }
+
+    /**
+     * Returns the count of the watched files and directories.
+     * 
+     * @return The count of the watched files and directories.
+     * @since Ant-Eclipse 1.0
+     */
+    int getWatchedFiles() {
+        return watches.size();
+    }
+
+    /**
+     * Checks the watched files for changes since the previous check.
+     * 
+     * @return The kinds of the generated files affected by the changes or zero if
+     *         nothing changed.
+     * @since Ant-Eclipse 1.0
+     */
+    int poll() {
+        int kinds = 0;
+        for (Iterator<Map.Entry<File, Watch>> entries = watches.entrySet().iterator(); entries
+                .hasNext();) {
+            Map.Entry<File, Watch> entry = entries.next();
+            Watch watch = entry.getValue();
+            long stamp = getStamp(entry.getKey());
+            if (stamp != watch.stamp) {
+                watch.stamp = stamp;
+                kinds |= watch.kinds;
+            }
+        }
+        return kinds;
+    }
+
+    private static long getStamp(File file) {
+        long modified = file.lastModified();
+        if (modified == 0)
+            return -1;
+        if (file.isDirectory()) {
+            String[] names = file.list();
+            return modified * 31 + (names != null ? names.length : 0);
+        }
+        return modified * 31 + file.length();
+    }
+
+}
@@ -43,6 +43,8 @@ public class ClassPathElement {
 
     private ClassPathEntryOutputElement output = null;
 
+    private boolean streaming = false;
+
     /**
      * Creates a new instance of the classpath element.
      * 
@@ -51,6 +53,32 @@ public class ClassPathElement {
     public ClassPathElement() {
     }
 
+    /**
+     * Returns if the binary entries are written while their paths are iterated (not by
+     * default).
+     * 
+     * @return <tt>True</tt> if the binary entries are written as they are produced.
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Sets if the binary entries are written while their paths are iterated, instead of
+     * copying the paths into arrays and merging the entries first. Only the positions
+     * of the paths defined by more elements are kept, which resolves the paths of more
+     * elements twice. It saves memory with very large paths at the cost of time; the
+     * output is the same, only the sources are discovered serially, ignoring the
+     * attribute "sourcediscoverythreads" of the task.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the binary entries should be written as they are produced.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setStreaming(boolean flag) {
+        streaming = flag;
+    }
+
     /**
      * Returns a list of instances of the class ClassPathEntrySourceElement describing
      * elements <tt>classpathentry</tt> of the kind "src" in the file .classpath. If it
@@ -19,18 +19,27 @@
 
 package prantl.ant.eclipse;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.Path;
 import org.apache.tools.ant.types.Reference;
+import org.apache.tools.ant.util.FileUtils;
 
 /**
  * Provides the functionality generating the file <tt>.classpath</tt> for the
@@ -45,10 +54,12 @@ final class ClassPathGenerator {
   /**
    * Contains a ready-to write information about a binary classpath entry -
    * element kinds "lib" or "var". Fields of this class match attributes of the
-   * element <tt>classpath</tt>.
+   * element <tt>classpath</tt>, except for <tt>source</tt> and
+   * <tt>sourcePattern</tt>, which are the input of the source discovery
+   * resolving <tt>sourcepath</tt>.
    * 
    * @see ClassPathGenerator#writeProcessedBinaryClassPathEntries(XmlWriter,
-   *      String, Vector)
+   *      LinkedHashMap)
    * @since Ant-Eclipse 1.0
    * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
    */
@@ -59,11 +70,23 @@ final class ClassPathGenerator {
     boolean exported;
     String sourcepath;
     String javadoc_location;
+    String source;
+    String sourcePattern;
 
   }
 
   private EclipseTask task;
 
+  private DirectoryIndex sourceIndex;
+
+  private SourceDiscoveryCache sourceCache = null;
+
+  private PhaseTimer timer;
+
+  private int entryCount = 0;
+
+  private int sourceCount = 0;
+
   /**
    * Creates a new instance of the generating object.
    * 
@@ -73,10 +96,18 @@ final class ClassPathGenerator {
    */
   ClassPathGenerator(EclipseTask parent) {
     task = parent;
+    timer = parent.getTimer();
+    // modules of a workspace share the listings of the library directories
+    WorkspaceContext workspace = parent.getWorkspace();
+    sourceIndex = workspace != null ? workspace.getDirectoryIndex() : new DirectoryIndex();
   }
 
   /**
-   * Generates the file <tt>.classpath</tt> using the supplied output object.
+   * Generates the file <tt>.classpath</tt> using the supplied output object. The
+   * entries are resolved first; if the fingerprint check is used, the fingerprint of
+   * the resolved entries and of the stamps of the directories the sources are
+   * discovered in is compared with the stored one and the sources are discovered and
+   * the file is written only if they differ.
    * 
    * @since Ant-Eclipse 1.0
    */
@@ -87,40 +118,228 @@ final class ClassPathGenerator {
       return;
     }
     EclipseOutput output = task.getOutput();
-    if (output.isClassPathUpToDate()) {
+    boolean fingerprint = task.getEclipse().isFingerprintCheck();
+    if (!fingerprint && output.isClassPathUpToDate()) {
       task.log("The classpath definition is up-to-date.", Project.MSG_WARN);
       return;
     }
-    task.log("Writing the classpath definition.");
+    if (!fingerprint)
+      task.log("Writing the classpath definition.");
+    if (classPath.isStreaming() && task.getEclipse().getSourceDiscoveryThreads() > 1)
+      task.log("The sources of a streamed classpath are discovered serially, the attribute \"sourcediscoverythreads\" is ignored.", Project.MSG_WARN);
+    checkClassPathEntries(classPath);
+    String container = resolveContainerClassPathEntry();
+    Vector<String[]> sources = resolveSourceClassPathEntries();
+    Vector<ClassPathEntryBinaryElement> binaries = new Vector<ClassPathEntryBinaryElement>(classPath.getVariables());
+    binaries.addAll(classPath.getLibraries());
+    boolean streaming = classPath.isStreaming();
+    // streamed paths are iterated again when written, only the last definitions are kept
+    String[][] paths = null;
+    Path[] streamedPaths = null;
+    HashMap<String, Integer> lastDefinitions = null;
+    if (streaming) {
+      streamedPaths = createBinaryPaths(binaries);
+      if (binaries.size() > 1)
+        lastDefinitions = new HashMap<String, Integer>();
+    } else
+      paths = listBinaryPaths(binaries);
+    String outputPath = resolveOutputClassPathEntry();
+    String value = null;
+    if (!fingerprint) {
+      if (lastDefinitions != null)
+        collectLastDefinitions(streamedPaths, lastDefinitions);
+    } else {
+      value = computeFingerprint(container, sources, binaries, paths, streamedPaths, lastDefinitions, outputPath);
+      if (value.equals(output.getFingerprint(".classpath"))) {
+        task.log("The classpath definition is up-to-date.", Project.MSG_WARN);
+        return;
+      }
+      task.log("Writing the classpath definition.");
+    }
+    loadSourceCache();
+    OutputStream stream = null;
     XmlWriter writer = null;
+    boolean written = false;
+    long rendering = timer.start();
     try {
-      writer = new XmlWriter(new OutputStreamWriter(new BufferedOutputStream(output.createClassPath()), "UTF-8"));
+      stream = output.createClassPath();
+      writer = new XmlWriter(stream);
       writer.writeXmlDeclaration("UTF-8");
       writer.openElement("classpath");
-      checkClassPathEntries(classPath);
-      generateContainerClassPathEntry(writer);
-      generateSourceClassPathEntries(writer);
-      Vector<ProcessedBinaryClassPathEntry> entries = new Vector<ProcessedBinaryClassPathEntry>();
-      processVariableClassPathEntries(entries, classPath.getVariables());
-      processLibraryClassPathEntries(entries, classPath.getLibraries());
-      writeProcessedBinaryClassPathEntries(writer, entries);
-      generateOutputClassPathEntry(writer);
+      writeContainerClassPathEntry(writer, container);
+      writeSourceClassPathEntries(writer, sources);
+      if (streaming)
+        generateStreamedBinaryClassPathEntries(writer, binaries, streamedPaths, lastDefinitions);
+      else {
+        // indexed by the path; the last definition wins but the first position is kept
+        LinkedHashMap<String, ProcessedBinaryClassPathEntry> entries = new LinkedHashMap<String, ProcessedBinaryClassPathEntry>();
+        for (int i = 0, size = binaries.size(); i != size; ++i)
+          processBinaryClassPathEntries(entries, binaries.get(i), paths[i]);
+        long start = timer.start();
+        discoverSources(entries);
+        timer.stop(PhaseTimer.DISCOVERY, start);
+        writeProcessedBinaryClassPathEntries(writer, entries);
+      }
+      writeOutputClassPathEntry(writer, outputPath);
       writer.closeElement("classpath");
-    } catch (UnsupportedEncodingException exception) {
-      throw new BuildException("Encoder to UTF-8 is not supported.", exception);
+      writer.flush();
+      written = true;
     } catch (IOException exception) {
       throw new BuildException("Writing the classpath definition failed.", exception);
     } finally {
-      if (writer != null)
+      timer.stop(PhaseTimer.RENDERING, rendering);
+      // an incomplete file does not replace the previous one
+      if (!written) {
+        if (stream != null)
+          EclipseOutput.discard(stream);
+      } else
         try {
           writer.close();
         } catch (IOException exception1) {
           throw new BuildException("Closing the classpath definition failed.", exception1);
         }
+      saveSourceCache();
+      timer.count(PhaseTimer.ENTRIES, entryCount);
+      timer.count(PhaseTimer.SOURCES, sourceCount);
+    }
+    if (value != null)
+      output.setFingerprint(".classpath", value);
+  }
+
+  /**
+   * Registers the directories of the binary classpath entries with the watcher, so
+   * that adding or removing a library in them generates the file <tt>.classpath</tt>
+   * again.
+   * 
+   * @param watcher
+   *          The watcher of the files the configuration refers to.
+   * @since Ant-Eclipse 1.0
+   */
+  void watch(ChangeWatcher watcher) {
+    ClassPathElement classPath = task.getEclipse().getClassPath();
+    if (classPath == null)
+      return;
+    watchBinaryPaths(watcher, classPath.getVariables());
+    watchBinaryPaths(watcher, classPath.getLibraries());
+  }
+
+  /**
+   * Forgets the resolved paths the classpath entries refer to, so that they are
+   * resolved again by the next generation, even if the stamps of their directories
+   * have not changed yet. The paths referred by other projects are kept.
+   * 
+   * @since Ant-Eclipse 1.0
+   */
+  void forgetResolvedPaths() {
+    ClassPathElement classPath = task.getEclipse().getClassPath();
+    if (classPath == null)
+      return;
+    forgetResolvedPaths(classPath.getSources());
+    forgetResolvedPaths(classPath.getVariables());
+    forgetResolvedPaths(classPath.getLibraries());
+  }
+
+  private void forgetResolvedPaths(Vector<? extends ClassPathEntryPathElement> entries) {
+    for (int i = 0, size = entries.size(); i != size; ++i) {
+      Reference reference = entries.get(i).getPathRef();
+      if (reference != null)
+        try {
+          ResolvedPathCache.forget(reference, task.getProject());
+        } catch (BuildException exception) {
+          // the error is reported by the generation
+        }
+    }
+  }
+
+  private void watchBinaryPaths(ChangeWatcher watcher, Vector<? extends ClassPathEntryBinaryElement> binaries) {
+    File baseDir = task.getProject().getBaseDir();
+    for (int i = 0, size = binaries.size(); i != size; ++i) {
+      String[] items;
+      try {
+        items = listBinaryPath(binaries.get(i));
+      } catch (BuildException exception) {
+        // the error is reported by the generation
+        continue;
+      }
+      for (int j = 0; j != items.length; ++j) {
+        File directory = FileUtils.getFileUtils().resolveFile(baseDir, items[j]).getParentFile();
+        if (directory != null)
+          watcher.watch(directory, ChangeWatcher.CLASS_PATH);
+      }
+    }
+  }
+
+  /**
+   * Computes the fingerprint of the resolved classpath entries. The discovered sources
+   * depend only on the names of the files next to the binaries, which cannot change
+   * without the time of the last modification of their directory, so that the stamps
+   * of the directories are added instead of discovering the sources. If the listed
+   * paths of the binary elements are not supplied, their streamed paths are iterated
+   * and hashed one by one, collecting the positions of their last definitions on the
+   * way.
+   */
+  private String computeFingerprint(String container, Vector<String[]> sources, Vector<ClassPathEntryBinaryElement> binaries, String[][] paths, Path[] streamedPaths, HashMap<String, Integer> lastDefinitions, String outputPath) {
+    Fingerprint fingerprint = new Fingerprint();
+    File baseDir = task.getProject().getBaseDir();
+    String baseDirectory = baseDir.getAbsolutePath();
+    fingerprint.add(baseDir.getAbsolutePath()).add(container).add(sources.size());
+    for (int i = 0, size = sources.size(); i != size; ++i) {
+      String[] source = sources.get(i);
+      fingerprint.add(source[0]).add(source[1]).add(source[2]);
+    }
+    fingerprint.add(binaries.size());
+    Set<File> directories = new LinkedHashSet<File>();
+    for (int i = 0, size = binaries.size(); i != size; ++i) {
+      ClassPathEntryBinaryElement entry = binaries.get(i);
+      String sourcePattern = entry.getSourcePattern();
+      boolean discovered = entry.getSource() == null && sourcePattern != null && sourcePattern.trim().length() != 0;
+      Iterator<?> resources = paths != null ? null : iterateBinaryPath(streamedPaths[i]);
+      int count = paths != null ? paths[i].length : streamedPaths[i].size();
+      fingerprint.add(getKind(entry)).add(entry.getExported()).add(entry.getSource()).add(sourcePattern).add(entry.getJavadoc()).add(count);
+      Integer definition = Integer.valueOf(i);
+      for (int j = 0; j != count; ++j) {
+        String item = paths != null ? paths[i][j] : cutBaseDirectory(resources.next().toString(), baseDirectory);
+        fingerprint.add(item);
+        if (lastDefinitions != null)
+          lastDefinitions.put(item, definition);
+        if (discovered) {
+          File directory = FileUtils.getFileUtils().resolveFile(baseDir, item).getParentFile();
+          if (directory != null)
+            directories.add(directory);
+        }
+      }
+    }
+    fingerprint.add(directories.size());
+    for (Iterator<File> iterator = directories.iterator(); iterator.hasNext();) {
+      File directory = iterator.next();
+      fingerprint.add(directory.getPath()).add(directory.lastModified());
+    }
+    return fingerprint.add(outputPath).getValue();
+  }
+
+  private void loadSourceCache() {
+    File file = task.getEclipse().getSourceCache();
+    if (file == null)
+      return;
+    try {
+      sourceCache = SourceDiscoveryCache.getInstance(file);
+    } catch (IOException exception) {
+      task.log("Reading the source discovery cache \"" + file.getAbsolutePath() + "\" failed, sources will be discovered without it: " + exception.getMessage(), Project.MSG_WARN);
+    }
+  }
+
+  private void saveSourceCache() {
+    if (sourceCache == null)
+      return;
+    try {
+      if (sourceCache.save())
+        task.log("Saved the source discovery cache \"" + sourceCache.getFile().getAbsolutePath() + "\".", Project.MSG_VERBOSE);
+    } catch (IOException exception) {
+      task.log("Writing the source discovery cache \"" + sourceCache.getFile().getAbsolutePath() + "\" failed: " + exception.getMessage(), Project.MSG_WARN);
     }
   }
 
-  private void generateContainerClassPathEntry(XmlWriter writer) throws IOException {
+  private String resolveContainerClassPathEntry() {
     ClassPathEntryContainerElement container = task.getEclipse().getClassPath().getContainer();
     if (container == null) {
       task.log("No container found, a default one added.", Project.MSG_VERBOSE);
@@ -132,12 +351,21 @@ final class ClassPathGenerator {
       task.log("Prepending the container class name to the container path \"" + path + "\".", Project.MSG_VERBOSE);
       path = "org.eclipse.jdt.launching.JRE_CONTAINER/org.eclipse.jdt.internal.debug.ui.launcher.StandardVMType/" + path;
     }
+    return path;
+  }
+
+  private void writeContainerClassPathEntry(XmlWriter writer, String path) throws IOException {
     task.log("Adding container \"" + path + "\".", Project.MSG_VERBOSE);
     openClassPathEntry(writer, "con", path);
     writer.closeDegeneratedElement();
   }
 
-  private void generateSourceClassPathEntries(XmlWriter writer) throws IOException {
+  /**
+   * Resolves the source entries to the paths with their exclusion patterns and output
+   * directories.
+   */
+  private Vector<String[]> resolveSourceClassPathEntries() {
+    Vector<String[]> sources = new Vector<String[]>();
     Vector<ClassPathEntrySourceElement> entries = task.getEclipse().getClassPath().getSources();
     if (entries.size() == 0) {
       task.log("No source found, the current directory added.", Project.MSG_VERBOSE);
@@ -148,82 +376,210 @@ final class ClassPathGenerator {
       entry.validate();
       String excluding = entry.getExcluding();
       String output = entry.getOutput();
-      Path path = new Path(task.getProject());
       Reference reference = entry.getPathRef();
-      String[] items = path.list();
-      if (reference != null) {
-        path.setRefid(reference);
-        items = path.list();
-      } else {
+      String[] items;
+      if (reference != null)
+        items = listPath(reference);
+      else {
         String value = entry.getPath();
         if (value.length() == 0)
           task.log("Using the current directory as a default source path.", Project.MSG_VERBOSE);
         items = new String[] { value };
       }
       String baseDirectory = task.getProject().getBaseDir().getAbsolutePath();
-      for (int j = 0; j != items.length; ++j) {
-        String item = cutBaseDirectory(items[j], baseDirectory);
-        task.log("Adding sources from \"" + item + "\".", Project.MSG_VERBOSE);
-        openClassPathEntry(writer, "src", item);
-        if (excluding != null)
-          writer.appendAttribute("excluding", excluding);
-        if (output != null)
-          writer.appendAttribute("output", output);
-        writer.closeDegeneratedElement();
-      }
+      for (int j = 0; j != items.length; ++j)
+        sources.addElement(new String[] { cutBaseDirectory(items[j], baseDirectory), excluding, output });
     }
+    return sources;
   }
 
-  private void processVariableClassPathEntries(Vector<ProcessedBinaryClassPathEntry> entries, Vector<ClassPathEntryVariableElement> paths) {
-    processBinaryClassPathEntries(entries, "var", paths);
+  private void writeSourceClassPathEntries(XmlWriter writer, Vector<String[]> sources) throws IOException {
+    for (int i = 0, size = sources.size(); i != size; ++i) {
+      String[] source = sources.get(i);
+      task.log("Adding sources from \"" + source[0] + "\".", Project.MSG_VERBOSE);
+      openClassPathEntry(writer, "src", source[0]);
+      if (source[1] != null)
+        writer.appendAttribute("excluding", source[1]);
+      if (source[2] != null)
+        writer.appendAttribute("output", source[2]);
+      writer.closeDegeneratedElement();
+    }
   }
 
-  private void processLibraryClassPathEntries(Vector<ProcessedBinaryClassPathEntry> entries, Vector<ClassPathEntryLibraryElement> paths) {
-    processBinaryClassPathEntries(entries, "lib", paths);
+  /**
+   * Validates and lists the binary elements. The paths are cut by the base directory
+   * and the listed arrays are copied, because they may be shared by the cache of the
+   * resolved paths.
+   */
+  private String[][] listBinaryPaths(Vector<ClassPathEntryBinaryElement> binaries) {
+    String baseDirectory = task.getProject().getBaseDir().getAbsolutePath();
+    String[][] paths = new String[binaries.size()][];
+    for (int i = 0, size = binaries.size(); i != size; ++i) {
+      ClassPathEntryBinaryElement entry = binaries.get(i);
+      entry.validate();
+      String[] items = listBinaryPath(entry);
+      paths[i] = new String[items.length];
+      for (int j = 0; j != items.length; ++j)
+        paths[i][j] = cutBaseDirectory(items[j], baseDirectory);
+    }
+    return paths;
   }
 
-  private void processBinaryClassPathEntries(Vector<ProcessedBinaryClassPathEntry> entries, String kind, Vector<? extends ClassPathEntryBinaryElement> binaries) {
+  /**
+   * Validates the streamed binary elements and creates their paths. The paths are
+   * iterated as resource collections, which does not copy their items into arrays; a
+   * literal path is parsed only once, but the file sets of a path are scanned again
+   * whenever it is iterated.
+   */
+  private Path[] createBinaryPaths(Vector<ClassPathEntryBinaryElement> binaries) {
+    Path[] paths = new Path[binaries.size()];
     for (int i = 0, size = binaries.size(); i != size; ++i) {
       ClassPathEntryBinaryElement entry = binaries.get(i);
       entry.validate();
+      long start = timer.start();
       Path path = new Path(task.getProject());
       Reference reference = entry.getPathRef();
       if (reference != null)
         path.setRefid(reference);
-      else {
-        String value = entry.getPath();
-        path.setPath(value);
-      }
-      processBinaryClassPathEntries(entries, kind, entry.getExported(), entry.getSource(), entry.getSourcePattern(), entry.getJavadoc(), path.list());
+      else
+        path.setPath(entry.getPath());
+      timer.stop(PhaseTimer.RESOLUTION, start);
+      paths[i] = path;
     }
+    return paths;
   }
 
-  private void processBinaryClassPathEntries(Vector<ProcessedBinaryClassPathEntry> entries, String kind, boolean exported, String source, String sourcePattern,
-      String javadoc_location, String[] items) {
+  private Iterator<?> iterateBinaryPath(Path path) {
+    long start = timer.start();
+    try {
+      return path.iterator();
+    } finally {
+      timer.stop(PhaseTimer.RESOLUTION, start);
+    }
+  }
+
+  /**
+   * Collects the positions of the last definitions of the paths of the streamed binary
+   * elements. Only the paths are kept; the paths are iterated, not listed.
+   */
+  private void collectLastDefinitions(Path[] paths, HashMap<String, Integer> lastDefinitions) {
     String baseDirectory = task.getProject().getBaseDir().getAbsolutePath();
+    for (int i = 0; i != paths.length; ++i) {
+      Integer definition = Integer.valueOf(i);
+      for (Iterator<?> resources = iterateBinaryPath(paths[i]); resources.hasNext();)
+        lastDefinitions.put(cutBaseDirectory(resources.next().toString(), baseDirectory), definition);
+    }
+  }
+
+  private static String getKind(ClassPathEntryBinaryElement entry) {
+    return entry instanceof ClassPathEntryVariableElement ? "var" : "lib";
+  }
+
+  private String[] listBinaryPath(ClassPathEntryBinaryElement entry) {
+    Reference reference = entry.getPathRef();
+    if (reference != null)
+      return listPath(reference);
+    long start = timer.start();
+    try {
+      Path path = new Path(task.getProject());
+      path.setPath(entry.getPath());
+      return path.list();
+    } finally {
+      timer.stop(PhaseTimer.RESOLUTION, start);
+    }
+  }
+
+  private String[] listPath(Reference reference) {
+    long start = timer.start();
+    try {
+      // a path shared by more projects is resolved only once
+      return ResolvedPathCache.list(reference, task.getProject());
+    } finally {
+      timer.stop(PhaseTimer.RESOLUTION, start);
+    }
+  }
+
+  private void processBinaryClassPathEntries(LinkedHashMap<String, ProcessedBinaryClassPathEntry> entries, ClassPathEntryBinaryElement entry, String[] items) {
+    String kind = getKind(entry);
+    boolean exported = entry.getExported();
+    String source = entry.getSource();
+    String sourcePattern = entry.getSourcePattern();
+    String javadoc_location = entry.getJavadoc();
     for (int j = 0; j != items.length; ++j) {
-      String item = cutBaseDirectory(items[j], baseDirectory);
-      ProcessedBinaryClassPathEntry element = getProcessedBinaryClassPathEntry(entries, item);
+      String item = items[j];
+      ProcessedBinaryClassPathEntry element = entries.get(item);
       if (element == null) {
         task.log("Processing binary dependency \"" + item + "\" of the kind \"" + kind + "\".", Project.MSG_VERBOSE);
         element = new ProcessedBinaryClassPathEntry();
         element.kind = kind;
         element.path = item;
         element.exported = exported;
-        element.sourcepath = discoverSource(baseDirectory, item, sourcePattern, source);
+        element.source = source;
+        element.sourcePattern = sourcePattern;
         element.javadoc_location = javadoc_location;
-        entries.addElement(element);
+        entries.put(item, element);
       } else {
         task.log("Updating binary dependency \"" + item + "\" of the kind \"" + kind + "\".", Project.MSG_VERBOSE);
         element.kind = kind;
         element.path = item;
         element.exported = exported;
-        element.sourcepath = discoverSource(baseDirectory, item, sourcePattern, source);
+        element.source = source;
+        element.sourcePattern = sourcePattern;
         element.javadoc_location = javadoc_location;
       }
     }
   }
 
+  /**
+   * Resolves the source attachments of all merged binary entries. The
+   * discovery runs either serially or on a bounded pool of threads if
+   * configured so; the results are assigned in the order of the entries, so
+   * that the output does not depend on the way they were obtained.
+   * 
+   * @param entries
+   *          The merged binary entries to discover the sources for.
+   * @since Ant-Eclipse 1.0
+   */
+  private void discoverSources(LinkedHashMap<String, ProcessedBinaryClassPathEntry> entries) {
+    final String baseDirectory = task.getProject().getBaseDir().getAbsolutePath();
+    int threads = Math.min(task.getEclipse().getSourceDiscoveryThreads(), entries.size());
+    if (threads <= 1) {
+      for (ProcessedBinaryClassPathEntry element : entries.values())
+        element.sourcepath = discoverSource(baseDirectory, element.path, element.sourcePattern, element.source);
+      return;
+    }
+    task.log("Discovering sources of " + entries.size() + " binary dependencies using " + threads + " threads.", Project.MSG_VERBOSE);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      Vector<Future<String>> results = new Vector<Future<String>>(entries.size());
+      for (final ProcessedBinaryClassPathEntry element : entries.values())
+        results.addElement(executor.submit(new Callable<String>() {
+
+          public String call() {
+            return discoverSource(baseDirectory, element.path, element.sourcePattern, element.source);
+          }
+        }));
+      int i = 0;
+      for (ProcessedBinaryClassPathEntry element : entries.values())
+        element.sourcepath = getDiscoveredSource(results.get(i++));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String getDiscoveredSource(Future<String> result) {
+    try {
+      return result.get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new BuildException("The source discovery was interrupted.", exception);
+    } catch (ExecutionException exception) {
+      if (exception.getCause() instanceof BuildException)
+        throw (BuildException) exception.getCause();
+      throw new BuildException("The source discovery failed.", exception.getCause());
+    }
+  }
+
   private String discoverSource(String baseDirectory, String item, String sourcePattern, String source) {
     if (source != null) {
       task.log(String.format("Skipping source discovery as source was set (%s) so using it", source), Project.MSG_VERBOSE);
@@ -237,38 +593,56 @@ final class ClassPathGenerator {
       task.log(String.format("Skipping source discovery as item was null"), Project.MSG_VERBOSE);
       return null;
     }
-    File baseDir = new File(baseDirectory);
-    if (!baseDir.canRead()) {
-      task.log(String.format("Skipping source discovery as I can't read baseDirectory (%s)", baseDir.getAbsolutePath()), Project.MSG_VERBOSE);
+    if (sourcePattern == null || sourcePattern.trim().length() < 1) {
+      task.log(String.format("Skipping source discovery as sourcePattern is blank"), Project.MSG_VERBOSE);
       return null;
     }
-    if (!baseDir.isDirectory()) {
-      task.log(String.format("Skipping source discovery as baseDirectory (%s) is not a dir", baseDir.getAbsolutePath()), Project.MSG_VERBOSE);
-      return null;
+    File baseDir = new File(baseDirectory);
+    // items outside the base directory are left absolute
+    File itemFile = FileUtils.getFileUtils().resolveFile(baseDir, item);
+    String suffix = sourceCache == null ? null : sourceCache.lookup(itemFile, sourcePattern);
+    if (suffix != null)
+      task.log(String.format("Using the cached source discovery result for item %s", item), Project.MSG_DEBUG);
+    else {
+      if (!sourceIndex.isDirectory(baseDir)) {
+        task.log(String.format("Skipping source discovery as baseDirectory (%s) is not a readable dir", baseDir.getAbsolutePath()), Project.MSG_VERBOSE);
+        return null;
+      }
+      suffix = probeSource(itemFile, sourcePattern);
+      if (sourceCache != null)
+        sourceCache.store(itemFile, sourcePattern, suffix);
     }
-    if (sourcePattern == null || sourcePattern.trim().length() < 1) {
-      task.log(String.format("Skipping source discovery as sourcePattern is blank"), Project.MSG_VERBOSE);
+    if (suffix.length() == 0) {
+      task.log(String.format("Discovered no sources for item %s", item), Project.MSG_DEBUG);
       return null;
     }
+    String sourceItem = String.format("%s-%s", removeExtension(item), suffix);
+    task.log(String.format("Discovered source archive (%s) for item %s", sourceItem, item), Project.MSG_VERBOSE);
+    return sourceItem;
+  }
+
+  /**
+   * Looks for a source archive next to the specified item trying the patterns in their
+   * order; a jar-file is preferred to a zip-file for the same pattern.
+   * 
+   * @return The suffix of the discovered archive appended to the item name without its
+   *         extension (like <tt>sources.jar</tt>) or an empty string if none was
+   *         found.
+   */
+  private String probeSource(File itemFile, String sourcePattern) {
+    File directory = itemFile.getParentFile();
+    String name = removeExtension(itemFile.getName());
     String[] sourcePatters = sourcePattern.split(",");
     for (String pattern : sourcePatters) {
       task.log(String.format("trying source pattern (%s) in source discovery", pattern), Project.MSG_DEBUG);
-      String sourceItem = String.format("%s-%s.jar", removeExtension(item), pattern);
-      File itemSourceFile = new File(baseDir, sourceItem);
-      if (itemSourceFile.canRead()) {
-        task.log(String.format("Discovered source jar (%s) for item %s", sourceItem, item), Project.MSG_VERBOSE);
-        return sourceItem;
-      }
-      sourceItem = String.format("%s-%s.zip", removeExtension(item), pattern);
-      itemSourceFile = new File(baseDir, sourceItem);
-      if (itemSourceFile.canRead()) {
-        task.log(String.format("Discovered source zip (%s) for item %s", sourceItem, item), Project.MSG_VERBOSE);
-        return sourceItem;
-      }
+      String suffix = pattern + ".jar";
+      if (sourceIndex.contains(new File(directory, String.format("%s-%s", name, suffix))))
+        return suffix;
+      suffix = pattern + ".zip";
+      if (sourceIndex.contains(new File(directory, String.format("%s-%s", name, suffix))))
+        return suffix;
     }
-
-    task.log(String.format("Discovered no sources for item %s", item), Project.MSG_DEBUG);
-    return null;
+    return "";
   }
 
   /**
@@ -323,43 +697,100 @@ final class ClassPathGenerator {
     return aFileName.substring(0, lastIndex);
   }
 
-  private void writeProcessedBinaryClassPathEntries(XmlWriter writer, Vector<ProcessedBinaryClassPathEntry> entries) throws IOException {
-    for (int i = 0, size = entries.size(); i != size; ++i) {
-      ProcessedBinaryClassPathEntry element = entries.get(i);
-      task.log("Adding binary dependency \"" + element.path + "\" of the kind \"" + element.kind + "\".", Project.MSG_VERBOSE);
-      openClassPathEntry(writer, element.kind, element.path);
-      if (element.exported)
-        writer.appendAttribute("exported", "true");
-      if (element.sourcepath != null)
-        writer.appendAttribute("sourcepath", element.sourcepath);
-      if (element.javadoc_location != null) {
-        writer.closeOpeningTag();
-        writer.openElement("attributes");
-        writer.openOpeningTag("attribute");
-        writer.appendAttribute("value", element.javadoc_location);
-        writer.appendAttribute("name", "javadoc_location");
-        writer.closeDegeneratedElement();
-        writer.closeElement("attributes");
-        writer.closeElement("classpathentry");
-      } else
-        writer.closeDegeneratedElement();
+  private void writeProcessedBinaryClassPathEntries(XmlWriter writer, LinkedHashMap<String, ProcessedBinaryClassPathEntry> entries) throws IOException {
+    for (Iterator<ProcessedBinaryClassPathEntry> iterator = entries.values().iterator(); iterator.hasNext();) {
+      ProcessedBinaryClassPathEntry element = iterator.next();
+      writeBinaryClassPathEntry(writer, element.kind, element.path, element.exported, element.sourcepath, element.javadoc_location);
     }
   }
 
-  private void generateOutputClassPathEntry(XmlWriter writer) throws IOException {
+  /**
+   * Writes the binary entries as they are produced, keeping only the paths of the
+   * entries in memory; the last definition wins but the first position is kept as
+   * when the entries are merged. The elements have been validated and the positions of
+   * the last definitions of their paths collected before; every path is iterated again
+   * here and its items are cut and written one by one, without listing them into an
+   * array, which resolves every path once more. A single binary element cannot
+   * collide with another one; it is resolved only here and written without any
+   * collection, because Ant lists every path only once. The sources are discovered
+   * serially.
+   * 
+   * @param writer
+   *          The writer of the file <tt>.classpath</tt>.
+   * @param binaries
+   *          The binary elements to write.
+   * @param paths
+   *          The paths of the binary elements.
+   * @param lastDefinitions
+   *          The positions of the last definitions of the paths or <tt>null</tt> if
+   *          there is only a single binary element.
+   * @throws IOException
+   *           If there was an error writing the entries.
+   * @since Ant-Eclipse 1.0
+   */
+  private void generateStreamedBinaryClassPathEntries(XmlWriter writer, Vector<ClassPathEntryBinaryElement> binaries, Path[] paths, HashMap<String, Integer> lastDefinitions) throws IOException {
+    String baseDirectory = task.getProject().getBaseDir().getAbsolutePath();
+    for (int i = 0, size = binaries.size(); i != size; ++i) {
+      ClassPathEntryBinaryElement entry = binaries.get(i);
+      for (Iterator<?> resources = iterateBinaryPath(paths[i]); resources.hasNext();) {
+        String item = cutBaseDirectory(resources.next().toString(), baseDirectory);
+        ClassPathEntryBinaryElement definition = entry;
+        if (lastDefinitions != null) {
+          // written entries are forgotten, which skips their next definitions
+          Integer last = lastDefinitions.remove(item);
+          if (last == null)
+            continue;
+          definition = binaries.get(last.intValue());
+        }
+        String kind = getKind(definition);
+        long start = timer.start();
+        String sourcepath = discoverSource(baseDirectory, item, definition.getSourcePattern(), definition.getSource());
+        timer.stop(PhaseTimer.DISCOVERY, start);
+        writeBinaryClassPathEntry(writer, kind, item, definition.getExported(), sourcepath, definition.getJavadoc());
+      }
+    }
+  }
+
+  private void writeBinaryClassPathEntry(XmlWriter writer, String kind, String path, boolean exported, String sourcepath, String javadoc_location) throws IOException {
+    task.log("Adding binary dependency \"" + path + "\" of the kind \"" + kind + "\".", Project.MSG_VERBOSE);
+    openClassPathEntry(writer, kind, path);
+    if (exported)
+      writer.appendAttribute("exported", "true");
+    if (sourcepath != null) {
+      writer.appendAttribute("sourcepath", sourcepath);
+      ++sourceCount;
+    }
+    if (javadoc_location != null) {
+      writer.closeOpeningTag();
+      writer.openElement("attributes");
+      writer.openOpeningTag("attribute");
+      writer.appendAttribute("value", javadoc_location);
+      writer.appendAttribute("name", "javadoc_location");
+      writer.closeDegeneratedElement();
+      writer.closeElement("attributes");
+      writer.closeElement("classpathentry");
+    } else
+      writer.closeDegeneratedElement();
+  }
+
+  private String resolveOutputClassPathEntry() {
     ClassPathEntryOutputElement output = task.getEclipse().getClassPath().getOutput();
     if (output == null) {
       task.log("No output found, the current directory added.", Project.MSG_VERBOSE);
       output = new ClassPathEntryOutputElement();
     }
     output.validate();
-    String path = cutBaseDirectory(output.getPath(), task.getProject().getBaseDir().getAbsolutePath());
+    return cutBaseDirectory(output.getPath(), task.getProject().getBaseDir().getAbsolutePath());
+  }
+
+  private void writeOutputClassPathEntry(XmlWriter writer, String path) throws IOException {
     task.log("Adding output into \"" + path + "\".", Project.MSG_VERBOSE);
     openClassPathEntry(writer, "output", path);
     writer.closeDegeneratedElement();
   }
 
   private void openClassPathEntry(XmlWriter writer, String kind, String path) throws IOException {
+    ++entryCount;
     writer.openOpeningTag("classpathentry");
     writer.appendAttribute("kind", kind);
     writer.appendAttribute("path", path);
@@ -388,13 +819,4 @@ final class ClassPathGenerator {
     }
     return null;
   }
-
-  private static ProcessedBinaryClassPathEntry getProcessedBinaryClassPathEntry(Vector<ProcessedBinaryClassPathEntry> entries, String path) {
-    for (int i = 0, size = entries.size(); i < size; ++i) {
-      ProcessedBinaryClassPathEntry entry = entries.get(i);
-      if (entry.path.equals(path))
-        return entry;
-    }
-    return null;
-  }
 }
@@ -0,0 +1,270 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tools.ant.Project;
+
+/**
+ * Implements the output interface collecting the generated content in memory and
+ * passing it to another output object only if it differs from the current content
+ * there. Files which have not changed are not touched, so that Eclipse does not notice
+ * them and does not rebuild the workspace.
+ * 
+ * @see EclipseOutput
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+class ComparingEclipseOutput extends ForwardingEclipseOutput {
+
+    /**
+     * Collects the generated content and passes it to the target output when closed if
+     * it differs from the current one.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private abstract class ComparingOutputStream extends ByteArrayOutputStream implements
+            Discardable {
+
+        private String description;
+
+        private boolean closed = false;
+
+        /**
+         * Creates a new instance of the output stream.
+         * 
+         * @param description
+         *        The description of the file for the log.
+         * @since Ant-Eclipse 1.0
+         */
+        ComparingOutputStream(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Returns a stream to read the current content from the target output.
+         * 
+         * @return Source stream with the current content or <tt>null</tt> if there is
+         *         none.
+         * @since Ant-Eclipse 1.0
+         */
+        abstract InputStream open();
+
+        /**
+         * Returns a stream to write the new content into the target output.
+         * 
+         * @return Target stream for the content.
+         * @since Ant-Eclipse 1.0
+         */
+        abstract OutputStream create();
+
+        /**
+         * Compares the collected content with the current one and writes it into the
+         * target output if they differ.
+         * 
+         * @throws IOException
+         *         If there was an error reading or writing the target output.
+         * @see java.io.OutputStream#close()
+         * @since Ant-Eclipse 1.0
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            if (isSameContent(open(), buf, count)) {
+                task.log("The content of " + description + " has not changed.",
+                        Project.MSG_VERBOSE);
+                unchangedFiles.incrementAndGet();
+                return;
+            }
+            OutputStream output = create();
+            try {
+                writeTo(output);
+            } catch (IOException exception) {
+                EclipseOutput.discard(output);
+                throw exception;
+            }
+            output.close();
+            changedFiles.incrementAndGet();
+        }
+
+        /**
+         * Drops the collected content; the target output is not touched.
+         * 
+         * @see EclipseOutput.Discardable#discard()
+         * @since Ant-Eclipse 1.0
+         */
+        public void discard() {
+            closed = true;
+        }
+
+    }
+
+    private EclipseTask task;
+
+    private AtomicInteger changedFiles = new AtomicInteger();
+
+    private AtomicInteger unchangedFiles = new AtomicInteger();
+
+    /**
+     * Creates a new instance of the output object.
+     * 
+     * @param parent
+     *        The parent task.
+     * @param object
+     *        An object that the changed content is written into.
+     * @since Ant-Eclipse 1.0
+     */
+    ComparingEclipseOutput(EclipseTask parent, EclipseOutput object) {
+        super(object.getEclipse(), object);
+        task = parent;
+    }
+
+    /**
+     * Returns the count of files written because their content changed.
+     * 
+     * @return The count of files written because their content changed.
+     * @since Ant-Eclipse 1.0
+     */
+    int getChangedFiles() {
+        return changedFiles.get();
+    }
+
+    /**
+     * Returns the count of files left untouched because their content did not change.
+     * 
+     * @return The count of files left untouched because their content did not change.
+     * @since Ant-Eclipse 1.0
+     */
+    int getUnchangedFiles() {
+        return unchangedFiles.get();
+    }
+
+    /**
+     * Returns a stream collecting the content of the file <tt>.settings/xxx.prefs</tt>,
+     * which is written into the target output when closed only if it has changed.
+     * 
+     * @see EclipseOutput#createPreferences(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createPreferences(final String name) {
+        return new ComparingOutputStream("the preferences for \"" + name + "\"") {
+
+            @Override
+            InputStream open() {
+                return getTarget().openPreferences(name);
+            }
+
+            @Override
+            OutputStream create() {
+                return getTarget().createPreferences(name);
+            }
+        };
+    }
+
+    /**
+     * Returns a stream collecting the content of the file .project, which is written
+     * into the target output when closed only if it has changed.
+     * 
+     * @see EclipseOutput#createProject()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createProject() {
+        return new ComparingOutputStream("the project definition") {
+
+            @Override
+            InputStream open() {
+                return getTarget().openProject();
+            }
+
+            @Override
+            OutputStream create() {
+                return getTarget().createProject();
+            }
+        };
+    }
+
+    /**
+     * Returns a stream collecting the content of the file .classpath, which is written
+     * into the target output when closed only if it has changed.
+     * 
+     * @see EclipseOutput#createClassPath()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createClassPath() {
+        return new ComparingOutputStream("the classpath definition") {
+
+            @Override
+            InputStream open() {
+                return getTarget().openClassPath();
+            }
+
+            @Override
+            OutputStream create() {
+                return getTarget().createClassPath();
+            }
+        };
+    }
+
+    /**
+     * Reports the count of the changed files and closes the target output.
+     * 
+     * @see EclipseOutput#close()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    void close() {
+        int changed = changedFiles.get();
+        task.log("Changed " + changed + " of " + (changed + unchangedFiles.get())
+                + " generated files.");
+        super.close();
+    }
+
+    private static boolean isSameContent(InputStream input, byte[] content, int length)
+            throws IOException {
+        if (input == null)
+            return false;
+        try {
+            byte[] buffer = new byte[8192];
+            int offset = 0;
+            for (int read; (read = input.read(buffer)) != -1; offset += read) {
+                if (offset + read > length)
+                    return false;
+                for (int i = 0; i != read; ++i)
+                    if (buffer[i] != content[offset + i])
+                        return false;
+            }
+            return offset == length;
+        } finally {
+            input.close();
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Answers questions about the presence of files from listings of their directories,
+ * which are read only once, when a file from a particular directory is asked for the
+ * first time. It is used by the source discovery to replace probing every candidate
+ * file with a system call. Files added to a directory after it has been listed are not
+ * noticed; an instance is supposed to live during a single generation only. It is safe
+ * to use the index from multiple threads. Names differing from a listed one only by
+ * their case are confirmed by the file system, which may ignore the case of names, like
+ * on Windows and Mac OS X by default.
+ * 
+ * @see ClassPathGenerator
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class DirectoryIndex {
+
+    /**
+     * Contains the names of the files in a directory as they were listed and converted
+     * to lower case.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private static final class Listing {
+
+        final Set<String> names = new HashSet<String>();
+
+        final Set<String> lowerCaseNames = new HashSet<String>();
+
+        Listing(String[] files) {
+            names.addAll(Arrays.asList(files));
+            for (int i = 0; i != files.length; ++i)
+                lowerCaseNames.add(files[i].toLowerCase(Locale.ENGLISH));
+        }
+
+    }
+
+    private static final Listing NOT_LISTED = new Listing(new String[0]);
+
+    private ConcurrentMap<File, Listing> directories = new ConcurrentHashMap<File, Listing>();
+
+    /**
+     * Creates a new empty index.
+     * 
+     * @since Ant-Eclipse 1.0
+     */
+    DirectoryIndex() {
+    }
+
+    /**
+     * Checks if the specified file is present in its parent directory.
+     * 
+     * @param file
+     *        The file to look for.
+     * @return <tt>True</tt> if the parent directory of the file could be listed and the
+     *         name of the file was found in it.
+     * @since Ant-Eclipse 1.0
+     */
+    boolean contains(File file) {
+        File directory = file.getParentFile();
+        if (directory == null)
+            return false;
+        Listing listing = list(directory);
+        String name = file.getName();
+        if (listing.names.contains(name))
+            return true;
+        // only a file system ignoring the case finds the file by a different case
+        return listing.lowerCaseNames.contains(name.toLowerCase(Locale.ENGLISH))
+                && file.canRead();
+    }
+
+    /**
+     * Checks if the specified directory exists and can be listed.
+     * 
+     * @param directory
+     *        The directory to check.
+     * @return <tt>True</tt> if the directory exists and its content can be read.
+     * @since Ant-Eclipse 1.0
+     */
+    boolean isDirectory(File directory) {
+        return list(directory) != NOT_LISTED;
+    }
+
+    /**
+     * Forgets the listed directories, so that they are listed again when asked for.
+     * 
+     * @since Ant-Eclipse 1.0
+     */
+    void clear() {
+        directories.clear();
+    }
+
+    private Listing list(File directory) {
+        Listing listing = directories.get(directory);
+        if (listing == null) {
+            String[] files = directory.list();
+            listing = files == null ? NOT_LISTED : new Listing(files);
+            Listing present = directories.putIfAbsent(directory, listing);
+            if (present != null)
+                listing = present;
+        }
+        return listing;
+    }
+
+}
@@ -61,8 +61,45 @@ public class EclipseElement {
 
     }
 
+    /**
+     * EnumeratedAttribute implementation supporting the available ways of checking if
+     * the generated files are up-to-date.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    public static class UpToDateCheck extends EnumeratedAttribute {
+
+        /**
+         * Compares the time of the last modification of the Ant build file with the
+         * generated files.
+         */
+        public final static int TIMESTAMP = 0;
+
+        /**
+         * Compares a hash of the resolved input of the files with the hash stored when
+         * the files were written the last time.
+         */
+        public final static int FINGERPRINT = 1;
+
+        /**
+         * @see EnumeratedAttribute#getValues()
+         */
+        @Override
+        public String[] getValues() {
+            return new String[] { "timestamp", "fingerprint" };
+        }
+
+    }
+
     private boolean updateAlways = false;
 
+    private UpToDateCheck upToDateCheck;
+
+    private boolean writeIfChanged = false;
+
+    private boolean sync = false;
+
     private boolean failOnError = true;
 
     private String errorProperty = null;
@@ -71,6 +108,32 @@ public class EclipseElement {
 
     private Mode mode;
 
+    private int sourceDiscoveryThreads = 1;
+
+    private File sourceCache = null;
+
+    private boolean parallel = false;
+
+    private boolean refreshPaths = false;
+
+    private boolean buffered = false;
+
+    private int flushThreads = 1;
+
+    private int settingsThreads = 1;
+
+    private File archive = null;
+
+    private boolean watch = false;
+
+    private long watchInterval = 1000;
+
+    private long watchTimeout = 0;
+
+    private String timingPrefix = null;
+
+    private File timingReport = null;
+
     private SettingsElement settings = null;
 
     private ProjectElement project = null;
@@ -85,6 +148,8 @@ public class EclipseElement {
     public EclipseElement() {
         mode = new Mode();
         mode.setValue(mode.getValues()[Mode.JAVA]);
+        upToDateCheck = new UpToDateCheck();
+        upToDateCheck.setValue(upToDateCheck.getValues()[UpToDateCheck.TIMESTAMP]);
     }
 
     /**
@@ -102,6 +167,62 @@ public class EclipseElement {
         updateAlways = flag;
     }
 
+    /**
+     * @return Returns the upToDateCheck.
+     */
+    public UpToDateCheck getUpToDateCheck() {
+        return upToDateCheck;
+    }
+
+    /**
+     * @param value
+     *        The upToDateCheck to set.
+     */
+    public void setUpToDateCheck(UpToDateCheck value) {
+        upToDateCheck = value;
+    }
+
+    /**
+     * @return Returns the writeIfChanged.
+     */
+    public boolean isWriteIfChanged() {
+        return writeIfChanged;
+    }
+
+    /**
+     * @param flag
+     *        The writeIfChanged to set.
+     */
+    public void setWriteIfChanged(boolean flag) {
+        writeIfChanged = flag;
+    }
+
+    /**
+     * @return Returns the sync.
+     */
+    public boolean isSync() {
+        return sync;
+    }
+
+    /**
+     * @param flag
+     *        The sync to set.
+     */
+    public void setSync(boolean flag) {
+        sync = flag;
+    }
+
+    /**
+     * Checks if the resolved input of the files is compared using its fingerprint
+     * instead of the timestamps of the files.
+     * 
+     * @return <tt>True</tt> if the up-to-date check uses fingerprints.
+     * @since Ant-Eclipse 1.0
+     */
+    boolean isFingerprintCheck() {
+        return !updateAlways && upToDateCheck.getIndex() == UpToDateCheck.FINGERPRINT;
+    }
+
     /**
      * @return Returns the destDir.
      */
@@ -162,6 +283,215 @@ public class EclipseElement {
         mode = value;
     }
 
+    /**
+     * @return Returns the sourceDiscoveryThreads.
+     */
+    public int getSourceDiscoveryThreads() {
+        return sourceDiscoveryThreads;
+    }
+
+    /**
+     * @param count
+     *        The sourceDiscoveryThreads to set.
+     */
+    public void setSourceDiscoveryThreads(int count) {
+        if (count < 1)
+            throw new BuildException(
+                    "The attribute \"sourcediscoverythreads\" must be a positive number.");
+        sourceDiscoveryThreads = count;
+    }
+
+    /**
+     * @return Returns the sourceCache.
+     */
+    public File getSourceCache() {
+        return sourceCache;
+    }
+
+    /**
+     * @param file
+     *        The sourceCache to set.
+     */
+    public void setSourceCache(File file) {
+        sourceCache = file;
+    }
+
+    /**
+     * @return Returns the parallel.
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param flag
+     *        The parallel to set.
+     */
+    public void setParallel(boolean flag) {
+        parallel = flag;
+    }
+
+    /**
+     * @return Returns the refreshPaths.
+     */
+    public boolean isRefreshPaths() {
+        return refreshPaths;
+    }
+
+    /**
+     * @param flag
+     *        The refreshPaths to set.
+     */
+    public void setRefreshPaths(boolean flag) {
+        refreshPaths = flag;
+    }
+
+    /**
+     * @return Returns the buffered.
+     */
+    public boolean isBuffered() {
+        return buffered;
+    }
+
+    /**
+     * @param flag
+     *        The buffered to set.
+     */
+    public void setBuffered(boolean flag) {
+        buffered = flag;
+    }
+
+    /**
+     * @return Returns the flushThreads.
+     */
+    public int getFlushThreads() {
+        return flushThreads;
+    }
+
+    /**
+     * @param count
+     *        The flushThreads to set.
+     */
+    public void setFlushThreads(int count) {
+        if (count < 1)
+            throw new BuildException(
+                    "The attribute \"flushthreads\" must be a positive number.");
+        flushThreads = count;
+    }
+
+    /**
+     * @return Returns the settingsThreads.
+     */
+    public int getSettingsThreads() {
+        return settingsThreads;
+    }
+
+    /**
+     * @param count
+     *        The settingsThreads to set.
+     */
+    public void setSettingsThreads(int count) {
+        if (count < 1)
+            throw new BuildException(
+                    "The attribute \"settingsthreads\" must be a positive number.");
+        settingsThreads = count;
+    }
+
+    /**
+     * @return Returns the archive.
+     */
+    public File getArchive() {
+        return archive;
+    }
+
+    /**
+     * @param file
+     *        The archive to set.
+     */
+    public void setArchive(File file) {
+        archive = file;
+    }
+
+    /**
+     * @return Returns the watch.
+     */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * @param flag
+     *        The watch to set.
+     */
+    public void setWatch(boolean flag) {
+        watch = flag;
+    }
+
+    /**
+     * @return Returns the watchInterval.
+     */
+    public long getWatchInterval() {
+        return watchInterval;
+    }
+
+    /**
+     * @param interval
+     *        The watchInterval to set.
+     */
+    public void setWatchInterval(long interval) {
+        if (interval < 1)
+            throw new BuildException(
+                    "The attribute \"watchinterval\" must be a positive number.");
+        watchInterval = interval;
+    }
+
+    /**
+     * @return Returns the watchTimeout.
+     */
+    public long getWatchTimeout() {
+        return watchTimeout;
+    }
+
+    /**
+     * @param timeout
+     *        The watchTimeout to set.
+     */
+    public void setWatchTimeout(long timeout) {
+        if (timeout < 0)
+            throw new BuildException("The attribute \"watchtimeout\" must not be negative.");
+        watchTimeout = timeout;
+    }
+
+    /**
+     * @return Returns the timingPrefix.
+     */
+    public String getTimingPrefix() {
+        return timingPrefix;
+    }
+
+    /**
+     * @param prefix
+     *        The timingPrefix to set.
+     */
+    public void setTimingPrefix(String prefix) {
+        timingPrefix = prefix;
+    }
+
+    /**
+     * @return Returns the timingReport.
+     */
+    public File getTimingReport() {
+        return timingReport;
+    }
+
+    /**
+     * @param file
+     *        The timingReport to set.
+     */
+    public void setTimingReport(File file) {
+        timingReport = file;
+    }
+
     /**
      * @return Returns the settings.
      */
@@ -174,7 +504,7 @@ public class EclipseElement {
      *        The settings to set.
      */
     public void setSettings(SettingsElement element) {
-        if (project != null)
+        if (settings != null)
             throw new BuildException("The element <settings> has been already defined.");
         settings = element;
     }
@@ -19,6 +19,7 @@
 
 package prantl.ant.eclipse;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
@@ -33,6 +34,28 @@ import java.io.OutputStream;
  */
 abstract class EclipseOutput {
 
+    /**
+     * Implemented by the streams returned by the outputs, which store the written
+     * content when closed, so that a failed generation can drop the incomplete content
+     * instead.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    interface Discardable {
+
+        /**
+         * Closes the stream without storing the written content. Calling the method
+         * after the stream has been closed has no effect.
+         * 
+         * @throws IOException
+         *         If the stream could not be closed.
+         * @since Ant-Eclipse 1.0
+         */
+        void discard() throws IOException;
+
+    }
+
     private EclipseElement eclipse;
 
     /**
@@ -89,7 +112,8 @@ abstract class EclipseOutput {
      * 
      * @param name
      *        The name of the package for the preferences.
-     * @return Source stream with the current content.
+     * @return Source stream with the current content or <tt>null</tt> if the file does
+     *         not exist.
      * @since Ant-Eclipse 1.0
      */
     abstract InputStream openPreferences(String name);
@@ -97,7 +121,8 @@ abstract class EclipseOutput {
     /**
      * Returns a stream to read the current content of the file .project.
      * 
-     * @return Source stream with the current content.
+     * @return Source stream with the current content or <tt>null</tt> if the file does
+     *         not exist.
      * @since Ant-Eclipse 1.0
      */
     abstract InputStream openProject();
@@ -105,7 +130,8 @@ abstract class EclipseOutput {
     /**
      * Returns a stream to read the current content of the file .classpath.
      * 
-     * @return Source stream with the current content.
+     * @return Source stream with the current content or <tt>null</tt> if the file does
+     *         not exist.
      * @since Ant-Eclipse 1.0
      */
     abstract InputStream openClassPath();
@@ -136,4 +162,61 @@ abstract class EclipseOutput {
      */
     abstract OutputStream createClassPath();
 
+    /**
+     * Returns the fingerprint of the content stored when the specified file was written
+     * the last time. Fingerprints are not kept by default.
+     * 
+     * @param name
+     *        The path of the generated file relative to the project directory.
+     * @return The fingerprint of the content of the file or <tt>null</tt> if not known
+     *         or if the file does not exist.
+     * @since Ant-Eclipse 1.0
+     */
+    String getFingerprint(String name) {
+        return null;
+    }
+
+    /**
+     * Stores the fingerprint of the content just written into the specified file.
+     * Fingerprints are not kept by default.
+     * 
+     * @param name
+     *        The path of the generated file relative to the project directory.
+     * @param value
+     *        The fingerprint of the content of the file.
+     * @since Ant-Eclipse 1.0
+     */
+    void setFingerprint(String name, String value) {
+    }
+
+    /**
+     * Closes a stream returned by one of the methods creating the files without storing
+     * its content, after the generation of the file has failed. Streams which cannot
+     * drop their content are just closed. Errors are ignored, so that they do not hide
+     * the failure of the generation.
+     * 
+     * @param stream
+     *        The stream of the file which could not be generated.
+     * @since Ant-Eclipse 1.0
+     */
+    static void discard(OutputStream stream) {
+        try {
+            if (stream instanceof Discardable)
+                ((Discardable) stream).discard();
+            else
+                stream.close();
+        } catch (IOException exception) {
+            // the failure of the generation is reported instead
+        }
+    }
+
+    /**
+     * Finishes the output after all files have been generated. Nothing is done by
+     * default.
+     * 
+     * @since Ant-Eclipse 1.0
+     */
+    void close() {
+    }
+
 }
@@ -20,8 +20,16 @@
 package prantl.ant.eclipse;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 
 /**
@@ -40,6 +48,10 @@ public class EclipseTask extends Task {
 
     private EclipseOutput output;
 
+    private WorkspaceContext workspace = null;
+
+    private PhaseTimer timer = new PhaseTimer("");
+
     /**
      * Creates a new instance of the task. Default constructor, to be called by ant in the
      * productive environment.
@@ -51,6 +63,19 @@ public class EclipseTask extends Task {
         output = null;
     }
 
+    /**
+     * Creates a new instance of the task with a configuration prepared in advance, for
+     * example read from a module descriptor.
+     * 
+     * @param element
+     *        The configuration of the task.
+     * @since Ant-Eclipse 1.0
+     */
+    EclipseTask(EclipseElement element) {
+        eclipse = element;
+        output = null;
+    }
+
     /**
      * Creates a new instance of the task. Testing constructor, to be called in unit tests
      * only.
@@ -88,6 +113,40 @@ public class EclipseTask extends Task {
         return output;
     }
 
+    /**
+     * Returns the state shared with the other modules if the task generates a module of
+     * a workspace.
+     * 
+     * @return The state shared by the modules of a workspace or <tt>null</tt> if the
+     *         task runs alone.
+     * @since Ant-Eclipse 1.0
+     */
+    WorkspaceContext getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * Returns the object measuring the phases of the last execution.
+     * 
+     * @return The object measuring the phases of the generation.
+     * @since Ant-Eclipse 1.0
+     */
+    PhaseTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Sets the state shared with the other modules if the task generates a module of a
+     * workspace.
+     * 
+     * @param context
+     *        The state shared by the modules of a workspace.
+     * @since Ant-Eclipse 1.0
+     */
+    void setWorkspace(WorkspaceContext context) {
+        workspace = context;
+    }
+
     /**
      * If true, stop the build process if the generation of the project files fails.
      * 
@@ -137,6 +196,243 @@ public class EclipseTask extends Task {
         eclipse.setUpdateAlways(flag);
     }
 
+    /**
+     * Sets if the generated files are to be written only if their content differs from
+     * the existing files. The content is generated in memory and compared with the
+     * current files; the unchanged ones are not touched, so that Eclipse does not
+     * rebuild the project because of them. The count of the changed files is reported.
+     * 
+     * @param flag
+     *        <tt>True</tt> if only the changed files should be written, otherwise
+     *        <tt>false</tt>.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setWriteIfChanged(boolean flag) {
+        eclipse.setWriteIfChanged(flag);
+    }
+
+    /**
+     * Sets if the generated files are forced to the storage device before they replace
+     * the previous ones. Every file is written into a temporary file first, which is
+     * renamed to the generated file when complete, so that an interrupted build or the
+     * IDE reading the file never see it half-written; synchronizing makes the file
+     * survive also a crash of the system, at the cost of speed. Not by default.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the files should be synchronized with the storage device,
+     *        otherwise <tt>false</tt>.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setSync(boolean flag) {
+        eclipse.setSync(flag);
+    }
+
+    /**
+     * Sets how to check if the generated files are up-to-date. The default "timestamp"
+     * regenerates the files if the Ant build script is newer, which happens also after
+     * unrelated changes and misses changes in imported files or in the referred
+     * libraries. The "fingerprint" resolves the input of every file, like the paths of
+     * the libraries and the values of the preferences, and generates the file only if
+     * the hash of the input differs from the one stored with the files the last time.
+     * 
+     * @param value
+     *        A way of checking the generated files.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setUpToDateCheck(EclipseElement.UpToDateCheck value) {
+        eclipse.setUpToDateCheck(value);
+    }
+
+    /**
+     * Sets the number of threads discovering source attachments of the binary classpath
+     * entries. The default is a single thread, which runs the discovery serially; more
+     * threads help if probing the library directories is slow, for example on a network
+     * file system. The generated output does not depend on this setting.
+     * 
+     * @param count
+     *        A positive number of threads to use for the source discovery.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setSourceDiscoveryThreads(int count) {
+        eclipse.setSourceDiscoveryThreads(count);
+    }
+
+    /**
+     * Sets the file caching the results of the source discovery between runs. Entries
+     * are keyed by the path of the binary and validated against the time of the last
+     * modification of its directory, which changes if a source archive is added or
+     * removed. Stale entries are discovered again and replaced. The cache can be shared
+     * by more projects; it should not be placed in a directory with libraries, whose
+     * stamp it would change.
+     * 
+     * @param file
+     *        A file to keep the source discovery results in.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setSourceCache(File file) {
+        eclipse.setSourceCache(file);
+    }
+
+    /**
+     * Sets if the settings, the project and the classpath are generated concurrently,
+     * so that a slow source discovery does not hold up the other files. Errors of all
+     * generators are collected and reported together. Not by default.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the files should be generated concurrently, otherwise
+     *        <tt>false</tt>.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setParallel(boolean flag) {
+        eclipse.setParallel(flag);
+    }
+
+    /**
+     * Sets if the paths referred by the classpath entries are resolved again, instead of
+     * taking their items resolved by a previous task. The resolved paths are validated
+     * only by the time stamps of their directories; a path changed in the build, like
+     * by the task <tt>augment</tt>, has to be refreshed. Not by default.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the referred paths should be resolved again, otherwise
+     *        <tt>false</tt>.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setRefreshPaths(boolean flag) {
+        eclipse.setRefreshPaths(flag);
+    }
+
+    /**
+     * Sets if the task keeps running after the files have been generated and watches
+     * the files the configuration refers to. When a library is added to or removed from
+     * a directory of a binary classpath entry, the file .classpath is generated again;
+     * only the changed files are written. If the build file changes, the task stops
+     * watching, because it cannot read the build file again. The directories are polled
+     * in the interval set by the attribute <tt>watchInterval</tt>. Not by default.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the task should watch for changes, otherwise
+     *        <tt>false</tt>.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setWatch(boolean flag) {
+        eclipse.setWatch(flag);
+    }
+
+    /**
+     * Sets the interval of polling the watched files in milliseconds; 1000 by default.
+     * 
+     * @param interval
+     *        A positive count of milliseconds to wait between the checks.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setWatchInterval(long interval) {
+        eclipse.setWatchInterval(interval);
+    }
+
+    /**
+     * Sets the time in milliseconds after which the task stops watching for changes. By
+     * default it watches until the build is interrupted.
+     * 
+     * @param timeout
+     *        A count of milliseconds to watch for changes or zero to watch until
+     *        interrupted.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setWatchTimeout(long timeout) {
+        eclipse.setWatchTimeout(timeout);
+    }
+
+    /**
+     * Sets the prefix of the properties receiving the measured times and counts of the
+     * generation: <em>prefix</em><tt>.</tt><em>phase</em><tt>.ms</tt> is set to the
+     * wall time of the phase in milliseconds, where the phase is <tt>total</tt>,
+     * <tt>settings</tt>, <tt>project</tt>, <tt>classpath</tt>, <tt>resolution</tt> (of
+     * the paths), <tt>discovery</tt> (of the source attachments), <tt>rendering</tt>
+     * (of the XML content) or <tt>output</tt> (writing the files);
+     * <em>prefix</em><tt>.</tt><em>counter</em> is set to the count of the written
+     * <tt>entries</tt> of the classpath, discovered <tt>sources</tt>, written
+     * <tt>variables</tt> of the preferences, written <tt>files</tt> and <tt>bytes</tt>.
+     * The properties are not set by default.
+     * 
+     * @param prefix
+     *        The prefix of the names of the properties.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setTimingPrefix(String prefix) {
+        eclipse.setTimingPrefix(prefix);
+    }
+
+    /**
+     * Sets the file to write the measured times and counts of the generation into, in
+     * the JSON format. The values are the same as described by the attribute
+     * <tt>timingPrefix</tt>. No report is written by default.
+     * 
+     * @param file
+     *        The file to write the report into.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setTimingReport(File file) {
+        eclipse.setTimingReport(file);
+    }
+
+    /**
+     * Sets the archive to write the generated files into instead of the project
+     * directory. Files with the extensions <tt>.tar</tt>, <tt>.tar.gz</tt> and
+     * <tt>.tgz</tt> are written as tar archives, other files as zip archives. The files
+     * are placed in the root of the archive and are always written.
+     * 
+     * @param file
+     *        The archive to create.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setArchive(File file) {
+        eclipse.setArchive(file);
+    }
+
+    /**
+     * Sets if all files are generated into memory first and written in a single batch
+     * at the end, so that the generation is not slowed down by the latency of the file
+     * system. If the generation fails, no file is written. Combined with the attribute
+     * <tt>writeIfChanged</tt> only the changed files are written in the batch. Not by
+     * default.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the files should be written in a batch, otherwise
+     *        <tt>false</tt>.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setBuffered(boolean flag) {
+        eclipse.setBuffered(flag);
+    }
+
+    /**
+     * Sets the number of threads writing the files generated into memory, if the
+     * attribute <tt>buffered</tt> is set. The default is a single thread; more threads
+     * help if the latency of the file system is high.
+     * 
+     * @param count
+     *        A positive number of threads to write the files with.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setFlushThreads(int count) {
+        eclipse.setFlushThreads(count);
+    }
+
+    /**
+     * Sets the number of threads rendering and writing the files with preferences under
+     * the directory <tt>.settings</tt>. The default is a single thread writing the files
+     * one after another; the messages and errors are reported in the order of the
+     * preferences also if more threads are used.
+     * 
+     * @param count
+     *        A positive number of threads to write the preferences with.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setSettingsThreads(int count) {
+        eclipse.setSettingsThreads(count);
+    }
+
     /**
      * Sets the destination directory to place generated files into.
      * 
@@ -202,11 +498,308 @@ public class EclipseTask extends Task {
      */
     @Override
     public void execute() throws BuildException {
+        if (eclipse.isWatch() && eclipse.getArchive() != null)
+            throw new BuildException(
+                    "The attributes \"watch\" and \"archive\" cannot be used together.");
+        // changes made during the generation are noticed by the first check
+        ChangeWatcher watcher = eclipse.isWatch() ? createWatcher() : null;
+        timer = new PhaseTimer(getModuleName());
+        if (eclipse.isRefreshPaths())
+            new ClassPathGenerator(this).forgetResolvedPaths();
+        long start = timer.start();
+        generate(ChangeWatcher.ALL);
+        timer.stop(PhaseTimer.TOTAL, start);
+        reportTiming();
+        if (watcher != null)
+            watch(watcher);
+    }
+
+    /**
+     * Generates the specified output files, regardless if they are up-to-date, and
+     * writes only those whose content has changed. Used when the files the
+     * configuration refers to have changed.
+     * 
+     * @param kinds
+     *        The kinds of the output files to generate.
+     * @throws BuildException
+     *         In case of misconfiguration or errors.
+     * @see ChangeWatcher
+     * @since Ant-Eclipse 1.0
+     */
+    void regenerate(int kinds) {
+        boolean updateAlways = eclipse.isUpdateAlways();
+        boolean writeIfChanged = eclipse.isWriteIfChanged();
+        boolean buffered = eclipse.isBuffered();
+        eclipse.setUpdateAlways(true);
+        eclipse.setWriteIfChanged(true);
+        eclipse.setBuffered(false);
+        // listings of the library directories could change within the resolution of
+        // their time stamps
+        if ((kinds & ChangeWatcher.CLASS_PATH) != 0)
+            new ClassPathGenerator(this).forgetResolvedPaths();
+        if (workspace != null)
+            workspace.getDirectoryIndex().clear();
+        try {
+            generate(kinds);
+        } finally {
+            eclipse.setUpdateAlways(updateAlways);
+            eclipse.setWriteIfChanged(writeIfChanged);
+            eclipse.setBuffered(buffered);
+        }
+    }
+
+    /**
+     * Creates a watcher of the files the configuration refers to: the build file and
+     * the directories of the binary classpath entries.
+     * 
+     * @return A watcher of the files the configuration refers to.
+     * @since Ant-Eclipse 1.0
+     */
+    ChangeWatcher createWatcher() {
+        ChangeWatcher watcher = new ChangeWatcher();
+        String buildFile = getProject().getProperty(FileEclipseOutput.ANT_FILE_PROPERTY);
+        if (buildFile != null)
+            watcher.watch(new File(buildFile), ChangeWatcher.CONFIGURATION
+                    | ChangeWatcher.ALL);
+        new ClassPathGenerator(this).watch(watcher);
+        return watcher;
+    }
+
+    private void generate(int kinds) {
+        ArchiveEclipseOutput.Archive archive = null;
         if (output == null)
-            output = new FileEclipseOutput(this);
-        new SettingsGenerator(this).generate();
-        new ProjectGenerator(this).generate();
-        new ClassPathGenerator(this).generate();
+            if (eclipse.getArchive() != null) {
+                archive = new ArchiveEclipseOutput.Archive(eclipse.getArchive());
+                output = new ArchiveEclipseOutput(eclipse, archive, "");
+            } else
+                output = new FileEclipseOutput(this);
+        EclipseOutput target = output;
+        if (isTimed())
+            output = new MeasuringEclipseOutput(output, timer);
+        if (eclipse.isWriteIfChanged())
+            output = new ComparingEclipseOutput(this, output);
+        if (eclipse.isBuffered())
+            output = new BufferingEclipseOutput(this, output);
+        try {
+            try {
+                boolean generated = false;
+                try {
+                    if (eclipse.isParallel())
+                        generateConcurrently(kinds);
+                    else {
+                        if ((kinds & ChangeWatcher.SETTINGS) != 0)
+                            generateSettings();
+                        if ((kinds & ChangeWatcher.PROJECT) != 0)
+                            generateProject();
+                        if ((kinds & ChangeWatcher.CLASS_PATH) != 0)
+                            generateClassPath();
+                    }
+                    generated = true;
+                } finally {
+                    // the files generated before an error are kept as well
+                    closeOutput(generated);
+                }
+            } finally {
+                if (archive != null)
+                    archive.close();
+            }
+        } catch (BuildException exception) {
+            if (eclipse.getErrorProperty() != null)
+                getProject().setNewProperty(eclipse.getErrorProperty(), "true");
+            if (eclipse.isFailOnError())
+                throw exception;
+            log(exception.getMessage(), Project.MSG_ERR);
+        } finally {
+            // the archive is created again by the next execution
+            output = archive != null ? null : target;
+        }
+    }
+
+    /**
+     * Closes the output, which commits the generated files and their fingerprints. If
+     * the generation has failed, an error closing the output is only logged, so that
+     * the failure of the generation is reported; the files of a failed module of a
+     * workspace written in a batch are dropped.
+     * 
+     * @param generated
+     *        <tt>True</tt> if all files have been generated.
+     * @since Ant-Eclipse 1.0
+     */
+    private void closeOutput(boolean generated) {
+        if (generated) {
+            output.close();
+            return;
+        }
+        if (workspace != null && workspace.isBatch())
+            return;
+        try {
+            output.close();
+        } catch (BuildException exception) {
+            log(exception.getMessage(), Project.MSG_ERR);
+        }
+    }
+
+    /**
+     * Logs a message with the given priority. Messages of the generators running
+     * concurrently are passed to the listeners one by one.
+     * 
+     * @param msg
+     *        The message to be logged.
+     * @param msgLevel
+     *        The message priority at which this message is to be logged.
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    public synchronized void log(String msg, int msgLevel) {
+        super.log(msg, msgLevel);
+    }
+
+    private void generateSettings() {
+        long start = timer.start();
+        try {
+            new SettingsGenerator(this).generate();
+        } finally {
+            timer.stop(PhaseTimer.SETTINGS, start);
+        }
+    }
+
+    private void generateProject() {
+        long start = timer.start();
+        try {
+            new ProjectGenerator(this).generate();
+        } finally {
+            timer.stop(PhaseTimer.PROJECT, start);
+        }
+    }
+
+    private void generateClassPath() {
+        long start = timer.start();
+        try {
+            new ClassPathGenerator(this).generate();
+        } finally {
+            timer.stop(PhaseTimer.CLASS_PATH, start);
+        }
+    }
+
+    private boolean isTimed() {
+        return eclipse.getTimingPrefix() != null || eclipse.getTimingReport() != null
+                || workspace != null && workspace.isTimed();
+    }
+
+    private String getModuleName() {
+        ProjectElement project = eclipse.getProject();
+        if (project != null && project.getName() != null)
+            return project.getName();
+        String name = getProject().getProperty("ant.project.name");
+        return name != null ? name : getProject().getBaseDir().getName();
+    }
+
+    private void reportTiming() {
+        if (!isTimed())
+            return;
+        log("Generated in " + timer.getTime(PhaseTimer.TOTAL) + " ms: settings "
+                + timer.getTime(PhaseTimer.SETTINGS) + " ms, project "
+                + timer.getTime(PhaseTimer.PROJECT) + " ms, classpath "
+                + timer.getTime(PhaseTimer.CLASS_PATH) + " ms (path resolution "
+                + timer.getTime(PhaseTimer.RESOLUTION) + " ms, source discovery "
+                + timer.getTime(PhaseTimer.DISCOVERY) + " ms), rendering "
+                + timer.getTime(PhaseTimer.RENDERING) + " ms, output "
+                + timer.getTime(PhaseTimer.OUTPUT) + " ms.", Project.MSG_VERBOSE);
+        if (eclipse.getTimingPrefix() != null)
+            timer.setProperties(getProject(), eclipse.getTimingPrefix());
+        if (eclipse.getTimingReport() != null)
+            PhaseTimer.writeReport(eclipse.getTimingReport(), Collections
+                    .singletonList(timer));
+    }
+
+    private void watch(ChangeWatcher watcher) {
+        long interval = eclipse.getWatchInterval();
+        long timeout = eclipse.getWatchTimeout();
+        long end = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        log("Watching " + watcher.getWatchedFiles() + " files for changes.");
+        for (long now; (now = System.currentTimeMillis()) < end;) {
+            try {
+                Thread.sleep(Math.min(interval, end - now));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            int kinds = watcher.poll();
+            if ((kinds & ChangeWatcher.CONFIGURATION) != 0) {
+                log("The build file has changed; run the build again to apply it.",
+                        Project.MSG_WARN);
+                break;
+            }
+            if (kinds == 0)
+                continue;
+            log("Regenerating the files affected by a change.", Project.MSG_VERBOSE);
+            try {
+                regenerate(kinds);
+            } catch (BuildException exception) {
+                log(exception.getMessage(), Project.MSG_ERR);
+            }
+            // new library directories could have been added
+            new ClassPathGenerator(this).watch(watcher);
+        }
+        log("Stopped watching for changes.", Project.MSG_VERBOSE);
+    }
+
+    private void generateConcurrently(int kinds) {
+        Vector<Callable<Object>> generators = new Vector<Callable<Object>>(3);
+        if ((kinds & ChangeWatcher.SETTINGS) != 0)
+            generators.addElement(new Callable<Object>() {
+
+                public Object call() {
+                    generateSettings();
+                    return null;
+                }
+            });
+        if ((kinds & ChangeWatcher.PROJECT) != 0)
+            generators.addElement(new Callable<Object>() {
+
+                public Object call() {
+                    generateProject();
+                    return null;
+                }
+            });
+        if ((kinds & ChangeWatcher.CLASS_PATH) != 0)
+            generators.addElement(new Callable<Object>() {
+
+                public Object call() {
+                    generateClassPath();
+                    return null;
+                }
+            });
+        ExecutorService executor = Executors.newFixedThreadPool(generators.size());
+        Vector<BuildException> errors = new Vector<BuildException>();
+        try {
+            Vector<Future<Object>> results = new Vector<Future<Object>>(generators.size());
+            for (int i = 0, size = generators.size(); i != size; ++i)
+                results.addElement(executor.submit(generators.get(i)));
+            // the errors are collected in the order of the serial generation
+            for (int i = 0, size = results.size(); i != size; ++i)
+                try {
+                    results.get(i).get();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new BuildException("The generation was interrupted.", exception);
+                } catch (ExecutionException exception) {
+                    Throwable cause = exception.getCause();
+                    errors.addElement(cause instanceof BuildException ? (BuildException) cause
+                            : new BuildException(cause));
+                }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (errors.size() == 1)
+            throw errors.get(0);
+        if (errors.size() > 1) {
+            StringBuffer message = new StringBuffer("The generation failed with ");
+            message.append(errors.size()).append(" errors:");
+            for (int i = 0, size = errors.size(); i != size; ++i)
+                message.append(' ').append(errors.get(i).getMessage());
+            throw new BuildException(message.toString(), errors.get(0));
+        }
     }
 
 }
@@ -0,0 +1,770 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.DirSet;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * Generates project configuration files for Eclipse for all modules of a workspace. The
+ * modules are described by descriptors in the format of Java properties, which are
+ * selected by nested file sets or found in the directories selected by nested directory
+ * sets. The modules are generated in parallel, without parsing a build file for every
+ * module; paths referred by more modules and listings of library directories are
+ * resolved only once. A summary is reported at the end. Every module is generated in a
+ * subproject inheriting the user properties of the build like by the task
+ * <tt>subant</tt>; its messages are passed to the listeners of the build one by one.
+ * 
+ * @see ModuleDescriptor
+ * @see EclipseTask
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+public class EclipseWorkspaceTask extends Task {
+
+    /**
+     * Passes the events of a module to the listeners of the build. The modules are
+     * generated concurrently, each in its own project, whose lock does not keep their
+     * events apart; the events are passed under the lock of the project of the build,
+     * which Ant holds when it passes its own events.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private static final class ModuleListener implements BuildListener {
+
+        private final Project parent;
+
+        ModuleListener(Project parent) {
+            this.parent = parent;
+        }
+
+        public void buildStarted(BuildEvent event) {
+            synchronized (parent) {
+                Vector<?> listeners = parent.getBuildListeners();
+                for (int i = 0, size = listeners.size(); i != size; ++i)
+                    ((BuildListener) listeners.get(i)).buildStarted(event);
+            }
+        }
+
+        public void buildFinished(BuildEvent event) {
+            synchronized (parent) {
+                Vector<?> listeners = parent.getBuildListeners();
+                for (int i = 0, size = listeners.size(); i != size; ++i)
+                    ((BuildListener) listeners.get(i)).buildFinished(event);
+            }
+        }
+
+        public void targetStarted(BuildEvent event) {
+            synchronized (parent) {
+                Vector<?> listeners = parent.getBuildListeners();
+                for (int i = 0, size = listeners.size(); i != size; ++i)
+                    ((BuildListener) listeners.get(i)).targetStarted(event);
+            }
+        }
+
+        public void targetFinished(BuildEvent event) {
+            synchronized (parent) {
+                Vector<?> listeners = parent.getBuildListeners();
+                for (int i = 0, size = listeners.size(); i != size; ++i)
+                    ((BuildListener) listeners.get(i)).targetFinished(event);
+            }
+        }
+
+        public void taskStarted(BuildEvent event) {
+            synchronized (parent) {
+                Vector<?> listeners = parent.getBuildListeners();
+                for (int i = 0, size = listeners.size(); i != size; ++i)
+                    ((BuildListener) listeners.get(i)).taskStarted(event);
+            }
+        }
+
+        public void taskFinished(BuildEvent event) {
+            synchronized (parent) {
+                Vector<?> listeners = parent.getBuildListeners();
+                for (int i = 0, size = listeners.size(); i != size; ++i)
+                    ((BuildListener) listeners.get(i)).taskFinished(event);
+            }
+        }
+
+        public void messageLogged(BuildEvent event) {
+            synchronized (parent) {
+                Vector<?> listeners = parent.getBuildListeners();
+                for (int i = 0, size = listeners.size(); i != size; ++i)
+                    ((BuildListener) listeners.get(i)).messageLogged(event);
+            }
+        }
+
+    }
+
+    /**
+     * The default name of the module descriptor looked for in the directories.
+     */
+    public static final String DEFAULT_DESCRIPTOR = "eclipse.properties";
+
+    private Vector<FileSet> fileSets = new Vector<FileSet>();
+
+    private Vector<DirSet> dirSets = new Vector<DirSet>();
+
+    private String descriptor = DEFAULT_DESCRIPTOR;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private boolean failOnError = true;
+
+    private String errorProperty = null;
+
+    private boolean updateAlways = false;
+
+    private EclipseElement.UpToDateCheck upToDateCheck = null;
+
+    private boolean writeIfChanged = false;
+
+    private boolean sync = false;
+
+    private boolean batch = false;
+
+    private File archive = null;
+
+    private boolean watch = false;
+
+    private long watchInterval = 1000;
+
+    private long watchTimeout = 0;
+
+    private File timingReport = null;
+
+    private int sourceDiscoveryThreads = 1;
+
+    private int settingsThreads = 1;
+
+    private File sourceCache = null;
+
+    private boolean refreshPaths = false;
+
+    /**
+     * Creates a new instance of the task. Default constructor, to be called by ant in the
+     * productive environment.
+     * 
+     * @since Ant-Eclipse 1.0
+     */
+    public EclipseWorkspaceTask() {
+    }
+
+    /**
+     * Adds a set of module descriptors.
+     * 
+     * @param set
+     *        A set of files describing modules.
+     * @since Ant-Eclipse 1.0
+     */
+    public void addFileSet(FileSet set) {
+        fileSets.addElement(set);
+    }
+
+    /**
+     * Adds a set of module directories, which contain the module descriptor. Directories
+     * without the descriptor are skipped.
+     * 
+     * @param set
+     *        A set of module directories.
+     * @since Ant-Eclipse 1.0
+     */
+    public void addDirSet(DirSet set) {
+        dirSets.addElement(set);
+    }
+
+    /**
+     * Sets the name of the module descriptor looked for in the directories selected by
+     * the directory sets; "eclipse.properties" by default.
+     * 
+     * @param name
+     *        A name of the module descriptor.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setDescriptor(String name) {
+        descriptor = name;
+    }
+
+    /**
+     * Sets the number of threads generating the modules. The default is the number of
+     * the available processors; a single thread generates the modules serially.
+     * 
+     * @param count
+     *        A positive number of threads to use for the generation.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setThreads(int count) {
+        if (count < 1)
+            throw new BuildException("The count of threads must be positive.");
+        threads = count;
+    }
+
+    /**
+     * If true, stop the build process if the generation of any module fails; the rest of
+     * the modules is generated anyway.
+     * 
+     * @param value
+     *        <tt>True</tt> if it should halt, otherwise <tt>false</tt>.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setFailOnError(boolean value) {
+        failOnError = value;
+    }
+
+    /**
+     * Property to set to "true" if the generation of any module fails.
+     * 
+     * @param name
+     *        A name of the property to set in case of an error.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setErrorProperty(String name) {
+        errorProperty = name;
+    }
+
+    /**
+     * Sets if the generated files are to be written always or only if the module
+     * descriptor has been changed. The latter is default.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the files should always be overwritten, otherwise
+     *        <tt>false</tt>.
+     * @see EclipseTask#setUpdateAlways(boolean)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setUpdateAlways(boolean flag) {
+        updateAlways = flag;
+    }
+
+    /**
+     * Sets how to check if the generated files are up-to-date. The "timestamp" compares
+     * them with the module descriptor, the "fingerprint" compares the hash of their
+     * resolved input.
+     * 
+     * @param value
+     *        A way of checking the generated files.
+     * @see EclipseTask#setUpToDateCheck(EclipseElement.UpToDateCheck)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setUpToDateCheck(EclipseElement.UpToDateCheck value) {
+        upToDateCheck = value;
+    }
+
+    /**
+     * Sets if the generated files are to be written only if their content differs from
+     * the existing files.
+     * 
+     * @param flag
+     *        <tt>True</tt> if only the changed files should be written, otherwise
+     *        <tt>false</tt>.
+     * @see EclipseTask#setWriteIfChanged(boolean)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setWriteIfChanged(boolean flag) {
+        writeIfChanged = flag;
+    }
+
+    /**
+     * Sets if the generated files are forced to the storage device before they replace
+     * the previous ones.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the files should be synchronized with the storage device,
+     *        otherwise <tt>false</tt>.
+     * @see EclipseTask#setSync(boolean)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setSync(boolean flag) {
+        sync = flag;
+    }
+
+    /**
+     * Sets if the files of all modules are generated into memory first and written in
+     * a single batch when all modules have been generated, using the same number of
+     * threads. Not by default.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the files should be written in a batch, otherwise
+     *        <tt>false</tt>.
+     * @see EclipseTask#setBuffered(boolean)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setBatch(boolean flag) {
+        batch = flag;
+    }
+
+    /**
+     * Sets the archive to write the generated files of all modules into instead of the
+     * module directories. The files of every module are placed under the path of the
+     * module directory relative to the base directory of the project, or under the
+     * module name if the module lies outside. The archive is written sequentially and
+     * can be unpacked over the workspace.
+     * 
+     * @param file
+     *        The archive to create.
+     * @see EclipseTask#setArchive(File)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setArchive(File file) {
+        archive = file;
+    }
+
+    /**
+     * Sets if the task keeps running after the modules have been generated and watches
+     * the files their configuration refers to. A changed module descriptor generates
+     * all files of the module again, a changed properties file with variables of
+     * preferences the files <tt>.settings/xxx.prefs</tt> and a library added to or
+     * removed from a directory of a binary classpath entry the file .classpath; only
+     * the changed files are written. Not by default.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the task should watch for changes, otherwise
+     *        <tt>false</tt>.
+     * @see EclipseTask#setWatch(boolean)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setWatch(boolean flag) {
+        watch = flag;
+    }
+
+    /**
+     * Sets the interval of polling the watched files in milliseconds; 1000 by default.
+     * 
+     * @param interval
+     *        A positive count of milliseconds to wait between the checks.
+     * @see EclipseTask#setWatchInterval(long)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setWatchInterval(long interval) {
+        if (interval < 1)
+            throw new BuildException("The interval must be positive.");
+        watchInterval = interval;
+    }
+
+    /**
+     * Sets the time in milliseconds after which the task stops watching for changes. By
+     * default it watches until the build is interrupted.
+     * 
+     * @param timeout
+     *        A count of milliseconds to watch for changes or zero to watch until
+     *        interrupted.
+     * @see EclipseTask#setWatchTimeout(long)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setWatchTimeout(long timeout) {
+        if (timeout < 0)
+            throw new BuildException("The timeout must not be negative.");
+        watchTimeout = timeout;
+    }
+
+    /**
+     * Sets the file to write the measured times and counts of the generation of all
+     * modules into, in the JSON format. No report is written by default.
+     * 
+     * @param file
+     *        The file to write the report into.
+     * @see EclipseTask#setTimingReport(File)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setTimingReport(File file) {
+        timingReport = file;
+    }
+
+    /**
+     * Sets the number of threads discovering source attachments in every module.
+     * 
+     * @param count
+     *        A positive number of threads to use for the source discovery.
+     * @see EclipseTask#setSourceDiscoveryThreads(int)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setSourceDiscoveryThreads(int count) {
+        if (count < 1)
+            throw new BuildException("The count of threads must be positive.");
+        sourceDiscoveryThreads = count;
+    }
+
+    /**
+     * Sets the number of threads writing the files with preferences in every module.
+     * 
+     * @param count
+     *        A positive number of threads to write the preferences with.
+     * @see EclipseTask#setSettingsThreads(int)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setSettingsThreads(int count) {
+        if (count < 1)
+            throw new BuildException("The count of threads must be positive.");
+        settingsThreads = count;
+    }
+
+    /**
+     * Sets the file caching the results of the source discovery between runs, shared by
+     * all modules.
+     * 
+     * @param file
+     *        A file to keep the source discovery results in.
+     * @see EclipseTask#setSourceCache(File)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setSourceCache(File file) {
+        sourceCache = file;
+    }
+
+    /**
+     * Sets if the paths referred by the modules are resolved again, once for all
+     * modules.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the referred paths should be resolved again, otherwise
+     *        <tt>false</tt>.
+     * @see EclipseTask#setRefreshPaths(boolean)
+     * @since Ant-Eclipse 1.0
+     */
+    public void setRefreshPaths(boolean flag) {
+        refreshPaths = flag;
+    }
+
+    /**
+     * Generates the output files of all modules.
+     * 
+     * @throws BuildException
+     *         In case of misconfiguration or if any module failed and the attribute
+     *         <tt>failOnError</tt> is set.
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    public void execute() throws BuildException {
+        if (watch && archive != null)
+            throw new BuildException(
+                    "The attributes \"watch\" and \"archive\" cannot be used together.");
+        List<File> descriptors = findDescriptors();
+        if (descriptors.size() == 0) {
+            log("There were no module descriptors found.", Project.MSG_WARN);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        WorkspaceContext workspace = new WorkspaceContext(batch);
+        workspace.setTimed(timingReport != null);
+        List<String> errors = new ArrayList<String>();
+        List<ModuleDescriptor> loaded = new ArrayList<ModuleDescriptor>(descriptors.size());
+        List<EclipseTask> modules = new ArrayList<EclipseTask>(descriptors.size());
+        List<ChangeWatcher> watchers = watch ? new ArrayList<ChangeWatcher>() : null;
+        ArchiveEclipseOutput.Archive output = null;
+        int count;
+        try {
+            if (archive != null)
+                output = new ArchiveEclipseOutput.Archive(archive);
+            count = generateModules(descriptors, workspace, output, loaded, modules, watchers,
+                    errors);
+        } finally {
+            if (output != null)
+                output.close();
+        }
+        if (output != null)
+            log("Written " + output.getEntries() + " files into the archive \""
+                    + archive.getAbsolutePath() + "\".", Project.MSG_VERBOSE);
+        log("Generated " + (descriptors.size() - errors.size()) + " of "
+                + descriptors.size() + " modules in " + (System.currentTimeMillis() - start)
+                + " ms using " + count + (count == 1 ? " thread." : " threads."));
+        if (timingReport != null) {
+            List<PhaseTimer> timers = new ArrayList<PhaseTimer>(modules.size());
+            for (Iterator<EclipseTask> tasks = modules.iterator(); tasks.hasNext();)
+                timers.add(tasks.next().getTimer());
+            PhaseTimer.writeReport(timingReport, timers);
+        }
+        if (errors.size() != 0) {
+            for (Iterator<String> messages = errors.iterator(); messages.hasNext();)
+                log(messages.next(), Project.MSG_ERR);
+            if (errorProperty != null)
+                getProject().setNewProperty(errorProperty, "true");
+            if (failOnError)
+                throw new BuildException("Generating " + errors.size() + " of "
+                        + descriptors.size() + " modules failed.");
+        }
+        if (watch)
+            watchModules(loaded, modules, watchers, workspace);
+    }
+
+    private int generateModules(List<File> descriptors, WorkspaceContext workspace,
+            ArchiveEclipseOutput.Archive archive, List<ModuleDescriptor> loaded,
+            List<EclipseTask> modules, List<ChangeWatcher> watchers, List<String> errors) {
+        // descriptors are read serially; they expand properties of this project
+        for (Iterator<File> files = descriptors.iterator(); files.hasNext();) {
+            File file = files.next();
+            try {
+                ModuleDescriptor descriptor = new ModuleDescriptor(file, getProject());
+                modules.add(createModule(descriptor, workspace, archive));
+                loaded.add(descriptor);
+            } catch (BuildException exception) {
+                errors.add(file.getAbsolutePath() + ": " + exception.getMessage());
+            }
+        }
+        // the modules share the paths resolved again
+        if (refreshPaths)
+            for (int i = 0, size = modules.size(); i != size; ++i)
+                new ClassPathGenerator(modules.get(i)).forgetResolvedPaths();
+        // changes made during the generation are noticed by the first check
+        if (watchers != null)
+            for (int i = 0, size = modules.size(); i != size; ++i)
+                watchers.add(createWatcher(loaded.get(i), modules.get(i)));
+        int count = Math.max(1, Math.min(threads, modules.size()));
+        List<Callable<String>> jobs = new ArrayList<Callable<String>>(modules.size());
+        for (Iterator<EclipseTask> tasks = modules.iterator(); tasks.hasNext();) {
+            final EclipseTask task = tasks.next();
+            jobs.add(new Callable<String>() {
+
+                public String call() {
+                    return generateModule(task);
+                }
+            });
+        }
+        run(jobs, modules, count, errors);
+        if (batch)
+            flushModules(workspace, modules, count, errors);
+        return count;
+    }
+
+    private List<File> findDescriptors() {
+        List<File> descriptors = new ArrayList<File>();
+        for (int i = 0, size = fileSets.size(); i != size; ++i) {
+            DirectoryScanner scanner = fileSets.get(i).getDirectoryScanner(getProject());
+            String[] names = scanner.getIncludedFiles();
+            for (int j = 0; j != names.length; ++j)
+                descriptors.add(new File(scanner.getBasedir(), names[j]));
+        }
+        for (int i = 0, size = dirSets.size(); i != size; ++i) {
+            DirectoryScanner scanner = dirSets.get(i).getDirectoryScanner(getProject());
+            String[] names = scanner.getIncludedDirectories();
+            for (int j = 0; j != names.length; ++j) {
+                File file = new File(new File(scanner.getBasedir(), names[j]), descriptor);
+                if (file.isFile())
+                    descriptors.add(file);
+                else
+                    log("The directory \"" + file.getParent()
+                            + "\" contains no module descriptor.", Project.MSG_VERBOSE);
+            }
+        }
+        return descriptors;
+    }
+
+    private EclipseTask createModule(ModuleDescriptor module, WorkspaceContext workspace,
+            ArchiveEclipseOutput.Archive archive) {
+        EclipseElement eclipse = module.load();
+        eclipse.setUpdateAlways(updateAlways);
+        if (upToDateCheck != null)
+            eclipse.setUpToDateCheck(upToDateCheck);
+        eclipse.setWriteIfChanged(writeIfChanged);
+        eclipse.setSync(sync);
+        eclipse.setBuffered(batch);
+        eclipse.setSourceDiscoveryThreads(sourceDiscoveryThreads);
+        eclipse.setSettingsThreads(settingsThreads);
+        if (sourceCache != null)
+            eclipse.setSourceCache(sourceCache);
+        // a subproject carries the base directory and the log of the module like in subant
+        Project project = getProject().createSubProject();
+        project.setInputHandler(getProject().getInputHandler());
+        getProject().copyUserProperties(project);
+        getProject().copyInheritedProperties(project);
+        project.initProperties();
+        project.setBaseDir(module.getBaseDir());
+        project.setUserProperty(FileEclipseOutput.ANT_FILE_PROPERTY, module.getFile()
+                .getAbsolutePath());
+        project.setUserProperty("ant.project.name", module.getName());
+        project.addBuildListener(new ModuleListener(getProject()));
+        EclipseTask task = archive != null ? new EclipseTask(new ArchiveEclipseOutput(
+                eclipse, archive, getArchivePath(module))) : new EclipseTask(eclipse);
+        task.setProject(project);
+        task.setTaskName(module.getName());
+        task.setWorkspace(workspace);
+        return task;
+    }
+
+    private void watchModules(List<ModuleDescriptor> descriptors, List<EclipseTask> modules,
+            List<ChangeWatcher> watchers, WorkspaceContext workspace) {
+        int files = 0;
+        for (int i = 0, size = watchers.size(); i != size; ++i)
+            files += watchers.get(i).getWatchedFiles();
+        long end = watchTimeout > 0 ? System.currentTimeMillis() + watchTimeout
+                : Long.MAX_VALUE;
+        log("Watching " + files + " files of " + modules.size() + " modules for changes.");
+        for (long now; (now = System.currentTimeMillis()) < end;) {
+            try {
+                Thread.sleep(Math.min(watchInterval, end - now));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            for (int i = 0, size = modules.size(); i != size; ++i) {
+                int kinds = watchers.get(i).poll();
+                if (kinds != 0)
+                    regenerateModule(descriptors, modules, watchers, i, kinds, workspace);
+            }
+        }
+        log("Stopped watching for changes.", Project.MSG_VERBOSE);
+    }
+
+    private ChangeWatcher createWatcher(ModuleDescriptor descriptor, EclipseTask task) {
+        // the module descriptor is the build file of the module
+        ChangeWatcher watcher = task.createWatcher();
+        List<File> files = descriptor.getPreferenceFiles();
+        for (int i = 0, size = files.size(); i != size; ++i)
+            watcher.watch(files.get(i), ChangeWatcher.CONFIGURATION | ChangeWatcher.SETTINGS);
+        return watcher;
+    }
+
+    private void regenerateModule(List<ModuleDescriptor> descriptors,
+            List<EclipseTask> modules, List<ChangeWatcher> watchers, int index, int kinds,
+            WorkspaceContext workspace) {
+        EclipseTask task = modules.get(index);
+        try {
+            if ((kinds & ChangeWatcher.CONFIGURATION) != 0) {
+                ModuleDescriptor descriptor = new ModuleDescriptor(descriptors.get(index)
+                        .getFile(), getProject());
+                task = createModule(descriptor, workspace, null);
+                descriptors.set(index, descriptor);
+                modules.set(index, task);
+                watchers.set(index, createWatcher(descriptor, task));
+            }
+            log("Regenerating the module \"" + task.getTaskName() + "\".",
+                    Project.MSG_VERBOSE);
+            task.regenerate(kinds & ChangeWatcher.ALL);
+        } catch (BuildException exception) {
+            log(task.getTaskName() + ": " + exception.getMessage(), Project.MSG_ERR);
+        }
+        // new library directories could have been added
+        new ClassPathGenerator(task).watch(watchers.get(index));
+    }
+
+    private String getArchivePath(ModuleDescriptor module) {
+        String base = getProject().getBaseDir().getAbsolutePath();
+        String directory = module.getBaseDir().getAbsolutePath();
+        if (directory.equals(base))
+            return "";
+        if (directory.startsWith(base + File.separatorChar))
+            return directory.substring(base.length() + 1).replace(File.separatorChar, '/');
+        return module.getName();
+    }
+
+    private String generateModule(EclipseTask task) {
+        try {
+            task.execute();
+            return null;
+        } catch (BuildException exception) {
+            return task.getTaskName() + ": " + exception.getMessage();
+        }
+    }
+
+    private void flushModules(WorkspaceContext workspace, List<EclipseTask> modules,
+            int count, List<String> errors) {
+        // the outputs are flushed in the order of the modules
+        Map<EclipseTask, BufferingEclipseOutput> outputs = new HashMap<EclipseTask, BufferingEclipseOutput>();
+        List<BufferingEclipseOutput> pending = workspace.removePendingOutputs();
+        for (Iterator<BufferingEclipseOutput> iterator = pending.iterator(); iterator
+                .hasNext();) {
+            BufferingEclipseOutput output = iterator.next();
+            outputs.put(output.getTask(), output);
+        }
+        List<EclipseTask> tasks = new ArrayList<EclipseTask>(pending.size());
+        List<Callable<String>> jobs = new ArrayList<Callable<String>>(pending.size());
+        for (Iterator<EclipseTask> iterator = modules.iterator(); iterator.hasNext();) {
+            final EclipseTask task = iterator.next();
+            final BufferingEclipseOutput output = outputs.get(task);
+            if (output == null)
+                continue;
+            tasks.add(task);
+            jobs.add(new Callable<String>() {
+
+                public String call() {
+                    try {
+                        output.flush(1);
+                        return null;
+                    } catch (BuildException exception) {
+                        return task.getTaskName() + ": " + exception.getMessage();
+                    }
+                }
+            });
+        }
+        run(jobs, tasks, Math.max(1, Math.min(count, jobs.size())), errors);
+    }
+
+    private void run(List<Callable<String>> jobs, List<EclipseTask> tasks, int count,
+            List<String> errors) {
+        if (count == 1) {
+            for (int i = 0, size = jobs.size(); i != size; ++i) {
+                String error;
+                try {
+                    error = jobs.get(i).call();
+                } catch (Exception exception) {
+                    error = tasks.get(i).getTaskName() + ": " + exception;
+                }
+                if (error != null)
+                    errors.add(error);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>(jobs.size());
+            for (int i = 0, size = jobs.size(); i != size; ++i)
+                results.add(executor.submit(jobs.get(i)));
+            // the errors are collected in the order of the modules
+            for (int i = 0, size = results.size(); i != size; ++i) {
+                String error = getResult(results.get(i), tasks.get(i));
+                if (error != null)
+                    errors.add(error);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String getResult(Future<String> result, EclipseTask task) {
+        try {
+            return result.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("Generating the workspace was interrupted.", exception);
+        } catch (ExecutionException exception) {
+            return task.getTaskName() + ": " + exception.getCause();
+        }
+    }
+
+}
@@ -26,6 +26,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Properties;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
@@ -41,9 +42,120 @@ import org.apache.tools.ant.util.FileUtils;
  */
 class FileEclipseOutput extends EclipseOutput {
 
+    /**
+     * Writes into a temporary file, which replaces the target file when the stream is
+     * closed. Readers see either the previous or the complete new content; an interrupted
+     * or discarded generation leaves the previous file untouched. The replacement is not
+     * atomic on systems which cannot rename a file to an existing one, like Windows,
+     * where the target file is deleted first; if the renaming fails then, there is no
+     * file left.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    static final class ReplacingFileOutputStream extends FileOutputStream implements
+            EclipseOutput.Discardable {
+
+        private File temporary;
+
+        private File target;
+
+        private boolean sync;
+
+        private boolean closed = false;
+
+        /**
+         * Creates a new stream writing into a temporary file.
+         * 
+         * @param temporary
+         *        The file to write into.
+         * @param target
+         *        The file to replace by the written one.
+         * @param sync
+         *        <tt>True</tt> if the content should be forced to the storage device
+         *        before replacing the target file.
+         * @throws FileNotFoundException
+         *         If the temporary file cannot be opened.
+         * @since Ant-Eclipse 1.0
+         */
+        ReplacingFileOutputStream(File temporary, File target, boolean sync)
+                throws FileNotFoundException {
+            super(temporary);
+            this.temporary = temporary;
+            this.target = target;
+            this.sync = sync;
+        }
+
+        /**
+         * Closes the temporary file and renames it to the target file. If the system
+         * cannot rename a file to an existing one, the target file is deleted first,
+         * which is not atomic.
+         * 
+         * @throws IOException
+         *         If the content could not be written or the file could not be renamed.
+         * @see java.io.FileOutputStream#close()
+         * @since Ant-Eclipse 1.0
+         */
+        @Override
+        public void close() throws IOException {
+            // closing the channel of the stream calls this method again
+            if (closed)
+                return;
+            closed = true;
+            try {
+                try {
+                    if (sync)
+                        getFD().sync();
+                } finally {
+                    super.close();
+                }
+            } catch (IOException exception) {
+                temporary.delete();
+                throw exception;
+            }
+            if (!temporary.renameTo(target)
+                    && (!target.delete() || !temporary.renameTo(target))) {
+                temporary.delete();
+                throw new IOException("Renaming the file \"" + temporary.getAbsolutePath()
+                        + "\" to \"" + target.getAbsolutePath() + "\" failed.");
+            }
+        }
+
+        /**
+         * Closes and deletes the temporary file, leaving the target file untouched.
+         * 
+         * @throws IOException
+         *         If the temporary file could not be closed.
+         * @see EclipseOutput.Discardable#discard()
+         * @since Ant-Eclipse 1.0
+         */
+        public void discard() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                temporary.delete();
+            }
+        }
+
+    }
+
     public static final String ANT_FILE_PROPERTY = "ant.file";
+
+    /**
+     * The name of the file in the destination directory keeping the fingerprints of the
+     * generated files.
+     */
+    public static final String FINGERPRINTS_FILE = ".ant-eclipse.fingerprints";
+
     private EclipseTask task;
 
+    private Properties fingerprints = null;
+
+    private boolean fingerprintsModified = false;
+
     /**
      * Creates a new instance of the output object.
      * 
@@ -104,7 +216,7 @@ class FileEclipseOutput extends EclipseOutput {
      * 
      * @param name
      *        A name of the file with preferences.
-     * @return Input stream for the opened file.
+     * @return Input stream for the opened file or <tt>null</tt> if it does not exist.
      * @see EclipseOutput#openPreferences(String)
      * @since Ant-Eclipse 1.0
      */
@@ -116,7 +228,7 @@ class FileEclipseOutput extends EclipseOutput {
     /**
      * Opens an existing file named ".project" in the destination directory.
      * 
-     * @return Input stream for the opened file.
+     * @return Input stream for the opened file or <tt>null</tt> if it does not exist.
      * @see EclipseOutput#openPreferences(String)
      * @since Ant-Eclipse 1.0
      */
@@ -128,7 +240,7 @@ class FileEclipseOutput extends EclipseOutput {
     /**
      * Opens an existing file named ".classpath" in the destination directory.
      * 
-     * @return Input stream for the opened file.
+     * @return Input stream for the opened file or <tt>null</tt> if it does not exist.
      * @see EclipseOutput#openClassPath()
      * @since Ant-Eclipse 1.0
      */
@@ -176,6 +288,88 @@ class FileEclipseOutput extends EclipseOutput {
         return createFile(".classpath");
     }
 
+    /**
+     * Returns the fingerprint of the content stored when the specified file was written
+     * the last time, if the file still exists.
+     * 
+     * @param name
+     *        The path of the generated file relative to the destination directory.
+     * @return The fingerprint of the content of the file or <tt>null</tt> if not known
+     *         or if the file does not exist.
+     * @see EclipseOutput#getFingerprint(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    String getFingerprint(String name) {
+        if (!resolveFile(name).isFile())
+            return null;
+        return getFingerprints().getProperty(name);
+    }
+
+    /**
+     * Stores the fingerprint of the content just written into the specified file. The
+     * fingerprints are saved in the file {@link #FINGERPRINTS_FILE} when the output is
+     * closed.
+     * 
+     * @param name
+     *        The path of the generated file relative to the destination directory.
+     * @param value
+     *        The fingerprint of the content of the file.
+     * @see EclipseOutput#setFingerprint(String, String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    synchronized void setFingerprint(String name, String value) {
+        getFingerprints().setProperty(name, value);
+        fingerprintsModified = true;
+    }
+
+    /**
+     * Saves the fingerprints of the written files if some were changed.
+     * 
+     * @see EclipseOutput#close()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    synchronized void close() {
+        if (!fingerprintsModified)
+            return;
+        OutputStream output = createFile(FINGERPRINTS_FILE);
+        try {
+            try {
+                fingerprints.store(output, "Generated by Ant-Eclipse, do not edit");
+            } catch (IOException exception) {
+                discard(output);
+                throw exception;
+            }
+            output.close();
+        } catch (IOException exception) {
+            throw new BuildException("Writing the file \"" + FINGERPRINTS_FILE
+                    + "\" failed.", exception);
+        }
+        fingerprintsModified = false;
+    }
+
+    private synchronized Properties getFingerprints() {
+        if (fingerprints == null) {
+            fingerprints = new Properties();
+            InputStream input = openFile(FINGERPRINTS_FILE);
+            if (input != null) {
+                try {
+                    try {
+                        fingerprints.load(input);
+                    } finally {
+                        input.close();
+                    }
+                } catch (IOException exception) {
+                    throw new BuildException("Reading the file \"" + FINGERPRINTS_FILE
+                            + "\" failed.", exception);
+                }
+            }
+        }
+        return fingerprints;
+    }
+
     private boolean isFileUpToDate(String name) {
         return !getEclipse().isUpdateAlways()
                 && FileUtils.getFileUtils().isUpToDate(
@@ -185,6 +379,8 @@ class FileEclipseOutput extends EclipseOutput {
 
     private InputStream openFile(String name) {
         File input = resolveFile(name);
+        if (!input.isFile())
+            return null;
         try {
             task.log("Opening the file \"" + input.getAbsolutePath() + "\".",
                     Project.MSG_VERBOSE);
@@ -200,8 +396,13 @@ class FileEclipseOutput extends EclipseOutput {
         try {
             task.log("Creating the file \"" + output.getAbsolutePath() + "\".",
                     Project.MSG_VERBOSE);
-            FileUtils.getFileUtils().createNewFile(output, true);
-            return new FileOutputStream(output);
+            File directory = output.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Creation of the directory \""
+                        + directory.getAbsolutePath() + "\" failed.");
+            // the file is replaced only when completely written
+            File temporary = File.createTempFile(output.getName() + ".", ".tmp", directory);
+            return new ReplacingFileOutputStream(temporary, output, getEclipse().isSync());
         } catch (IOException exception) {
             throw new BuildException("Creation of the file \"" + output.getAbsolutePath()
                     + "\" falied.", exception);
@@ -0,0 +1,125 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Computes fingerprints of the resolved input of a generated file, which are compared
+ * to find out if the file needs to be generated again. The values describing the
+ * input are added one by one; every value is prefixed by its length, so that values
+ * cannot be shifted from one to another without changing the fingerprint.
+ * 
+ * @see EclipseElement.UpToDateCheck
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class Fingerprint {
+
+    private static final String ALGORITHM = "SHA-1";
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private MessageDigest digest;
+
+    /**
+     * Creates a new fingerprint of an empty input.
+     * 
+     * @since Ant-Eclipse 1.0
+     */
+    Fingerprint() {
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new BuildException("The digest algorithm " + ALGORITHM
+                    + " is not supported.", exception);
+        }
+    }
+
+    /**
+     * Adds a text value to the input.
+     * 
+     * @param value
+     *        The value to add; it can be <tt>null</tt>.
+     * @return This fingerprint.
+     * @since Ant-Eclipse 1.0
+     */
+    Fingerprint add(String value) {
+        if (value == null)
+            return add(-1);
+        byte[] bytes;
+        try {
+            bytes = value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException exception) {
+            throw new BuildException(exception);
+        }
+        add(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    /**
+     * Adds a numeric value to the input.
+     * 
+     * @param value
+     *        The value to add.
+     * @return This fingerprint.
+     * @since Ant-Eclipse 1.0
+     */
+    Fingerprint add(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8)
+            digest.update((byte) (value >>> shift));
+        return this;
+    }
+
+    /**
+     * Adds a boolean value to the input.
+     * 
+     * @param value
+     *        The value to add.
+     * @return This fingerprint.
+     * @since Ant-Eclipse 1.0
+     */
+    Fingerprint add(boolean value) {
+        digest.update((byte) (value ? 1 : 0));
+        return this;
+    }
+
+    /**
+     * Returns the fingerprint of the input added so far and starts with an empty one.
+     * 
+     * @return A hexadecimal string with the hash of the input.
+     * @since Ant-Eclipse 1.0
+     */
+    String getValue() {
+        byte[] hash = digest.digest();
+        char[] result = new char[hash.length * 2];
+        for (int i = 0; i != hash.length; ++i) {
+            result[2 * i] = DIGITS[(hash[i] >> 4) & 0xf];
+            result[2 * i + 1] = DIGITS[hash[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+}
@@ -0,0 +1,175 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+
+package prantl.ant.eclipse;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Implements the output interface passing every call to another output object, so
+ * that the decorating outputs override only the methods they change. The other output
+ * object may be missing; no file is up-to-date or exists then, the fingerprints are
+ * not kept and no file can be created.
+ * 
+ * @see EclipseOutput
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+abstract class ForwardingEclipseOutput extends EclipseOutput {
+
+    private EclipseOutput target;
+
+    /**
+     * Creates a new instance of the output object.
+     * 
+     * @param element
+     *        An object containing the configuration.
+     * @param object
+     *        An object that the calls are passed to or <tt>null</tt> if there is none.
+     * @since Ant-Eclipse 1.0
+     */
+    ForwardingEclipseOutput(EclipseElement element, EclipseOutput object) {
+        super(element);
+        target = object;
+    }
+
+    /**
+     * Returns the object that the calls are passed to.
+     * 
+     * @return The object that the calls are passed to or <tt>null</tt> if there is
+     *         none.
+     * @since Ant-Eclipse 1.0
+     */
+    EclipseOutput getTarget() {
+        return target;
+    }
+
+    /**
+     * @see EclipseOutput#isPreferencesUpToDate(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    boolean isPreferencesUpToDate(String name) {
+        return target != null && target.isPreferencesUpToDate(name);
+    }
+
+    /**
+     * @see EclipseOutput#isProjectUpToDate()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    boolean isProjectUpToDate() {
+        return target != null && target.isProjectUpToDate();
+    }
+
+    /**
+     * @see EclipseOutput#isClassPathUpToDate()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    boolean isClassPathUpToDate() {
+        return target != null && target.isClassPathUpToDate();
+    }
+
+    /**
+     * @see EclipseOutput#openPreferences(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openPreferences(String name) {
+        return target != null ? target.openPreferences(name) : null;
+    }
+
+    /**
+     * @see EclipseOutput#openProject()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openProject() {
+        return target != null ? target.openProject() : null;
+    }
+
+    /**
+     * @see EclipseOutput#openClassPath()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    InputStream openClassPath() {
+        return target != null ? target.openClassPath() : null;
+    }
+
+    /**
+     * @see EclipseOutput#createPreferences(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createPreferences(String name) {
+        return target.createPreferences(name);
+    }
+
+    /**
+     * @see EclipseOutput#createProject()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createProject() {
+        return target.createProject();
+    }
+
+    /**
+     * @see EclipseOutput#createClassPath()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createClassPath() {
+        return target.createClassPath();
+    }
+
+    /**
+     * @see EclipseOutput#getFingerprint(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    String getFingerprint(String name) {
+        return target != null ? target.getFingerprint(name) : null;
+    }
+
+    /**
+     * @see EclipseOutput#setFingerprint(String, String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    void setFingerprint(String name, String value) {
+        if (target != null)
+            target.setFingerprint(name, value);
+    }
+
+    /**
+     * @see EclipseOutput#close()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    void close() {
+        if (target != null)
+            target.close();
+    }
+
+}
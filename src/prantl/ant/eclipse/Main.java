@@ -0,0 +1,177 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+
+/**
+ * Generates project configuration files for Eclipse from the command line, without
+ * starting Ant and parsing a build file. The modules are described by descriptors in
+ * the format of Java properties, which are read by the class ModuleDescriptor. Only the
+ * Ant library is needed on the class path; a cold start can be shortened further by an
+ * archive for the Class-Data Sharing as described in the file INSTALL.
+ * 
+ * <pre>
+ * java -cp ant.jar:ant-eclipse.jar prantl.ant.eclipse.Main [options] descriptor...
+ * </pre>
+ * 
+ * A descriptor can be a file or a directory containing the file "eclipse.properties".
+ * There is no build file to define references in, so the paths referred by the keys
+ * <tt>.pathref</tt> have to be defined by the option <tt>-path</tt>; their elements are
+ * literal file names, filesets and patterns cannot be used. A descriptor cannot refer
+ * to a profile of settings by the key <tt>settings.profile</tt>.
+ * 
+ * @see ModuleDescriptor
+ * @see EclipseWorkspaceTask
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+public final class Main {
+
+    private static final String USAGE = "Usage: java prantl.ant.eclipse.Main [options] descriptor...\n"
+            + "Options:\n"
+            + "  -D<name>=<value>     define a property used in the descriptors\n"
+            + "  -path <id>=<path>    define a path referred by the keys .pathref\n"
+            + "  -threads <count>     generate the modules by more threads\n"
+            + "  -updatealways        write the files even if they are up-to-date\n"
+            + "  -writeifchanged      write only the files whose content has changed\n"
+            + "  -verbose, -quiet     print more or less messages\n"
+            + "  -help                print this message\n"
+            + "A descriptor is a properties file or a directory containing the file \""
+            + EclipseWorkspaceTask.DEFAULT_DESCRIPTOR + "\".\n"
+            + "The elements of a path are file names separated by \":\" or \";\"; filesets\n"
+            + "cannot be defined and the key settings.profile is not supported.";
+
+    private Main() {
+    }
+
+    /**
+     * Runs the generation and exits with the status zero if it succeeded, one if it
+     * failed and two if the arguments were invalid.
+     * 
+     * @param args
+     *        The command line arguments.
+     * @since Ant-Eclipse 1.0
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the generation with the specified arguments.
+     * 
+     * @param args
+     *        The command line arguments.
+     * @param out
+     *        The stream to print the messages to.
+     * @param err
+     *        The stream to print the errors to.
+     * @return Zero if the generation succeeded, one if it failed and two if the
+     *         arguments were invalid.
+     * @since Ant-Eclipse 1.0
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Project project = new Project();
+        project.setBasedir(System.getProperty("user.dir"));
+        EclipseWorkspaceTask task = new EclipseWorkspaceTask();
+        task.setProject(project);
+        task.setTaskName("eclipse");
+        int level = Project.MSG_INFO;
+        int descriptors = 0;
+        try {
+            for (int i = 0; i != args.length; ++i) {
+                String arg = args[i];
+                if (arg.startsWith("-D") && arg.indexOf('=') > 2) {
+                    int separator = arg.indexOf('=');
+                    project.setUserProperty(arg.substring(2, separator), arg
+                            .substring(separator + 1));
+                } else if (arg.equals("-path") && i + 1 != args.length)
+                    definePath(project, args[++i]);
+                else if (arg.equals("-threads") && i + 1 != args.length)
+                    task.setThreads(Integer.parseInt(args[++i]));
+                else if (arg.equals("-updatealways"))
+                    task.setUpdateAlways(true);
+                else if (arg.equals("-writeifchanged"))
+                    task.setWriteIfChanged(true);
+                else if (arg.equals("-verbose"))
+                    level = Project.MSG_VERBOSE;
+                else if (arg.equals("-quiet"))
+                    level = Project.MSG_WARN;
+                else if (arg.equals("-help")) {
+                    out.println(USAGE);
+                    return 0;
+                } else if (arg.startsWith("-"))
+                    throw new IllegalArgumentException("Unknown option \"" + arg + "\".");
+                else {
+                    task.addFileSet(createFileSet(project.resolveFile(arg)));
+                    ++descriptors;
+                }
+            }
+            if (descriptors == 0)
+                throw new IllegalArgumentException("No descriptor was specified.");
+        } catch (IllegalArgumentException exception) {
+            err.println(exception.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (BuildException exception) {
+            err.println(exception.getMessage());
+            return 2;
+        }
+        DefaultLogger logger = new DefaultLogger();
+        logger.setOutputPrintStream(out);
+        logger.setErrorPrintStream(err);
+        logger.setMessageOutputLevel(level);
+        project.addBuildListener(logger);
+        try {
+            task.execute();
+            return 0;
+        } catch (BuildException exception) {
+            err.println(exception.getMessage());
+            return 1;
+        }
+    }
+
+    private static void definePath(Project project, String arg) {
+        int separator = arg.indexOf('=');
+        if (separator < 1)
+            throw new IllegalArgumentException("Invalid path definition \"" + arg + "\".");
+        project.addReference(arg.substring(0, separator), new Path(project, arg
+                .substring(separator + 1)));
+    }
+
+    private static FileSet createFileSet(File file) {
+        if (file.isDirectory())
+            file = new File(file, EclipseWorkspaceTask.DEFAULT_DESCRIPTOR);
+        if (!file.isFile())
+            throw new IllegalArgumentException("The descriptor \"" + file.getAbsolutePath()
+                    + "\" does not exist.");
+        FileSet set = new FileSet();
+        set.setFile(file);
+        return set;
+    }
+
+}
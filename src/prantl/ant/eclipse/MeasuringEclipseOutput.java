@@ -0,0 +1,192 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Implements the output interface passing everything to another output object and
+ * measuring the time spent writing into and closing the created streams and the count
+ * of the written files and bytes.
+ * 
+ * @see EclipseOutput
+ * @see PhaseTimer
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+class MeasuringEclipseOutput extends ForwardingEclipseOutput {
+
+    /**
+     * Passes the content to the target stream measuring the time and counting the
+     * bytes.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private final class MeasuringOutputStream extends FilterOutputStream implements
+            Discardable {
+
+        private boolean closed = false;
+
+        /**
+         * Creates a new instance of the output stream.
+         * 
+         * @param stream
+         *        The stream to write the content into.
+         * @since Ant-Eclipse 1.0
+         */
+        MeasuringOutputStream(OutputStream stream) {
+            super(stream);
+        }
+
+        /**
+         * @see java.io.FilterOutputStream#write(int)
+         * @since Ant-Eclipse 1.0
+         */
+        @Override
+        public void write(int b) throws IOException {
+            long start = timer.start();
+            out.write(b);
+            timer.stop(PhaseTimer.OUTPUT, start);
+            timer.count(PhaseTimer.BYTES, 1);
+        }
+
+        /**
+         * @see java.io.FilterOutputStream#write(byte[], int, int)
+         * @since Ant-Eclipse 1.0
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = timer.start();
+            out.write(b, off, len);
+            timer.stop(PhaseTimer.OUTPUT, start);
+            timer.count(PhaseTimer.BYTES, len);
+        }
+
+        /**
+         * @see java.io.FilterOutputStream#close()
+         * @since Ant-Eclipse 1.0
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            long start = timer.start();
+            try {
+                out.close();
+            } finally {
+                timer.stop(PhaseTimer.OUTPUT, start);
+            }
+            timer.count(PhaseTimer.FILES, 1);
+        }
+
+        /**
+         * Discards the target stream; the file is not counted.
+         * 
+         * @see EclipseOutput.Discardable#discard()
+         * @since Ant-Eclipse 1.0
+         */
+        public void discard() {
+            if (closed)
+                return;
+            closed = true;
+            EclipseOutput.discard(out);
+        }
+
+    }
+
+    private PhaseTimer timer;
+
+    /**
+     * Creates a new instance of the output object.
+     * 
+     * @param object
+     *        An object that the content is written into.
+     * @param measurer
+     *        The timer to record the measured values into.
+     * @since Ant-Eclipse 1.0
+     */
+    MeasuringEclipseOutput(EclipseOutput object, PhaseTimer measurer) {
+        super(object.getEclipse(), object);
+        timer = measurer;
+    }
+
+    /**
+     * @see EclipseOutput#createPreferences(String)
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createPreferences(String name) {
+        long start = timer.start();
+        try {
+            return new MeasuringOutputStream(getTarget().createPreferences(name));
+        } finally {
+            timer.stop(PhaseTimer.OUTPUT, start);
+        }
+    }
+
+    /**
+     * @see EclipseOutput#createProject()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createProject() {
+        long start = timer.start();
+        try {
+            return new MeasuringOutputStream(getTarget().createProject());
+        } finally {
+            timer.stop(PhaseTimer.OUTPUT, start);
+        }
+    }
+
+    /**
+     * @see EclipseOutput#createClassPath()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    OutputStream createClassPath() {
+        long start = timer.start();
+        try {
+            return new MeasuringOutputStream(getTarget().createClassPath());
+        } finally {
+            timer.stop(PhaseTimer.OUTPUT, start);
+        }
+    }
+
+    /**
+     * Closes the target output; the time counts to the output phase.
+     * 
+     * @see EclipseOutput#close()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    void close() {
+        long start = timer.start();
+        try {
+            super.close();
+        } finally {
+            timer.stop(PhaseTimer.OUTPUT, start);
+        }
+    }
+
+}
@@ -0,0 +1,367 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.Reference;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Reads the configuration of a module from a compact descriptor in the format of Java
+ * properties, which covers the model of the task <tt>eclipse</tt> without an Ant build
+ * file. The directory of the descriptor is the base directory of the module. The values
+ * can refer to properties of the Ant project in the usual <tt>${name}</tt> notation and
+ * the path references are looked up in it. The following keys are recognized:
+ * <ul>
+ * <li><tt>name</tt> - the name of the Eclipse project, the name of the directory by
+ * default</li>
+ * <li><tt>mode</tt> - the project creation mode, "java" or "aspectj"</li>
+ * <li><tt>destdir</tt> - the directory to place generated files into</li>
+ * <li><tt>classpath.container</tt> - the path of the container</li>
+ * <li><tt>classpath.source</tt> - the comma-separated source directories</li>
+ * <li><tt>classpath.source.excluding</tt> - the pattern of excluded sources</li>
+ * <li><tt>classpath.output</tt> - the output directory</li>
+ * <li><tt>classpath.library</tt>, <tt>classpath.variable</tt> - the path of the binary
+ * entries; followed by <tt>.pathref</tt>, <tt>.exported</tt>, <tt>.source</tt>,
+ * <tt>.sourcepattern</tt> or <tt>.javadoc</tt> they set the rest of the attributes of
+ * the element; more elements of the same kind are numbered, like
+ * <tt>classpath.library.1</tt> and <tt>classpath.library.1.pathref</tt>, and follow
+ * the element without a number in the order of their numbers</li>
+ * <li><tt>settings.deterministic</tt> - if the preferences are written
+ * deterministically</li>
+ * <li><tt>settings.profile</tt> - the id of the settings used as a profile</li>
+ * <li><tt>settings.merge</tt> - if the variables are merged into the existing files</li>
+ * <li><tt>settings.</tt><em>name</em> - a properties file with variables of the
+ * preferences <em>name</em>, relative to the descriptor; the preferences
+ * <tt>org.eclipse.core.resources</tt>, <tt>org.eclipse.core.runtime</tt>,
+ * <tt>org.eclipse.jdt.core</tt> and <tt>org.eclipse.jdt.ui</tt> are validated and
+ * completed with their default variables like the elements <tt>resources</tt>,
+ * <tt>runtime</tt>, <tt>jdtcore</tt> and <tt>jdtui</tt></li>
+ * </ul>
+ * A binary entry cannot set both the path and <tt>.pathref</tt>. When the descriptors
+ * are read by the class <tt>Main</tt>, there is no build file to define references in;
+ * the paths have to be defined by its option <tt>-path</tt> and profiles are not
+ * supported.
+ * 
+ * @see EclipseWorkspaceTask
+ * @see Main
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class ModuleDescriptor {
+
+    private static final String SETTINGS_PREFIX = "settings.";
+
+    private static final String DETERMINISTIC_KEY = "settings.deterministic";
+
+    private static final String PROFILE_KEY = "settings.profile";
+
+    private static final String MERGE_KEY = "settings.merge";
+
+    private File file;
+
+    private Project project;
+
+    private Properties properties;
+
+    private List<File> preferenceFiles = new ArrayList<File>();
+
+    /**
+     * Creates a new instance reading the specified descriptor.
+     * 
+     * @param descriptor
+     *        The file with the description of the module.
+     * @param parent
+     *        The project to expand properties and look up path references in.
+     * @since Ant-Eclipse 1.0
+     */
+    ModuleDescriptor(File descriptor, Project parent) {
+        file = descriptor;
+        project = parent;
+    }
+
+    /**
+     * Returns the file with the description of the module.
+     * 
+     * @return The file with the description of the module.
+     * @since Ant-Eclipse 1.0
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the base directory of the module, which contains the descriptor.
+     * 
+     * @return The base directory of the module.
+     * @since Ant-Eclipse 1.0
+     */
+    File getBaseDir() {
+        return file.getAbsoluteFile().getParentFile();
+    }
+
+    /**
+     * Returns the name of the module, which is the name of the Eclipse project.
+     * 
+     * @return The name of the module.
+     * @since Ant-Eclipse 1.0
+     */
+    String getName() {
+        String name = getValue("name");
+        return name != null ? name : getBaseDir().getName();
+    }
+
+    /**
+     * Returns the properties files with the variables of the preferences read by the
+     * last loading of the descriptor.
+     * 
+     * @return The files with the variables of the preferences.
+     * @since Ant-Eclipse 1.0
+     */
+    List<File> getPreferenceFiles() {
+        return preferenceFiles;
+    }
+
+    /**
+     * Reads the descriptor and creates the configuration of the module from it.
+     * 
+     * @return The configuration of the module.
+     * @throws BuildException
+     *         If the descriptor cannot be read or it contains an invalid value.
+     * @since Ant-Eclipse 1.0
+     */
+    EclipseElement load() {
+        properties = new Properties();
+        preferenceFiles = new ArrayList<File>();
+        try {
+            InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException exception) {
+            throw new BuildException("Reading the module descriptor \""
+                    + file.getAbsolutePath() + "\" failed.", exception);
+        }
+        EclipseElement eclipse = new EclipseElement();
+        String value = getValue("mode");
+        if (value != null) {
+            EclipseElement.Mode mode = new EclipseElement.Mode();
+            mode.setValue(value);
+            eclipse.setMode(mode);
+        }
+        value = getValue("destdir");
+        if (value != null)
+            eclipse.setDestDir(new File(value));
+        ProjectElement projectElement = new ProjectElement();
+        projectElement.setName(getName());
+        eclipse.setProject(projectElement);
+        eclipse.setClassPath(loadClassPath());
+        SettingsElement settings = loadSettings();
+        if (settings != null)
+            eclipse.setSettings(settings);
+        return eclipse;
+    }
+
+    private ClassPathElement loadClassPath() {
+        ClassPathElement classPath = new ClassPathElement();
+        String value = getValue("classpath.container");
+        if (value != null)
+            classPath.createContainer().setPath(value);
+        value = getValue("classpath.source");
+        if (value != null) {
+            String excluding = getValue("classpath.source.excluding");
+            for (StringTokenizer tokens = new StringTokenizer(value, ","); tokens
+                    .hasMoreTokens();) {
+                ClassPathEntrySourceElement source = classPath.createSource();
+                source.setPath(tokens.nextToken().trim());
+                if (excluding != null)
+                    source.setExcluding(excluding);
+            }
+        }
+        value = getValue("classpath.output");
+        if (value != null)
+            classPath.createOutput().setPath(value);
+        List<String> prefixes = getBinaryPrefixes("classpath.variable");
+        for (int i = 0, size = prefixes.size(); i != size; ++i)
+            loadBinary(classPath.createVariable(), prefixes.get(i));
+        prefixes = getBinaryPrefixes("classpath.library");
+        for (int i = 0, size = prefixes.size(); i != size; ++i)
+            loadBinary(classPath.createLibrary(), prefixes.get(i));
+        return classPath;
+    }
+
+    /**
+     * Returns the prefixes of the keys of the binary entries of the specified kind: the
+     * kind itself, if the entry without a number is defined, followed by the numbered
+     * entries in the order of their numbers.
+     */
+    private List<String> getBinaryPrefixes(String kind) {
+        List<String> prefixes = new ArrayList<String>();
+        if (hasBinary(kind))
+            prefixes.add(kind);
+        TreeSet<Integer> numbers = new TreeSet<Integer>();
+        for (Iterator<String> keys = getSortedKeys(properties).iterator(); keys.hasNext();) {
+            String key = keys.next();
+            if (!key.startsWith(kind + "."))
+                continue;
+            String number = key.substring(kind.length() + 1);
+            int end = number.indexOf('.');
+            if (end >= 0)
+                number = number.substring(0, end);
+            if (isNumber(number) && hasBinary(kind + "." + number))
+                numbers.add(Integer.valueOf(number));
+        }
+        for (Iterator<Integer> iterator = numbers.iterator(); iterator.hasNext();)
+            prefixes.add(kind + "." + iterator.next());
+        return prefixes;
+    }
+
+    private static boolean isNumber(String text) {
+        if (text.length() == 0 || text.length() > 9)
+            return false;
+        for (int i = 0; i != text.length(); ++i)
+            if (!Character.isDigit(text.charAt(i)))
+                return false;
+        return true;
+    }
+
+    private boolean hasBinary(String prefix) {
+        return getValue(prefix) != null || getValue(prefix + ".pathref") != null;
+    }
+
+    private void loadBinary(ClassPathEntryBinaryElement entry, String prefix) {
+        String value = getValue(prefix + ".pathref");
+        if (value != null) {
+            if (getValue(prefix) != null)
+                throw new BuildException("The module descriptor \""
+                        + file.getAbsolutePath() + "\" sets both \"" + prefix
+                        + "\" and \"" + prefix + ".pathref\".");
+            entry.setPathRef(new Reference(project, value));
+        } else
+            entry.setPath(getValue(prefix));
+        value = getValue(prefix + ".exported");
+        if (value != null)
+            entry.setExported(Project.toBoolean(value));
+        value = getValue(prefix + ".source");
+        if (value != null)
+            entry.setSource(value);
+        value = getValue(prefix + ".sourcepattern");
+        if (value != null)
+            entry.setSourcePattern(value);
+        value = getValue(prefix + ".javadoc");
+        if (value != null)
+            entry.setJavadoc(value);
+    }
+
+    private SettingsElement loadSettings() {
+        SettingsElement settings = null;
+        for (Iterator<String> keys = getSortedKeys(properties).iterator(); keys.hasNext();) {
+            String key = keys.next();
+            if (!key.startsWith(SETTINGS_PREFIX))
+                continue;
+            if (settings == null)
+                settings = new SettingsElement();
+            if (key.equals(DETERMINISTIC_KEY)) {
+                settings.setDeterministic(Project.toBoolean(getValue(key)));
+                continue;
+            }
+            if (key.equals(MERGE_KEY)) {
+                settings.setMerge(Project.toBoolean(getValue(key)));
+                continue;
+            }
+            if (key.equals(PROFILE_KEY)) {
+                settings.setProfile(new Reference(project, getValue(key)));
+                continue;
+            }
+            PreferencesElement preferences = createPreferences(settings, key
+                    .substring(SETTINGS_PREFIX.length()));
+            File variablesFile = FileUtils.getFileUtils().resolveFile(getBaseDir(),
+                    getValue(key));
+            preferenceFiles.add(variablesFile);
+            Properties variables = new Properties();
+            try {
+                InputStream input = new FileInputStream(variablesFile);
+                try {
+                    variables.load(input);
+                } finally {
+                    input.close();
+                }
+            } catch (IOException exception) {
+                throw new BuildException("Reading the preferences \""
+                        + variablesFile.getAbsolutePath() + "\" failed.", exception);
+            }
+            for (Iterator<String> names = getSortedKeys(variables).iterator(); names
+                    .hasNext();) {
+                String name = names.next();
+                preferences.internalCreateVariable(name, project
+                        .replaceProperties(variables.getProperty(name)));
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Creates the element for the preferences with the specified name. The known
+     * preferences get their specific elements, which validate their variables and add
+     * the default ones.
+     */
+    private static PreferencesElement createPreferences(SettingsElement settings,
+            String name) {
+        if (name.equals(OrgEclipseCoreResourcesPreferencesElement.getPackageName()))
+            return settings.createResources();
+        if (name.equals(OrgEclipseCoreRuntimePreferencesElement.getPackageName()))
+            return settings.createRuntime();
+        if (name.equals(OrgEclipseJdtCorePreferencesElement.getPackageName()))
+            return settings.createJdtCore();
+        if (name.equals(OrgEclipseJdtUiPreferencesElement.getPackageName()))
+            return settings.createJdtUi();
+        GeneralPreferencesElement preferences = settings.createGeneral();
+        preferences.setName(name);
+        return preferences;
+    }
+
+    private String getValue(String key) {
+        String value = properties != null ? properties.getProperty(key) : null;
+        return value != null ? project.replaceProperties(value.trim()) : null;
+    }
+
+    private static TreeSet<String> getSortedKeys(Properties properties) {
+        TreeSet<String> keys = new TreeSet<String>();
+        for (Enumeration<?> names = properties.propertyNames(); names.hasMoreElements();)
+            keys.add((String) names.nextElement());
+        return keys;
+    }
+
+}
@@ -19,8 +19,10 @@
 
 package prantl.ant.eclipse;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.tools.ant.BuildException;
 
@@ -39,8 +41,6 @@ public class OrgEclipseJdtCorePreferencesElement extends PreferencesElement {
 
     private static final String COMPILERCOMPLIANCE_NAME = "org.eclipse.jdt.core.compiler.compliance";
 
-    private static final HashSet<String> COMPILERCOMPLIANCE_VALUES = new HashSet<String>();
-
     private static final String[] ORGECLIPSEJDTCORE_NAMES = {
             "org.eclipse.jdt.core.compiler.codegen.inlineJsrBytecode",
             "org.eclipse.jdt.core.compiler.codegen.targetPlatform",
@@ -53,7 +53,69 @@ public class OrgEclipseJdtCorePreferencesElement extends PreferencesElement {
             "org.eclipse.jdt.core.compiler.problem.enumIdentifier",
             "org.eclipse.jdt.core.compiler.source" };
 
-    private static final HashMap<String, String[]> ORGECLIPSEJDTCORE_DEFAULTS = new HashMap<String, String[]>();
+    // the default values differing among the compliance levels: the attribute value,
+    // targetPlatform, compliance, the severity of assertIdentifier and enumIdentifier
+    // and source; the other defaults are the same for all levels
+    private static final String[][] COMPILERCOMPLIANCE_TABLE = {
+            { "1.3", "1.1", "1.3", "ignore", "1.3" },
+            { "1.4", "1.2", "1.4", "warning", "1.3" },
+            { "1.5", "1.5", "1.5", "error", "1.5" },
+            { "5.0", "1.5", "1.5", "error", "1.5" },
+            { "1.6", "1.6", "1.6", "error", "1.6" },
+            { "6.0", "1.6", "1.6", "error", "1.6" },
+            { "1.7", "1.7", "1.7", "error", "1.7" },
+            { "7.0", "1.7", "1.7", "error", "1.7" },
+            { "1.8", "1.8", "1.8", "error", "1.8" },
+            { "8.0", "1.8", "1.8", "error", "1.8" },
+            { "9", "9", "9", "error", "9" },
+            { "10", "10", "10", "error", "10" },
+            { "11", "11", "11", "error", "11" },
+            { "12", "12", "12", "error", "12" },
+            { "13", "13", "13", "error", "13" },
+            { "14", "14", "14", "error", "14" },
+            { "15", "15", "15", "error", "15" },
+            { "16", "16", "16", "error", "16" },
+            { "17", "17", "17", "error", "17" },
+            { "18", "18", "18", "error", "18" },
+            { "19", "19", "19", "error", "19" },
+            { "20", "20", "20", "error", "20" },
+            { "21", "21", "21", "error", "21" } };
+
+    // the indexes of the variables above which defaults depend on the compliance level
+    private static final int[] COMPILERCOMPLIANCE_DEPENDENT = { 1, 3, 7, 8, 9 };
+
+    /**
+     * Holds the immutable defaults of the variables for all compliance levels. It is
+     * built from the table above when used for the first time; the class loader makes
+     * the initialization safe when elements are configured concurrently.
+     */
+    private static final class ComplianceDefaults {
+
+        static final Map<String, String[]> DEFAULTS;
+
+        static final Set<String> VALUES;
+
+        static {
+            Map<String, String[]> defaults = new LinkedHashMap<String, String[]>();
+            for (String[] row : COMPILERCOMPLIANCE_TABLE)
+                defaults.put(row[0], new String[] { "enabled", // org.eclipse.jdt.core.compiler.codegen.inlineJsrBytecode
+                        row[1], // org.eclipse.jdt.core.compiler.codegen.targetPlatform
+                        "preserve", // org.eclipse.jdt.core.compiler.codegen.unusedLocal
+                        row[2], // org.eclipse.jdt.core.compiler.compliance
+                        "generate", // org.eclipse.jdt.core.compiler.debug.lineNumber
+                        "generate", // org.eclipse.jdt.core.compiler.debug.localVariable
+                        "generate", // org.eclipse.jdt.core.compiler.debug.sourceFile
+                        row[3], // org.eclipse.jdt.core.compiler.problem.assertIdentifier
+                        row[3], // org.eclipse.jdt.core.compiler.problem.enumIdentifier
+                        row[4] // org.eclipse.jdt.core.compiler.source
+                });
+            DEFAULTS = Collections.unmodifiableMap(defaults);
+            VALUES = Collections.unmodifiableSet(defaults.keySet());
+        }
+
+        private ComplianceDefaults() {
+        }
+    }
 
     /**
      * Returns the name of the package these preferences belong to.
@@ -75,66 +137,6 @@ public class OrgEclipseJdtCorePreferencesElement extends PreferencesElement {
     public OrgEclipseJdtCorePreferencesElement(SettingsElement parent) {
         super(parent);
         internalSetName(getPackageName());
-        COMPILERCOMPLIANCE_VALUES.add("1.3");
-        COMPILERCOMPLIANCE_VALUES.add("1.4");
-        COMPILERCOMPLIANCE_VALUES.add("1.5");
-        COMPILERCOMPLIANCE_VALUES.add("5.0");
-        COMPILERCOMPLIANCE_VALUES.add("6.0");
-        ORGECLIPSEJDTCORE_DEFAULTS.put("1.3", new String[] { "enabled", // org.eclipse.jdt.core.compiler.codegen.inlineJsrBytecode
-                "1.1", // org.eclipse.jdt.core.compiler.codegen.targetPlatform
-                "preserve", // org.eclipse.jdt.core.compiler.codegen.unusedLocal
-                "1.3", // org.eclipse.jdt.core.compiler.compliance
-                "generate", // org.eclipse.jdt.core.compiler.debug.lineNumber
-                "generate", // org.eclipse.jdt.core.compiler.debug.localVariable
-                "generate", // org.eclipse.jdt.core.compiler.debug.sourceFile
-                "ignore", // org.eclipse.jdt.core.compiler.problem.assertIdentifier
-                "ignore", // org.eclipse.jdt.core.compiler.problem.enumIdentifier
-                "1.3" // org.eclipse.jdt.core.compiler.source
-        });
-        ORGECLIPSEJDTCORE_DEFAULTS.put("1.4", new String[] { "enabled", // org.eclipse.jdt.core.compiler.codegen.inlineJsrBytecode
-                "1.2", // org.eclipse.jdt.core.compiler.codegen.targetPlatform
-                "preserve", // org.eclipse.jdt.core.compiler.codegen.unusedLocal
-                "1.4", // org.eclipse.jdt.core.compiler.compliance
-                "generate", // org.eclipse.jdt.core.compiler.debug.lineNumber
-                "generate", // org.eclipse.jdt.core.compiler.debug.localVariable
-                "generate", // org.eclipse.jdt.core.compiler.debug.sourceFile
-                "warning", // org.eclipse.jdt.core.compiler.problem.assertIdentifier
-                "warning", // org.eclipse.jdt.core.compiler.problem.enumIdentifier
-                "1.3" // org.eclipse.jdt.core.compiler.source
-        });
-        ORGECLIPSEJDTCORE_DEFAULTS.put("1.5", new String[] { "enabled", // org.eclipse.jdt.core.compiler.codegen.inlineJsrBytecode
-                "1.5", // org.eclipse.jdt.core.compiler.codegen.targetPlatform
-                "preserve", // org.eclipse.jdt.core.compiler.codegen.unusedLocal
-                "1.5", // org.eclipse.jdt.core.compiler.compliance
-                "generate", // org.eclipse.jdt.core.compiler.debug.lineNumber
-                "generate", // org.eclipse.jdt.core.compiler.debug.localVariable
-                "generate", // org.eclipse.jdt.core.compiler.debug.sourceFile
-                "error", // org.eclipse.jdt.core.compiler.problem.assertIdentifier
-                "error", // org.eclipse.jdt.core.compiler.problem.enumIdentifier
-                "1.5" // org.eclipse.jdt.core.compiler.source
-        });
-        ORGECLIPSEJDTCORE_DEFAULTS.put("5.0", new String[] { "enabled", // org.eclipse.jdt.core.compiler.codegen.inlineJsrBytecode
-                "1.5", // org.eclipse.jdt.core.compiler.codegen.targetPlatform
-                "preserve", // org.eclipse.jdt.core.compiler.codegen.unusedLocal
-                "1.5", // org.eclipse.jdt.core.compiler.compliance
-                "generate", // org.eclipse.jdt.core.compiler.debug.lineNumber
-                "generate", // org.eclipse.jdt.core.compiler.debug.localVariable
-                "generate", // org.eclipse.jdt.core.compiler.debug.sourceFile
-                "error", // org.eclipse.jdt.core.compiler.problem.assertIdentifier
-                "error", // org.eclipse.jdt.core.compiler.problem.enumIdentifier
-                "1.5" // org.eclipse.jdt.core.compiler.source
-        });
-        ORGECLIPSEJDTCORE_DEFAULTS.put("6.0", new String[] { "enabled", // org.eclipse.jdt.core.compiler.codegen.inlineJsrBytecode
-                "1.6", // org.eclipse.jdt.core.compiler.codegen.targetPlatform
-                "preserve", // org.eclipse.jdt.core.compiler.codegen.unusedLocal
-                "1.6", // org.eclipse.jdt.core.compiler.compliance
-                "generate", // org.eclipse.jdt.core.compiler.debug.lineNumber
-                "generate", // org.eclipse.jdt.core.compiler.debug.localVariable
-                "generate", // org.eclipse.jdt.core.compiler.debug.sourceFile
-                "error", // org.eclipse.jdt.core.compiler.problem.assertIdentifier
-                "error", // org.eclipse.jdt.core.compiler.problem.enumIdentifier
-                "1.6" // org.eclipse.jdt.core.compiler.source
-        });
     }
 
     /**
@@ -158,7 +160,7 @@ public class OrgEclipseJdtCorePreferencesElement extends PreferencesElement {
      * @since Ant-Eclipse 1.0
      */
     public void setCompilerCompliance(String value) {
-        if (!COMPILERCOMPLIANCE_VALUES.contains(value))
+        if (!ComplianceDefaults.VALUES.contains(value))
             throw new BuildException("The attribute \"" + COMPILERCOMPLIANCE_ATTRIBUTE
                     + "\" (variable \"" + COMPILERCOMPLIANCE_NAME
                     + "\") has an invalid value \"" + value + "\". Valid values are "
@@ -174,7 +176,7 @@ public class OrgEclipseJdtCorePreferencesElement extends PreferencesElement {
      * @since Ant-Eclipse 1.0
      */
     String getValidCompilerComplianceValues() {
-        return getValidValues(COMPILERCOMPLIANCE_VALUES);
+        return getValidValues(ComplianceDefaults.VALUES);
     }
 
     /**
@@ -191,12 +193,42 @@ public class OrgEclipseJdtCorePreferencesElement extends PreferencesElement {
             throw new BuildException("The attribute \"" + COMPILERCOMPLIANCE_ATTRIBUTE
                     + "\" (variable \"" + COMPILERCOMPLIANCE_NAME
                     + "\") was missing in the element \"" + ELEMENT + "\".");
-        String[] defaults = ORGECLIPSEJDTCORE_DEFAULTS
-                .get(variable.getValue());
+        String[] defaults = getDefaults(variable.getValue());
         for (int i = 0; i < ORGECLIPSEJDTCORE_NAMES.length; ++i)
             internalAddVariable(ORGECLIPSEJDTCORE_NAMES[i], defaults[i]);
 
         super.validate();
     }
 
+    /**
+     * Performs the validation of the element overriding the preferences of a profile. If
+     * the element sets the compliance level, the variables which defaults depend on it
+     * and which the element does not define are added with the defaults of the level,
+     * so that they do not keep the values of the profile derived from another level.
+     * 
+     * @see PreferencesElement#validateOverride()
+     * @since Ant-Eclipse 1.0
+     */
+    @Override
+    void validateOverride() {
+        VariableElement variable = getVariable(COMPILERCOMPLIANCE_NAME);
+        if (variable != null) {
+            String[] defaults = getDefaults(variable.getValue());
+            for (int i = 0; i < COMPILERCOMPLIANCE_DEPENDENT.length; ++i) {
+                int index = COMPILERCOMPLIANCE_DEPENDENT[i];
+                internalAddVariable(ORGECLIPSEJDTCORE_NAMES[index], defaults[index]);
+            }
+        }
+        super.validateOverride();
+    }
+
+    private String[] getDefaults(String value) {
+        String[] defaults = ComplianceDefaults.DEFAULTS.get(value);
+        if (defaults == null)
+            throw new BuildException("The variable \"" + COMPILERCOMPLIANCE_NAME
+                    + "\" has an invalid value \"" + value + "\". Valid values are "
+                    + getValidCompilerComplianceValues() + ".");
+        return defaults;
+    }
+
 }
@@ -0,0 +1,309 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+
+/**
+ * Measures the wall time spent in the phases of the generation of a single project and
+ * counts the produced items. Phases nested in other phases are measured separately;
+ * the path resolution, the source discovery, the rendering and the output are parts
+ * of the generation of the files. It is safe to use it from multiple threads; the
+ * times of phases running concurrently are summed up.
+ * 
+ * @see EclipseTask#setTimingPrefix(String)
+ * @see EclipseTask#setTimingReport(File)
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class PhaseTimer {
+
+    /**
+     * The whole generation.
+     */
+    static final String TOTAL = "total";
+
+    /**
+     * The generation of the files <tt>.settings/xxx.prefs</tt>.
+     */
+    static final String SETTINGS = "settings";
+
+    /**
+     * The generation of the file .project.
+     */
+    static final String PROJECT = "project";
+
+    /**
+     * The generation of the file .classpath.
+     */
+    static final String CLASS_PATH = "classpath";
+
+    /**
+     * The resolution of the paths of the classpath entries.
+     */
+    static final String RESOLUTION = "resolution";
+
+    /**
+     * The discovery of the source attachments of the binary classpath entries.
+     */
+    static final String DISCOVERY = "discovery";
+
+    /**
+     * Rendering the XML content of the files .project and .classpath, from the
+     * declaration to flushing the writer. The source discovery of a streamed classpath
+     * and writing into the output files are nested in it, because the entries are
+     * rendered as soon as they are discovered and the writer passes the content on
+     * when its buffer is full.
+     */
+    static final String RENDERING = "rendering";
+
+    /**
+     * Writing into the output files, including closing them.
+     */
+    static final String OUTPUT = "output";
+
+    /**
+     * The count of the written classpath entries.
+     */
+    static final String ENTRIES = "entries";
+
+    /**
+     * The count of the discovered source attachments.
+     */
+    static final String SOURCES = "sources";
+
+    /**
+     * The count of the written variables of the preferences.
+     */
+    static final String VARIABLES = "variables";
+
+    /**
+     * The count of the written files.
+     */
+    static final String FILES = "files";
+
+    /**
+     * The count of the written bytes.
+     */
+    static final String BYTES = "bytes";
+
+    private static final String[] PHASES = { TOTAL, SETTINGS, PROJECT, CLASS_PATH,
+            RESOLUTION, DISCOVERY, RENDERING, OUTPUT };
+
+    private static final String[] COUNTERS = { ENTRIES, SOURCES, VARIABLES, FILES, BYTES };
+
+    private String module;
+
+    private Map<String, long[]> values = new LinkedHashMap<String, long[]>();
+
+    /**
+     * Creates a new timer with all phases and counters at zero.
+     * 
+     * @param name
+     *        The name of the measured module.
+     * @since Ant-Eclipse 1.0
+     */
+    PhaseTimer(String name) {
+        module = name;
+        for (int i = 0; i != PHASES.length; ++i)
+            values.put(PHASES[i], new long[2]);
+        for (int i = 0; i != COUNTERS.length; ++i)
+            values.put(COUNTERS[i], new long[1]);
+    }
+
+    /**
+     * Returns the name of the measured module.
+     * 
+     * @return The name of the measured module.
+     * @since Ant-Eclipse 1.0
+     */
+    String getModule() {
+        return module;
+    }
+
+    /**
+     * Returns the current time to be passed to the method <tt>stop</tt> when the phase
+     * ends.
+     * 
+     * @return The current time in nanoseconds.
+     * @since Ant-Eclipse 1.0
+     */
+    long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time elapsed since the start of the phase to the time of the phase.
+     * 
+     * @param phase
+     *        The name of the phase.
+     * @param start
+     *        The time returned by the method <tt>start</tt> when the phase started.
+     * @since Ant-Eclipse 1.0
+     */
+    void stop(String phase, long start) {
+        long elapsed = System.nanoTime() - start;
+        synchronized (values) {
+            long[] value = values.get(phase);
+            value[0] += elapsed;
+            ++value[1];
+        }
+    }
+
+    /**
+     * Adds an amount to a counter.
+     * 
+     * @param counter
+     *        The name of the counter.
+     * @param amount
+     *        The amount to add.
+     * @since Ant-Eclipse 1.0
+     */
+    void count(String counter, long amount) {
+        synchronized (values) {
+            values.get(counter)[0] += amount;
+        }
+    }
+
+    /**
+     * Returns the time spent in a phase.
+     * 
+     * @param phase
+     *        The name of the phase.
+     * @return The time spent in the phase in milliseconds.
+     * @since Ant-Eclipse 1.0
+     */
+    long getTime(String phase) {
+        synchronized (values) {
+            return values.get(phase)[0] / 1000000;
+        }
+    }
+
+    /**
+     * Returns the value of a counter.
+     * 
+     * @param counter
+     *        The name of the counter.
+     * @return The value of the counter.
+     * @since Ant-Eclipse 1.0
+     */
+    long getCount(String counter) {
+        synchronized (values) {
+            return values.get(counter)[0];
+        }
+    }
+
+    /**
+     * Sets the measured values as properties of the project: <em>prefix.phase</em>
+     * <tt>.ms</tt> to the time of the phase in milliseconds and
+     * <em>prefix.counter</em> to the value of the counter.
+     * 
+     * @param project
+     *        The project to set the properties in.
+     * @param prefix
+     *        The prefix of the names of the properties.
+     * @since Ant-Eclipse 1.0
+     */
+    void setProperties(Project project, String prefix) {
+        for (int i = 0; i != PHASES.length; ++i)
+            project.setNewProperty(prefix + '.' + PHASES[i] + ".ms", Long
+                    .toString(getTime(PHASES[i])));
+        for (int i = 0; i != COUNTERS.length; ++i)
+            project.setNewProperty(prefix + '.' + COUNTERS[i], Long
+                    .toString(getCount(COUNTERS[i])));
+    }
+
+    /**
+     * Writes a report of the measured values of the modules in the JSON format: an
+     * object with the array <tt>modules</tt> containing objects with the name of the
+     * module, the objects <tt>phases</tt> with the times in milliseconds and the
+     * invocation counts of the phases and the object <tt>counters</tt>.
+     * 
+     * @param file
+     *        The file to write the report into.
+     * @param timers
+     *        The timers of the reported modules.
+     * @throws BuildException
+     *         If the report could not be written.
+     * @since Ant-Eclipse 1.0
+     */
+    static void writeReport(File file, List<PhaseTimer> timers) {
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                writer.write("{\n  \"modules\": [");
+                for (Iterator<PhaseTimer> iterator = timers.iterator(); iterator.hasNext();) {
+                    iterator.next().writeReport(writer);
+                    if (iterator.hasNext())
+                        writer.write(',');
+                }
+                writer.write("\n  ]\n}\n");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException exception) {
+            throw new BuildException("Writing the timing report \"" + file.getAbsolutePath()
+                    + "\" failed.", exception);
+        }
+    }
+
+    private void writeReport(Writer writer) throws IOException {
+        writer.write("\n    {\n      \"module\": \"");
+        writeEscaped(writer, module);
+        writer.write("\",\n      \"phases\": {");
+        synchronized (values) {
+            for (int i = 0; i != PHASES.length; ++i) {
+                long[] value = values.get(PHASES[i]);
+                writer.write((i == 0 ? "\n" : ",\n") + "        \"" + PHASES[i] + "\": { \"ms\": "
+                        + value[0] / 1000000 + ", \"count\": " + value[1] + " }");
+            }
+            writer.write("\n      },\n      \"counters\": {");
+            for (int i = 0; i != COUNTERS.length; ++i)
+                writer.write((i == 0 ? "\n" : ",\n") + "        \"" + COUNTERS[i] + "\": "
+                        + values.get(COUNTERS[i])[0]);
+        }
+        writer.write("\n      }\n    }");
+    }
+
+    private static void writeEscaped(Writer writer, String text) throws IOException {
+        for (int i = 0, length = text.length(); i != length; ++i) {
+            char ch = text.charAt(i);
+            if (ch == '"' || ch == '\\')
+                writer.write('\\');
+            if (ch < ' ')
+                writer.write("\\u00" + Character.forDigit(ch >> 4, 16)
+                        + Character.forDigit(ch & 15, 16));
+            else
+                writer.write(ch);
+        }
+    }
+
+}
@@ -19,7 +19,9 @@
 
 package prantl.ant.eclipse;
 
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
@@ -46,6 +48,8 @@ public abstract class PreferencesElement {
 
     private Vector<VariableElement> variables = new Vector<VariableElement>();
 
+    private Map<String, VariableElement> index = new HashMap<String, VariableElement>();
+
     /**
      * Creates a new instance of the element for preferences under the settings element.
      * 
@@ -178,6 +182,21 @@ public abstract class PreferencesElement {
         }
     }
 
+    /**
+     * Performs the validation of the element overriding the preferences of a profile
+     * with the same name. The preferences of the profile have been validated already
+     * and the variables of this element are merged with them, so that only the
+     * variables are validated here and no default variables are added.
+     * 
+     * @since Ant-Eclipse 1.0
+     */
+    void validateOverride() {
+        for (int i = 0, size = variables.size(); i != size; ++i) {
+            VariableElement variable = variables.get(i);
+            variable.validate();
+        }
+    }
+
     /**
      * Checks if the variable with the specified name is allowed to be defined according
      * to the already parsed content.
@@ -221,12 +240,25 @@ public abstract class PreferencesElement {
      * @since Ant-Eclipse 1.0
      */
     VariableElement getVariable(String name) {
-        for (int i = 0, size = variables.size(); i != size; ++i) {
-            VariableElement variable = variables.get(i);
-            if (name.equals(variable.getName()))
-                return variable;
-        }
-        return null;
+        return index.get(name);
+    }
+
+    /**
+     * Registers the variable under its current name for the lookup by the name, removing
+     * it from under its previous name. The order of the variables is kept by the list
+     * returned by {@link #getVariables}, the index serves the look-ups only.
+     * 
+     * @param variable
+     *        The element defining the configuration variable which name has been set.
+     * @param previous
+     *        The previous name of the variable or <tt>null</tt> if it has not been set
+     *        before.
+     * @since Ant-Eclipse 1.0
+     */
+    void indexVariable(VariableElement variable, String previous) {
+        if (previous != null && index.get(previous) == variable)
+            index.remove(previous);
+        index.put(variable.getName(), variable);
     }
 
     /**
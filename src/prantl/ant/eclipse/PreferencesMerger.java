@@ -0,0 +1,262 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+
+package prantl.ant.eclipse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the variables of preferences into the content of an existing file with
+ * preferences, which may have been changed in Eclipse. The file is read line by line
+ * in the format of Java properties; the values of the variables managed by the
+ * preferences are replaced and the missing ones appended, while the comments and the
+ * other variables are kept as they were. The merged content is returned only if a
+ * managed value has changed, so that an unchanged file is not written at all.
+ * 
+ * @see SettingsGenerator
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class PreferencesMerger {
+
+    private PreferencesMerger() {
+    }
+
+    /**
+     * Merges the variables into the existing content of a file with preferences. The
+     * lines of a changed file are separated by a line feed.
+     * 
+     * @param input
+     *        The existing content of the file encoded in UTF-8.
+     * @param variables
+     *        The variables managed by the preferences.
+     * @return The merged content encoded in UTF-8 or <tt>null</tt> if no managed value
+     *         has changed.
+     * @throws IOException
+     *         If reading of the existing content fails.
+     * @since Ant-Eclipse 1.0
+     */
+    static byte[] merge(InputStream input, VariableElement[] variables) throws IOException {
+        Map<String, String> managed = new LinkedHashMap<String, String>();
+        for (int i = 0; i != variables.length; ++i)
+            managed.put(variables[i].getName(), variables[i].getValue());
+        Set<String> merged = new HashSet<String>();
+        boolean changed = false;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(content, "UTF-8");
+        for (String line; (line = reader.readLine()) != null;) {
+            StringBuffer raw = new StringBuffer(line);
+            StringBuffer logical = new StringBuffer(line);
+            // a line ending with an odd count of backslashes continues on the next one,
+            // unless it is a comment
+            while (!isComment(line) && isContinued(logical)) {
+                logical.setLength(logical.length() - 1);
+                String next = reader.readLine();
+                if (next == null)
+                    break;
+                raw.append('\n').append(next);
+                logical.append(trimLeading(next));
+            }
+            String[] entry = parse(logical.toString());
+            if (entry == null || !managed.containsKey(entry[0])) {
+                writer.write(raw.toString());
+                writer.write('\n');
+            } else if (merged.add(entry[0])) {
+                String value = managed.get(entry[0]);
+                if (value.equals(entry[1])) {
+                    writer.write(raw.toString());
+                } else {
+                    writeVariable(writer, entry[0], value);
+                    changed = true;
+                }
+                writer.write('\n');
+            } else {
+                // a repeated managed variable would override the merged one
+                changed = true;
+            }
+        }
+        for (Map.Entry<String, String> variable : managed.entrySet())
+            if (!merged.contains(variable.getKey())) {
+                writeVariable(writer, variable.getKey(), variable.getValue());
+                writer.write('\n');
+                changed = true;
+            }
+        writer.close();
+        return changed ? content.toByteArray() : null;
+    }
+
+    /**
+     * Writes a variable escaped like <tt>java.util.Properties.store</tt> does, so that
+     * the line is read back with the same name and value. The line separator is not
+     * written.
+     * 
+     * @param writer
+     *        The writer of the content.
+     * @param name
+     *        The name of the variable.
+     * @param value
+     *        The value of the variable.
+     * @throws IOException
+     *         If writing of the variable fails.
+     * @since Ant-Eclipse 1.0
+     */
+    static void writeVariable(Writer writer, String name, String value)
+            throws IOException {
+        writeEscaped(writer, name, true);
+        writer.write('=');
+        writeEscaped(writer, value, false);
+    }
+
+    private static void writeEscaped(Writer writer, String text, boolean name)
+            throws IOException {
+        for (int i = 0, length = text.length(); i != length; ++i) {
+            char character = text.charAt(i);
+            switch (character) {
+            case ' ':
+                // only the leading spaces of a value would be lost
+                if (name || i == 0)
+                    writer.write('\\');
+                writer.write(' ');
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\f':
+                writer.write("\\f");
+                break;
+            case '\\':
+            case '=':
+            case ':':
+            case '#':
+            case '!':
+                writer.write('\\');
+                writer.write(character);
+                break;
+            default:
+                if (character < ' ' || character > '~') {
+                    writer.write("\\u");
+                    for (int shift = 12; shift >= 0; shift -= 4)
+                        writer.write(Character.toUpperCase(Character.forDigit(
+                                (character >> shift) & 15, 16)));
+                } else
+                    writer.write(character);
+            }
+        }
+    }
+
+    private static boolean isContinued(StringBuffer line) {
+        int count = 0;
+        for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; --i)
+            ++count;
+        return count % 2 == 1;
+    }
+
+    private static boolean isComment(String line) {
+        line = trimLeading(line);
+        return line.length() != 0 && (line.charAt(0) == '#' || line.charAt(0) == '!');
+    }
+
+    private static String trimLeading(String line) {
+        int start = 0;
+        while (start < line.length() && isWhitespace(line.charAt(start)))
+            ++start;
+        return line.substring(start);
+    }
+
+    private static boolean isWhitespace(char character) {
+        return character == ' ' || character == '\t' || character == '\f';
+    }
+
+    /**
+     * Splits a logical line in the format of Java properties to the unescaped name and
+     * value of the variable.
+     * 
+     * @param line
+     *        The logical line with the continuations joined.
+     * @return An array with the name and the value of the variable or <tt>null</tt> if
+     *         the line is empty or a comment.
+     */
+    private static String[] parse(String line) {
+        if (isComment(line))
+            return null;
+        line = trimLeading(line);
+        if (line.length() == 0)
+            return null;
+        int end = 0;
+        for (; end < line.length(); ++end) {
+            char character = line.charAt(end);
+            if (character == '\\')
+                ++end;
+            else if (character == '=' || character == ':' || isWhitespace(character))
+                break;
+        }
+        int start = Math.min(end, line.length());
+        while (start < line.length() && isWhitespace(line.charAt(start)))
+            ++start;
+        if (start < line.length() && (line.charAt(start) == '=' || line.charAt(start) == ':'))
+            ++start;
+        String name = unescape(line.substring(0, Math.min(end, line.length())));
+        return new String[] { name, unescape(trimLeading(line.substring(start))) };
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0)
+            return text;
+        StringBuffer result = new StringBuffer(text.length());
+        for (int i = 0; i < text.length(); ++i) {
+            char character = text.charAt(i);
+            if (character != '\\' || i + 1 == text.length()) {
+                result.append(character);
+                continue;
+            }
+            character = text.charAt(++i);
+            if (character == 'u' && i + 4 < text.length()) {
+                try {
+                    result.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    continue;
+                } catch (NumberFormatException exception) {
+                    // kept as it was
+                }
+            }
+            result.append(character == 't' ? '\t' : character == 'n' ? '\n'
+                    : character == 'r' ? '\r' : character == 'f' ? '\f' : character);
+        }
+        return result.toString();
+    }
+
+}
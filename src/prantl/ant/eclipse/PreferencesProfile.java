@@ -0,0 +1,188 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+
+package prantl.ant.eclipse;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Keeps the preferences of a settings element shared by many projects as a profile
+ * compiled during the life of the JVM. The preferences of the profile are validated
+ * and their variables rendered only once, when the profile is used for the first time,
+ * and once more if a project asks for the other order of the variables; the projects
+ * then write the same content of the files. A project can override the variables of a
+ * preferences file of the profile by defining preferences with the same name, which
+ * are merged with the variables of the profile. Changes of the settings element made
+ * after the profile has been compiled are not noticed. It is safe to use the profiles
+ * from multiple threads.
+ * 
+ * @see SettingsGenerator
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class PreferencesProfile {
+
+    private static final Map<SettingsElement, PreferencesProfile> profiles = new WeakHashMap<SettingsElement, PreferencesProfile>();
+
+    private Vector<PreferencesElement> preferences;
+
+    private Set<String> names = new HashSet<String>();
+
+    // looked up by the identity of the elements in constant time; the variables are
+    // rendered in the order of their definition first and sorted by their names second
+    private Map<PreferencesElement, byte[][]> images = new IdentityHashMap<PreferencesElement, byte[][]>();
+
+    /**
+     * Returns the profile compiled from the specified settings. The settings are compiled
+     * if they have not been used as a profile yet; otherwise the same profile is
+     * returned. Settings are compiled by a single thread at a time.
+     * 
+     * @param settings
+     *        The element with the preferences of the profile.
+     * @return The compiled profile.
+     * @since Ant-Eclipse 1.0
+     */
+    static PreferencesProfile get(SettingsElement settings) {
+        synchronized (profiles) {
+            PreferencesProfile profile = profiles.get(settings);
+            if (profile == null) {
+                profile = new PreferencesProfile(settings);
+                profiles.put(settings, profile);
+            }
+            return profile;
+        }
+    }
+
+    private PreferencesProfile(SettingsElement settings) {
+        if (settings.getProfileReference() != null)
+            throw new BuildException(
+                    "The settings used as a profile cannot refer to another profile.");
+        preferences = settings.getPreferences();
+        for (int i = 0, size = preferences.size(); i != size; ++i) {
+            PreferencesElement element = preferences.get(i);
+            element.validate();
+            names.add(element.getName());
+            byte[][] rendered = new byte[2][];
+            images.put(element, rendered);
+            // the other order is rendered when a project asks for it
+            getImage(element, settings.isDeterministic());
+        }
+    }
+
+    /**
+     * Returns the preferences of the profile, which must not be modified.
+     * 
+     * @return The validated preferences of the profile.
+     * @since Ant-Eclipse 1.0
+     */
+    Vector<PreferencesElement> getPreferences() {
+        return preferences;
+    }
+
+    /**
+     * Checks if the profile contains preferences with the specified name.
+     * 
+     * @param name
+     *        The name of the preferences to look for.
+     * @return <tt>True</tt> if the profile contains the preferences.
+     * @since Ant-Eclipse 1.0
+     */
+    boolean hasPreferences(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * Checks if the specified element belongs to the profile.
+     * 
+     * @param element
+     *        The element with the definition of preferences.
+     * @return <tt>True</tt> if the element is one of the preferences of the profile.
+     * @since Ant-Eclipse 1.0
+     */
+    boolean contains(PreferencesElement element) {
+        return images.containsKey(element);
+    }
+
+    /**
+     * Returns the rendered variables of the preferences of the profile, if the specified
+     * element belongs to the profile. The variables are rendered in the order requested
+     * by the project writing them, once for each order. The same array is returned to
+     * all projects and must not be modified.
+     * 
+     * @param element
+     *        The element with the definition of preferences.
+     * @param deterministic
+     *        <tt>True</tt> if the variables should be sorted by their names.
+     * @return The variables encoded in UTF-8 or <tt>null</tt> if the element does not
+     *         belong to the profile.
+     * @since Ant-Eclipse 1.0
+     */
+    byte[] getImage(PreferencesElement element, boolean deterministic) {
+        byte[][] rendered = images.get(element);
+        if (rendered == null)
+            return null;
+        int index = deterministic ? 1 : 0;
+        synchronized (rendered) {
+            if (rendered[index] == null) {
+                Vector<VariableElement> variables = element.getVariables();
+                rendered[index] = SettingsGenerator.renderVariables(variables
+                        .toArray(new VariableElement[variables.size()]), deterministic);
+            }
+            return rendered[index];
+        }
+    }
+
+    /**
+     * Returns the variables of the preferences of the profile with the same name as the
+     * specified element, overridden and extended by the variables of the element. The
+     * variables of the profile come first in their order, followed by the variables
+     * defined only by the element.
+     * 
+     * @param element
+     *        The element with the definition of preferences overriding the profile.
+     * @return The merged variables.
+     * @since Ant-Eclipse 1.0
+     */
+    VariableElement[] merge(PreferencesElement element) {
+        Map<String, VariableElement> merged = new LinkedHashMap<String, VariableElement>();
+        for (int i = 0, size = preferences.size(); i != size; ++i) {
+            PreferencesElement base = preferences.get(i);
+            if (base.getName().equals(element.getName())) {
+                Vector<VariableElement> variables = base.getVariables();
+                for (int j = 0, count = variables.size(); j != count; ++j)
+                    merged.put(variables.get(j).getName(), variables.get(j));
+                break;
+            }
+        }
+        Vector<VariableElement> variables = element.getVariables();
+        for (int i = 0, size = variables.size(); i != size; ++i)
+            merged.put(variables.get(i).getName(), variables.get(i));
+        return merged.values().toArray(new VariableElement[merged.size()]);
+    }
+
+}
@@ -19,10 +19,8 @@
 
 package prantl.ant.eclipse;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStream;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
@@ -58,7 +56,9 @@ final class ProjectGenerator {
     }
 
     /**
-     * Generates the file <tt>.project</tt> using the supplied output object.
+     * Generates the file <tt>.project</tt> using the supplied output object. If the
+     * fingerprint check is used, the file is written only if the fingerprint of the
+     * project name and the mode differs from the stored one.
      * 
      * @since Ant-Eclipse 1.0
      */
@@ -69,25 +69,40 @@ final class ProjectGenerator {
             return;
         }
         EclipseOutput output = task.getOutput();
-        if (output.isProjectUpToDate()) {
+        boolean fingerprint = task.getEclipse().isFingerprintCheck();
+        if (!fingerprint && output.isProjectUpToDate()) {
             task.log("The project definition is up-to-date.", Project.MSG_WARN);
             return;
         }
-        task.log("Writing the project definition in the mode \""
-                + task.getEclipse().getMode().getValue() + "\".");
+        if (!fingerprint)
+            logWriting();
+        String name = project.getName();
+        if (name == null)
+            name = task.getProject().getProperty("ant.project.name");
+        if (name == null)
+            throw new BuildException(
+                    "Both name of the Eclipse and name of the Ant project cannot be missing.");
+        int mode = task.getEclipse().getMode().getIndex();
+        String value = null;
+        if (fingerprint) {
+            value = new Fingerprint().add(name).add(mode).getValue();
+            if (value.equals(output.getFingerprint(".project"))) {
+                task.log("The project definition is up-to-date.", Project.MSG_WARN);
+                return;
+            }
+            logWriting();
+        }
+        OutputStream stream = null;
         XmlWriter writer = null;
+        boolean written = false;
+        PhaseTimer timer = task.getTimer();
+        long start = timer.start();
         try {
-            writer = new XmlWriter(new OutputStreamWriter(new BufferedOutputStream(output
-                    .createProject()), "UTF-8"));
+            stream = output.createProject();
+            writer = new XmlWriter(stream);
             writer.writeXmlDeclaration("UTF-8");
             writer.openElement("projectDescription");
             writer.openElement("name");
-            String name = project.getName();
-            if (name == null)
-                name = task.getProject().getProperty("ant.project.name");
-            if (name == null)
-                throw new BuildException(
-                        "Both name of the Eclipse and name of the Ant project cannot be missing.");
             task.log("Project name is \"" + name + "\".", Project.MSG_VERBOSE);
             writer.writeText(name);
             writer.closeElement("name");
@@ -98,7 +113,6 @@ final class ProjectGenerator {
             writer.openElement("buildSpec");
             writer.openElement("buildCommand");
             writer.openElement("name");
-            int mode = task.getEclipse().getMode().getIndex();
             writer.writeText(defaultBuidCommands[mode]);
             writer.closeElement("name");
             writer.openElement("arguments");
@@ -113,12 +127,17 @@ final class ProjectGenerator {
             }
             writer.closeElement("natures");
             writer.closeElement("projectDescription");
-        } catch (UnsupportedEncodingException exception) {
-            throw new BuildException("Encoder to UTF-8 is not supported.", exception);
+            writer.flush();
+            written = true;
         } catch (IOException exception) {
             throw new BuildException("Writing the project definition failed.", exception);
         } finally {
-            if (writer != null)
+            timer.stop(PhaseTimer.RENDERING, start);
+            // an incomplete file does not replace the previous one
+            if (!written) {
+                if (stream != null)
+                    EclipseOutput.discard(stream);
+            } else
                 try {
                     writer.close();
                 } catch (IOException exception1) {
@@ -126,6 +145,13 @@ final class ProjectGenerator {
                             exception1);
                 }
         }
+        if (value != null)
+            output.setFingerprint(".project", value);
+    }
+
+    private void logWriting() {
+        task.log("Writing the project definition in the mode \""
+                + task.getEclipse().getMode().getValue() + "\".");
     }
 
 }
@@ -0,0 +1,218 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.Path;
+import org.apache.tools.ant.types.Reference;
+import org.apache.tools.ant.types.resources.FileResource;
+
+/**
+ * Keeps the lists of the referenced paths resolved during the life of the JVM, so that
+ * a path shared by many projects, usually defined by file sets, is scanned only once.
+ * Entries are identified by the referenced object and validated against the times of
+ * the last modification of the directories containing the listed items and of their
+ * parents up to the common one, and of the base directories of the file sets, which
+ * change if an item is added or removed. Files added to a directory outside of this
+ * tree are not noticed and neither are changes of the referenced object itself, like
+ * by the task <tt>augment</tt>; such paths have to be forgotten. Entries of paths that
+ * are not referred any more are released. It is safe to use the cache from multiple
+ * threads; the resolution of a path is serialized by its own holder, not by the
+ * referenced object, which belongs to the build.
+ * 
+ * @see ClassPathGenerator
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class ResolvedPathCache {
+
+    /**
+     * Contains the items of a resolved path with the stamps validating them.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private static final class Entry {
+
+        String[] items;
+
+        File[] directories;
+
+        long[] stamps;
+
+        boolean isValid() {
+            for (int i = 0; i != directories.length; ++i)
+                if (directories[i].lastModified() != stamps[i])
+                    return false;
+            return true;
+        }
+
+    }
+
+    /**
+     * Holds the entry of a referenced path; the resolution of the path is synchronized
+     * on it.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private static final class Holder {
+
+        Entry entry;
+
+    }
+
+    private static final Map<Object, Holder> holders = new WeakHashMap<Object, Holder>();
+
+    private ResolvedPathCache() {
+    }
+
+    /**
+     * Returns the items of the referenced path. The path is resolved if it has not been
+     * resolved yet or if its entry is not valid any more; otherwise the same array is
+     * returned, which must not be modified. A path is resolved by a single thread at a
+     * time, because its file sets are not supposed to be scanned concurrently.
+     * 
+     * @param reference
+     *        The reference to the path.
+     * @param project
+     *        The project to resolve the reference in, if it does not carry its own.
+     * @return The items of the referenced path.
+     * @since Ant-Eclipse 1.0
+     */
+    static String[] list(Reference reference, Project project) {
+        Holder holder = getHolder(reference.getReferencedObject(project), true);
+        synchronized (holder) {
+            Entry entry = holder.entry;
+            if (entry != null && entry.isValid()) {
+                project.log("Using the resolved path \"" + reference.getRefId() + "\".",
+                        Project.MSG_DEBUG);
+                return entry.items;
+            }
+            Path path = new Path(project);
+            path.setRefid(reference);
+            entry = createEntry(path);
+            // an empty path could not be validated
+            holder.entry = entry.items.length != 0 ? entry : null;
+            return entry.items;
+        }
+    }
+
+    /**
+     * Forgets the resolved referenced path, so that it is resolved again when asked for,
+     * even if the stamps of its directories have not changed yet. The entries of the
+     * other paths are kept.
+     * 
+     * @param reference
+     *        The reference to the path.
+     * @param project
+     *        The project to resolve the reference in, if it does not carry its own.
+     * @since Ant-Eclipse 1.0
+     */
+    static void forget(Reference reference, Project project) {
+        Holder holder = getHolder(reference.getReferencedObject(project), false);
+        if (holder != null)
+            synchronized (holder) {
+                holder.entry = null;
+            }
+    }
+
+    private static Holder getHolder(Object target, boolean create) {
+        synchronized (holders) {
+            Holder holder = holders.get(target);
+            if (holder == null && create) {
+                holder = new Holder();
+                holders.put(target, holder);
+            }
+            return holder;
+        }
+    }
+
+    private static Entry createEntry(Path path) {
+        // the items are the same as listed by the path, the file sets add their bases
+        Set<String> names = new LinkedHashSet<String>();
+        Set<File> bases = new LinkedHashSet<File>();
+        for (Iterator<?> resources = path.iterator(); resources.hasNext();) {
+            Object resource = resources.next();
+            names.add(resource.toString());
+            if (resource instanceof FileResource) {
+                File base = ((FileResource) resource).getBaseDir();
+                if (base != null)
+                    bases.add(base.getAbsoluteFile());
+            }
+        }
+        String[] items = names.toArray(new String[names.size()]);
+        Set<File> parents = new LinkedHashSet<File>();
+        String root = null;
+        for (int i = 0; i != items.length; ++i) {
+            File parent = new File(items[i]).getAbsoluteFile().getParentFile();
+            if (parent != null && parents.add(parent))
+                root = getCommonDirectory(root, parent.getPath());
+        }
+        Set<File> directories = new LinkedHashSet<File>();
+        for (Iterator<File> iterator = parents.iterator(); iterator.hasNext();)
+            for (File directory = iterator.next(); directory != null; directory = directory
+                    .getParentFile()) {
+                if (!directories.add(directory) || directory.getPath().equals(root))
+                    break;
+            }
+        // files can be added to a file set outside of the directories of its items
+        directories.addAll(bases);
+        Entry entry = new Entry();
+        entry.items = items;
+        entry.directories = directories.toArray(new File[directories.size()]);
+        entry.stamps = new long[entry.directories.length];
+        for (int i = 0; i != entry.stamps.length; ++i)
+            entry.stamps[i] = entry.directories[i].lastModified();
+        return entry;
+    }
+
+    private static String getCommonDirectory(String common, String directory) {
+        if (common == null)
+            return directory;
+        while (!directory.equals(common)
+                && !directory.startsWith(common.endsWith(File.separator) ? common : common
+                        + File.separator)) {
+            common = new File(common).getParent();
+            if (common == null)
+                return null;
+        }
+        return common;
+    }
+
+    /**
+     * Forgets all resolved paths.
+     * 
+     * @since Ant-Eclipse 1.0
+     */
+    static void clear() {
+        synchronized (holders) {
+            holders.clear();
+        }
+    }
+
+}
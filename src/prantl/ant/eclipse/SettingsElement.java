@@ -22,11 +22,17 @@ package prantl.ant.eclipse;
 import java.util.Vector;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.Reference;
 
 /**
  * Configures components creating their preference files under under the directory
  * <tt>.settings</tt>. The attributes <tt>name</tt> of all elements for components
- * describing preferences must be distinct.
+ * describing preferences must be distinct. The preferences can be taken from a profile,
+ * another settings element referred to by its id, which is compiled only once for all
+ * projects using it; preferences defined here with the same name as in the profile
+ * override its variables. A compliance level overriding the one of the profile resets
+ * the variables derived from it to the defaults of the new level.
  * 
  * @since Ant-Eclipse 1.0
  * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
@@ -35,6 +41,12 @@ public class SettingsElement {
 
     private Vector<PreferencesElement> preferences = new Vector<PreferencesElement>();
 
+    private boolean deterministic = false;
+
+    private boolean merge = false;
+
+    private Reference profile = null;
+
     /**
      * Creates a new instance of the settings element.
      * 
@@ -43,6 +55,101 @@ public class SettingsElement {
     public SettingsElement() {
     }
 
+    /**
+     * Returns if the files with preferences are written without the leading comment with
+     * the current time and with the variables sorted by their names (not by default).
+     * 
+     * @return <tt>True</tt> if the same preferences are always written the same way.
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Sets if the files with preferences are written without the leading comment with
+     * the current time and with the variables sorted by their names, so that the same
+     * preferences produce the same files. Eclipse ignores both the comment and the
+     * order of the variables.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the same preferences should be always written the same
+     *        way.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setDeterministic(boolean flag) {
+        deterministic = flag;
+    }
+
+    /**
+     * Returns if the variables are merged into the existing files with preferences
+     * instead of replacing them (not by default).
+     * 
+     * @return <tt>True</tt> if the variables are merged into the existing files.
+     */
+    public boolean isMerge() {
+        return merge;
+    }
+
+    /**
+     * Sets if the variables are merged into the existing files with preferences, so that
+     * the variables changed in Eclipse and not defined here are kept. Only the values of
+     * the variables defined here are replaced and the missing ones appended; a file is
+     * written only if some of them has changed, regardless of its time stamp.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the variables should be merged into the existing files.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setMerge(boolean flag) {
+        merge = flag;
+    }
+
+    /**
+     * Returns the reference to the settings element used as a profile or <tt>null</tt>
+     * if no profile is used.
+     * 
+     * @return The reference to the settings used as a profile or <tt>null</tt> if not
+     *         having been set.
+     */
+    public Reference getProfileReference() {
+        return profile;
+    }
+
+    /**
+     * Sets the reference to another settings element, usually defined at the top level of
+     * the build file by <tt>&lt;typedef name="settings"
+     * classname="prantl.ant.eclipse.SettingsElement" /&gt;</tt>, whose preferences are
+     * written for this project too. The profile is validated and rendered only once,
+     * when it is used for the first time, and its files are written with the same
+     * content for every project using it.
+     * 
+     * @param reference
+     *        A reference to the settings element to use as a profile.
+     * @since Ant-Eclipse 1.0
+     */
+    public void setProfile(Reference reference) {
+        profile = reference;
+    }
+
+    /**
+     * Returns the compiled profile this settings element refers to or <tt>null</tt> if
+     * no profile is used.
+     * 
+     * @param project
+     *        The project to resolve the reference in, if it does not carry its own.
+     * @return The compiled profile or <tt>null</tt> if no profile is used.
+     * @since Ant-Eclipse 1.0
+     */
+    PreferencesProfile getProfile(Project project) {
+        if (profile == null)
+            return null;
+        Object target = profile.getReferencedObject(project);
+        if (!(target instanceof SettingsElement))
+            throw new BuildException("The reference \"" + profile.getRefId()
+                    + "\" does not refer to settings.");
+        return PreferencesProfile.get((SettingsElement) target);
+    }
+
     /**
      * Returns a list with instances of the descendants of the class PreferencesElement
      * describing files <em>&lt;full qualified class
@@ -19,11 +19,21 @@
 
 package prantl.ant.eclipse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
@@ -39,8 +49,87 @@ import org.apache.tools.ant.Project;
  */
 final class SettingsGenerator {
 
+    /**
+     * Orders variables by their names for the deterministic output.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private static final class VariableNameComparator implements
+            Comparator<VariableElement> {
+
+        /**
+         * @see Comparator#compare(Object, Object)
+         */
+        public int compare(VariableElement left, VariableElement right) {
+            return left.getName().compareTo(right.getName());
+        }
+
+    }
+
+    private static final Comparator<VariableElement> VARIABLE_NAME_ORDER = new VariableNameComparator();
+
+    /**
+     * Collects the messages logged during writing of a single file with preferences,
+     * either passing them to the task immediately or keeping them until the file has
+     * been written, so that the messages of files written concurrently are logged in
+     * the order of the preferences.
+     * 
+     * @since Ant-Eclipse 1.0
+     * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+     */
+    private final class PreferencesLog {
+
+        private Vector<String> messages;
+
+        private Vector<Integer> levels;
+
+        /**
+         * Creates a new log of a file with preferences.
+         * 
+         * @param deferred
+         *        <tt>True</tt> if the messages should be kept until
+         *        {@link #replay} is called.
+         */
+        PreferencesLog(boolean deferred) {
+            if (deferred) {
+                messages = new Vector<String>();
+                levels = new Vector<Integer>();
+            }
+        }
+
+        /**
+         * Logs a message with the specified priority.
+         * 
+         * @param message
+         *        The message to log.
+         * @param level
+         *        The priority of the message.
+         */
+        void log(String message, int level) {
+            if (messages == null) {
+                task.log(message, level);
+            } else {
+                messages.addElement(message);
+                levels.addElement(Integer.valueOf(level));
+            }
+        }
+
+        /**
+         * Passes the kept messages to the task.
+         */
+        void replay() {
+            if (messages != null)
+                for (int i = 0, size = messages.size(); i != size; ++i)
+                    task.log(messages.get(i), levels.get(i).intValue());
+        }
+
+    }
+
     private EclipseTask task;
 
+    private PreferencesProfile profile = null;
+
     /**
      * Creates a new instance of the generating object.
      * 
@@ -65,15 +154,127 @@ final class SettingsGenerator {
             return;
         }
         checkPreferences(settings);
-        Vector<PreferencesElement> entries = settings.getPreferences();
+        profile = settings.getProfile(task.getProject());
+        Vector<PreferencesElement> entries = getPreferences(settings);
         if (entries.size() == 0) {
             task.log("There were no preferences found.", Project.MSG_WARN);
             return;
         }
+        int threads = Math.min(task.getEclipse().getSettingsThreads(), entries.size());
+        if (threads > 1) {
+            generateConcurrently(entries, threads);
+            return;
+        }
         for (int i = 0, size = entries.size(); i != size; ++i) {
             PreferencesElement preferences = entries.get(i);
+            validatePreferences(preferences);
+            generatePreferences(preferences, new PreferencesLog(false));
+        }
+    }
+
+    /**
+     * Returns the preferences to write: the preferences of the profile, if one is used,
+     * replaced by the preferences with the same name overriding them, followed by the
+     * rest of the preferences of the settings element.
+     * 
+     * @param settings
+     *        The element containing definitions of preferences.
+     * @return The elements with the definitions of preferences for output.
+     * @since Ant-Eclipse 1.0
+     */
+    private Vector<PreferencesElement> getPreferences(SettingsElement settings) {
+        if (profile == null)
+            return settings.getPreferences();
+        Vector<PreferencesElement> entries = new Vector<PreferencesElement>();
+        Vector<PreferencesElement> shared = profile.getPreferences();
+        for (int i = 0, size = shared.size(); i != size; ++i) {
+            PreferencesElement preferences = shared.get(i);
+            PreferencesElement override = settings.getPreferences(preferences.getName());
+            entries.addElement(override != null ? override : preferences);
+        }
+        Vector<PreferencesElement> own = settings.getPreferences();
+        for (int i = 0, size = own.size(); i != size; ++i) {
+            PreferencesElement preferences = own.get(i);
+            if (!profile.hasPreferences(preferences.getName()))
+                entries.addElement(preferences);
+        }
+        return entries;
+    }
+
+    /**
+     * Validates the element with the definition of preferences. The preferences of the
+     * profile have been validated already; the preferences overriding them are merged
+     * with the validated ones, so that they are validated as overrides.
+     * 
+     * @param preferences
+     *        The element with the definition of preferences to validate.
+     * @since Ant-Eclipse 1.0
+     */
+    private void validatePreferences(PreferencesElement preferences) {
+        if (profile == null || !profile.hasPreferences(preferences.getName())) {
             preferences.validate();
-            generatePreferences(preferences);
+            return;
+        }
+        if (!profile.contains(preferences))
+            preferences.validateOverride();
+    }
+
+    /**
+     * Generates the files <tt>.settings/xxx.prefs</tt> by the specified count of
+     * threads. All preferences are validated before the first file is written. The
+     * messages are logged and the errors reported in the order of the preferences.
+     * 
+     * @param entries
+     *        The elements with the definitions of preferences for output.
+     * @param threads
+     *        The count of threads to write the files with.
+     * @since Ant-Eclipse 1.0
+     */
+    private void generateConcurrently(Vector<PreferencesElement> entries, int threads) {
+        for (int i = 0, size = entries.size(); i != size; ++i)
+            validatePreferences(entries.get(i));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Vector<BuildException> errors = new Vector<BuildException>();
+        try {
+            Vector<PreferencesLog> logs = new Vector<PreferencesLog>(entries.size());
+            Vector<Future<Object>> results = new Vector<Future<Object>>(entries.size());
+            for (int i = 0, size = entries.size(); i != size; ++i) {
+                final PreferencesElement preferences = entries.get(i);
+                final PreferencesLog log = new PreferencesLog(true);
+                logs.addElement(log);
+                results.addElement(executor.submit(new Callable<Object>() {
+
+                    public Object call() {
+                        generatePreferences(preferences, log);
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0, size = results.size(); i != size; ++i)
+                try {
+                    results.get(i).get();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new BuildException("Writing the preferences was interrupted.",
+                            exception);
+                } catch (ExecutionException exception) {
+                    Throwable cause = exception.getCause();
+                    errors.addElement(cause instanceof BuildException ? (BuildException) cause
+                            : new BuildException(cause));
+                } finally {
+                    logs.get(i).replay();
+                }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (errors.size() == 1)
+            throw errors.get(0);
+        if (errors.size() > 1) {
+            StringBuffer message = new StringBuffer("Writing the preferences failed with ");
+            message.append(errors.size()).append(" errors:");
+            for (int i = 0, size = errors.size(); i != size; ++i)
+                message.append(' ').append(errors.get(i).getMessage());
+            throw new BuildException(message.toString(), errors.get(0));
         }
     }
 
@@ -82,28 +283,173 @@ final class SettingsGenerator {
      * 
      * @param preferences
      *        The element with the definition of preferences for output.
+     * @param log
+     *        The log of the messages about the file.
      * @since Ant-Eclipse 1.0
      */
-    private void generatePreferences(PreferencesElement preferences) {
+    private void generatePreferences(PreferencesElement preferences, PreferencesLog log) {
         EclipseOutput output = task.getOutput();
         String packageName = preferences.getName();
-        if (output.isPreferencesUpToDate(packageName)) {
-            task.log("The preferences for \"" + packageName + "\" are up-to-date.",
+        if (task.getEclipse().getSettings().isMerge()) {
+            InputStream input = output.openPreferences(packageName);
+            if (input != null) {
+                mergePreferences(preferences, input, log);
+                return;
+            }
+        }
+        boolean fingerprint = task.getEclipse().isFingerprintCheck();
+        if (!fingerprint && output.isPreferencesUpToDate(packageName)) {
+            log.log("The preferences for \"" + packageName + "\" are up-to-date.",
+                    Project.MSG_WARN);
+            return;
+        }
+        if (!fingerprint) {
+            log.log("Writing the preferences for \"" + packageName + "\".",
+                    Project.MSG_INFO);
+            writePreferences(packageName, generateVariables(preferences, log),
+                    !isDeterministic());
+            return;
+        }
+        String value = computeFingerprint(preferences);
+        String name = ".settings/" + packageName + ".prefs";
+        if (value.equals(output.getFingerprint(name))) {
+            log.log("The preferences for \"" + packageName + "\" are up-to-date.",
                     Project.MSG_WARN);
             return;
         }
-        task.log("Writing the preferences for \"" + packageName + "\".");
+        log.log("Writing the preferences for \"" + packageName + "\".",
+                Project.MSG_INFO);
+        writePreferences(packageName, generateVariables(preferences, log),
+                !isDeterministic());
+        output.setFingerprint(name, value);
+    }
+
+    /**
+     * Computes the fingerprint of the variables of the preferences in the order they
+     * are written in, so that the variables need not be rendered if the file is
+     * up-to-date. The time stamp of the file is left out.
+     * 
+     * @param preferences
+     *        The element with the definition of preferences for output.
+     * @return The fingerprint of the variables of the preferences.
+     * @since Ant-Eclipse 1.0
+     */
+    private String computeFingerprint(PreferencesElement preferences) {
+        VariableElement[] variables = getVariables(preferences);
+        boolean deterministic = isDeterministic();
+        if (deterministic)
+            Arrays.sort(variables, VARIABLE_NAME_ORDER);
+        Fingerprint fingerprint = new Fingerprint().add(deterministic).add(variables.length);
+        for (int i = 0; i != variables.length; ++i)
+            fingerprint.add(variables[i].getName()).add(variables[i].getValue());
+        return fingerprint.getValue();
+    }
+
+    /**
+     * Merges the variables of the preferences into the existing file
+     * <tt>.settings/xxx.prefs</tt> and writes it only if a value of the variables has
+     * changed. The time stamp of the file is not checked; the changes made in Eclipse
+     * make the file newer than the build file.
+     * 
+     * @param preferences
+     *        The element with the definition of preferences for output.
+     * @param input
+     *        The existing content of the file.
+     * @param log
+     *        The log of the messages about the file.
+     * @since Ant-Eclipse 1.0
+     */
+    private void mergePreferences(PreferencesElement preferences, InputStream input,
+            PreferencesLog log) {
+        String packageName = preferences.getName();
+        VariableElement[] variables = getVariables(preferences);
+        if (isDeterministic())
+            Arrays.sort(variables, VARIABLE_NAME_ORDER);
+        task.getTimer().count(PhaseTimer.VARIABLES, variables.length);
+        byte[] content;
+        try {
+            try {
+                content = PreferencesMerger.merge(input, variables);
+            } finally {
+                input.close();
+            }
+        } catch (IOException exception) {
+            throw new BuildException("Reading the preferences for \"" + packageName
+                    + "\" failed.", exception);
+        }
+        if (content == null) {
+            log.log("The preferences for \"" + packageName + "\" are up-to-date.",
+                    Project.MSG_WARN);
+            return;
+        }
+        log.log("Merging the preferences for \"" + packageName + "\".", Project.MSG_INFO);
+        writePreferences(packageName, content, false);
+    }
+
+    /**
+     * Generates the variables of the preferences into memory. The variables of the
+     * preferences of the profile have been generated already.
+     * 
+     * @param preferences
+     *        The element with the definition of preferences for output.
+     * @param log
+     *        The log of the messages about the file.
+     * @return The variables of the preferences encoded in UTF-8.
+     * @since Ant-Eclipse 1.0
+     */
+    private byte[] generateVariables(PreferencesElement preferences, PreferencesLog log) {
+        String packageName = preferences.getName();
+        Vector<VariableElement> entries = preferences.getVariables();
+        byte[] image = profile != null ? profile.getImage(preferences, isDeterministic())
+                : null;
+        if (image != null) {
+            task.getTimer().count(PhaseTimer.VARIABLES, entries.size());
+            return image;
+        }
+        VariableElement[] variables = getVariables(preferences);
+        if (variables.length == 0)
+            log.log("There were no variables found for \"" + packageName + "\".",
+                    Project.MSG_WARN);
+        task.getTimer().count(PhaseTimer.VARIABLES, variables.length);
+        return renderVariables(variables, isDeterministic());
+    }
+
+    /**
+     * Returns the variables of the preferences, merged with the variables of the
+     * preferences with the same name from the profile, if one is used.
+     * 
+     * @param preferences
+     *        The element with the definition of preferences.
+     * @return A new array with the variables of the preferences.
+     * @since Ant-Eclipse 1.0
+     */
+    private VariableElement[] getVariables(PreferencesElement preferences) {
+        if (profile != null && !profile.contains(preferences)
+                && profile.hasPreferences(preferences.getName()))
+            return profile.merge(preferences);
+        Vector<VariableElement> entries = preferences.getVariables();
+        return entries.toArray(new VariableElement[entries.size()]);
+    }
+
+    /**
+     * Renders the variables of preferences into memory.
+     * 
+     * @param variables
+     *        The variables to render; the array is sorted if the order is requested.
+     * @param deterministic
+     *        <tt>True</tt> if the variables should be sorted by their names.
+     * @return The variables encoded in UTF-8.
+     * @since Ant-Eclipse 1.0
+     */
+    static byte[] renderVariables(VariableElement[] variables, boolean deterministic) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
         OutputStreamWriter writer = null;
         try {
-            writer = new OutputStreamWriter(output.createPreferences(packageName),
-                    "UTF-8");
-            generateTimeStamp(writer);
-            Vector<VariableElement> entries = preferences.getVariables();
-            if (entries.size() == 0)
-                task.log("There were no variables found for \"" + packageName + "\".",
-                        Project.MSG_WARN);
-            for (int i = 0, size = entries.size(); i != size; ++i)
-                generateVariable(writer, entries.get(i));
+            writer = new OutputStreamWriter(content, "UTF-8");
+            if (deterministic)
+                Arrays.sort(variables, VARIABLE_NAME_ORDER);
+            for (int i = 0; i != variables.length; ++i)
+                generateVariable(writer, variables[i]);
         } catch (UnsupportedEncodingException exception) {
             throw new BuildException("Encoder to UTF-8 is not supported.", exception);
         } catch (IOException exception) {
@@ -116,6 +462,53 @@ final class SettingsGenerator {
                     throw new BuildException("Closing the settings failed.", exception1);
                 }
         }
+        return content.toByteArray();
+    }
+
+    /**
+     * Writes a file <tt>.settings/xxx.prefs</tt> with the time stamp, if requested, and
+     * the already generated variables using the supplied output object.
+     * 
+     * @param packageName
+     *        The name of the package for the preferences.
+     * @param content
+     *        The generated variables encoded in UTF-8.
+     * @param timeStamp
+     *        <tt>True</tt> if the comment with the current time should be written first.
+     * @since Ant-Eclipse 1.0
+     */
+    private void writePreferences(String packageName, byte[] content, boolean timeStamp) {
+        OutputStream stream = task.getOutput().createPreferences(packageName);
+        try {
+            try {
+                if (timeStamp) {
+                    OutputStreamWriter writer = new OutputStreamWriter(stream, "UTF-8");
+                    generateTimeStamp(writer);
+                    writer.flush();
+                }
+                stream.write(content);
+            } catch (IOException exception) {
+                // an incomplete file does not replace the previous one
+                EclipseOutput.discard(stream);
+                throw exception;
+            }
+            stream.close();
+        } catch (UnsupportedEncodingException exception) {
+            throw new BuildException("Encoder to UTF-8 is not supported.", exception);
+        } catch (IOException exception) {
+            throw new BuildException("Writing the settings failed.", exception);
+        }
+    }
+
+    /**
+     * Checks if the preferences are to be written without the time stamp and with the
+     * variables sorted by their names.
+     * 
+     * @return <tt>True</tt> if the same preferences are to be written the same way.
+     * @since Ant-Eclipse 1.0
+     */
+    private boolean isDeterministic() {
+        return task.getEclipse().getSettings().isDeterministic();
     }
 
     /**
@@ -135,7 +528,8 @@ final class SettingsGenerator {
     }
 
     /**
-     * Writes a single variable into a settings file.
+     * Writes a single variable into a settings file, escaped the same way as the
+     * variables merged into an existing file.
      * 
      * @param writer
      *        The output stream to write into.
@@ -145,11 +539,9 @@ final class SettingsGenerator {
      *         It an error during the output occurs.
      * @since Ant-Eclipse 1.0
      */
-    private void generateVariable(OutputStreamWriter writer, VariableElement variable)
-            throws IOException {
-        writer.write(variable.getName());
-        writer.write('=');
-        writer.write(variable.getValue());
+    private static void generateVariable(OutputStreamWriter writer,
+            VariableElement variable) throws IOException {
+        PreferencesMerger.writeVariable(writer, variable.getName(), variable.getValue());
         writer.write('\n');
     }
 
@@ -0,0 +1,219 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps results of the source discovery in a file to be reused by later runs. An entry
+ * is keyed by the absolute path of a binary and the source patterns it was discovered
+ * with; it stores the suffix of the discovered source archive or an empty string if
+ * none was found. The entry is valid as long as the time of the last modification of
+ * the directory of the binary does not change; the discovery depends only on the names
+ * of the files in the directory, which cannot change without the directory stamp, and
+ * a valid lookup costs a single system call this way. Stale entries are evicted when
+ * looked up. Instances are shared by all generators in the same JVM using the same file
+ * and are safe to use from multiple threads.
+ * 
+ * @see ClassPathGenerator
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class SourceDiscoveryCache {
+
+    private static final ConcurrentMap<File, SourceDiscoveryCache> instances = new ConcurrentHashMap<File, SourceDiscoveryCache>();
+
+    private File file;
+
+    private ConcurrentMap<String, String> entries = new ConcurrentHashMap<String, String>();
+
+    private volatile boolean modified = false;
+
+    /**
+     * Returns the cache stored in the specified file, loading it when it is used for the
+     * first time in this JVM.
+     * 
+     * @param file
+     *        The file with the cache content; it does not need to exist.
+     * @return The cache stored in the specified file.
+     * @throws IOException
+     *         If the existing file could not be read.
+     * @since Ant-Eclipse 1.0
+     */
+    static SourceDiscoveryCache getInstance(File file) throws IOException {
+        file = file.getAbsoluteFile();
+        SourceDiscoveryCache cache = instances.get(file);
+        if (cache == null) {
+            cache = new SourceDiscoveryCache(file);
+            cache.load();
+            SourceDiscoveryCache present = instances.putIfAbsent(file, cache);
+            if (present != null)
+                cache = present;
+        }
+        return cache;
+    }
+
+    private SourceDiscoveryCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the file the cache is stored in.
+     * 
+     * @return The file the cache is stored in.
+     * @since Ant-Eclipse 1.0
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the cached result of the source discovery for the specified binary.
+     * 
+     * @param binary
+     *        The binary file the sources were looked for.
+     * @param sourcePattern
+     *        The source patterns used by the discovery.
+     * @return The suffix of the discovered source archive, an empty string if no sources
+     *         were found or <tt>null</tt> if the result is not known or it is stale.
+     * @since Ant-Eclipse 1.0
+     */
+    String lookup(File binary, String sourcePattern) {
+        String key = getKey(binary, sourcePattern);
+        String value = entries.get(key);
+        if (value == null)
+            return null;
+        String stamp = getStamp(binary);
+        if (stamp == null || !value.startsWith(stamp)) {
+            if (entries.remove(key, value))
+                modified = true;
+            return null;
+        }
+        return value.substring(stamp.length());
+    }
+
+    /**
+     * Stores the result of the source discovery for the specified binary.
+     * 
+     * @param binary
+     *        The binary file the sources were looked for.
+     * @param sourcePattern
+     *        The source patterns used by the discovery.
+     * @param suffix
+     *        The suffix of the discovered source archive or an empty string if no
+     *        sources were found.
+     * @since Ant-Eclipse 1.0
+     */
+    void store(File binary, String sourcePattern, String suffix) {
+        String stamp = getStamp(binary);
+        if (stamp == null)
+            return;
+        String value = stamp + suffix;
+        if (!value.equals(entries.put(getKey(binary, sourcePattern), value)))
+            modified = true;
+    }
+
+    /**
+     * Writes the cache into its file if it has been modified. The file is written
+     * completely aside and renamed at last so that other processes never read it
+     * incomplete.
+     * 
+     * @return <tt>True</tt> if the file was written, <tt>false</tt> if there was
+     *         nothing to write.
+     * @throws IOException
+     *         If the file could not be written.
+     * @since Ant-Eclipse 1.0
+     */
+    synchronized boolean save() throws IOException {
+        if (!modified)
+            return false;
+        modified = false;
+        Properties properties = new Properties();
+        for (Iterator<Map.Entry<String, String>> iterator = entries.entrySet().iterator(); iterator
+                .hasNext();) {
+            Map.Entry<String, String> entry = iterator.next();
+            properties.setProperty(entry.getKey(), entry.getValue());
+        }
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("The directory \"" + directory.getAbsolutePath()
+                    + "\" could not be created.");
+        File temporary = File.createTempFile(file.getName() + ".", ".tmp", directory);
+        try {
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(temporary));
+            try {
+                properties.store(output, "Ant-Eclipse source discovery cache");
+            } finally {
+                output.close();
+            }
+        } catch (IOException exception) {
+            temporary.delete();
+            modified = true;
+            throw exception;
+        }
+        if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+            temporary.delete();
+            modified = true;
+            throw new IOException("The file \"" + temporary.getAbsolutePath()
+                    + "\" could not be renamed to \"" + file.getAbsolutePath() + "\".");
+        }
+        return true;
+    }
+
+    private void load() throws IOException {
+        if (!file.isFile())
+            return;
+        Properties properties = new Properties();
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            properties.load(input);
+        } finally {
+            input.close();
+        }
+        for (Iterator<Map.Entry<Object, Object>> iterator = properties.entrySet().iterator(); iterator
+                .hasNext();) {
+            Map.Entry<Object, Object> entry = iterator.next();
+            entries.put((String) entry.getKey(), (String) entry.getValue());
+        }
+    }
+
+    private static String getKey(File binary, String sourcePattern) {
+        return binary.getAbsolutePath() + '|' + sourcePattern;
+    }
+
+    private static String getStamp(File binary) {
+        File directory = binary.getAbsoluteFile().getParentFile();
+        long modified = directory == null ? 0 : directory.lastModified();
+        return modified == 0 ? null : modified + ",";
+    }
+
+}
@@ -79,7 +79,9 @@ public class VariableElement {
      */
     public void setName(String name) {
         preferences.validateVariableName(name);
+        String previous = this.name;
         this.name = name;
+        preferences.indexVariable(this, previous);
     }
 
     /**
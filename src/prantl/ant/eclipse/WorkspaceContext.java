@@ -0,0 +1,125 @@
+// Copyright 2005-2006 Ferdinand Prantl <prantl@users.sourceforge.net>
+// Copyright 2001-2004 The Apache Software Foundation
+// All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// See http://ant-eclipse.sourceforge.net for the most recent version
+// and more information.
+
+package prantl.ant.eclipse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the state shared by the generators of all modules of a workspace: the index of
+ * the directories searched by the source discovery and the outputs waiting to be
+ * flushed in a batch. Referenced paths are shared by the JVM-wide cache. An instance
+ * lives during a single generation of the workspace only. It is safe to use it from
+ * multiple threads.
+ * 
+ * @see EclipseWorkspaceTask
+ * @see ResolvedPathCache
+ * @since Ant-Eclipse 1.0
+ * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
+ */
+final class WorkspaceContext {
+
+    private DirectoryIndex directoryIndex = new DirectoryIndex();
+
+    private boolean batch;
+
+    private boolean timed = false;
+
+    private List<BufferingEclipseOutput> pendingOutputs = new ArrayList<BufferingEclipseOutput>();
+
+    /**
+     * Creates a new empty context.
+     * 
+     * @param batch
+     *        <tt>True</tt> if the generated files of all modules are written in a batch
+     *        when all modules have been generated.
+     * @since Ant-Eclipse 1.0
+     */
+    WorkspaceContext(boolean batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * Checks if the generated files of all modules are written in a batch when all
+     * modules have been generated.
+     * 
+     * @return <tt>True</tt> if the files are written in a batch.
+     * @since Ant-Eclipse 1.0
+     */
+    boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * Checks if the output of the modules is measured.
+     * 
+     * @return <tt>True</tt> if the output of the modules is measured.
+     * @since Ant-Eclipse 1.0
+     */
+    boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * Sets if the output of the modules is measured.
+     * 
+     * @param flag
+     *        <tt>True</tt> if the output of the modules should be measured.
+     * @since Ant-Eclipse 1.0
+     */
+    void setTimed(boolean flag) {
+        timed = flag;
+    }
+
+    /**
+     * Stores the output of a module waiting to be flushed.
+     * 
+     * @param output
+     *        The output with the generated files of a module.
+     * @since Ant-Eclipse 1.0
+     */
+    synchronized void addPendingOutput(BufferingEclipseOutput output) {
+        pendingOutputs.add(output);
+    }
+
+    /**
+     * Returns the outputs waiting to be flushed and forgets them.
+     * 
+     * @return The outputs with the generated files of the modules.
+     * @since Ant-Eclipse 1.0
+     */
+    synchronized List<BufferingEclipseOutput> removePendingOutputs() {
+        List<BufferingEclipseOutput> outputs = pendingOutputs;
+        pendingOutputs = new ArrayList<BufferingEclipseOutput>();
+        return outputs;
+    }
+
+    /**
+     * Returns the index of the directories shared by the source discovery of all
+     * modules.
+     * 
+     * @return The index of the directories.
+     * @since Ant-Eclipse 1.0
+     */
+    DirectoryIndex getDirectoryIndex() {
+        return directoryIndex;
+    }
+
+}
@@ -19,19 +19,38 @@
 
 package prantl.ant.eclipse;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 /**
- * Simplifies writing XML output.
+ * Simplifies writing XML output. The output is collected in an internal buffer, which
+ * is passed to the underlying writer in large blocks; special characters are escaped
+ * while copying the text into the buffer, without creating any intermediate objects.
+ * The output can go either to a character writer or, encoded to UTF-8 without any
+ * charset encoder, to a byte channel.
  * 
  * @since Ant-Eclipse 1.0
  * @author Ferdinand Prantl &lt;prantl@users.sourceforge.net&gt;
  */
 class XmlWriter {
 
+    private static final int BUFFER_SIZE = 8192;
+
     private Writer writer;
 
+    private WritableByteChannel channel;
+
+    private ByteBuffer bytes;
+
+    private char[] buffer = new char[BUFFER_SIZE];
+
+    private int length = 0;
+
     private int nestedLevel = 0;
 
     private boolean insideDocument = false;
@@ -49,13 +68,62 @@ class XmlWriter {
     }
 
     /**
-     * Closes the underlying writer.
+     * Creates a new instance writing the output encoded to UTF-8 into a byte channel.
+     * The encoded output is collected in a reusable byte buffer and passed to the
+     * channel in large blocks.
+     * 
+     * @param channel
+     *        Channel to perform the output to.
+     */
+    XmlWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        // a character takes three bytes at most, a surrogate pair four
+        bytes = ByteBuffer.allocate(3 * BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance writing the output encoded to UTF-8 into an output stream.
+     * Output to a file is written through its channel without any other layers.
+     * 
+     * @param stream
+     *        Stream to perform the output to.
+     */
+    XmlWriter(OutputStream stream) {
+        this(stream instanceof FileOutputStream ? ((FileOutputStream) stream).getChannel()
+                : Channels.newChannel(stream));
+    }
+
+    /**
+     * Writes the buffered output into the underlying writer or channel without closing
+     * it, so that a failure can be handled before the output is finished.
      * 
      * @throws IOException
-     *         If there was an error closing the underlying writer.
+     *         If there was an error writing into the underlying writer or channel.
+     */
+    void flush() throws IOException {
+        flushBuffer();
+        // an unpaired high surrogate could not be encoded
+        if (length != 0) {
+            buffer[0] = '?';
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffered output and closes the underlying writer or channel.
+     * 
+     * @throws IOException
+     *         If there was an error closing the underlying writer or channel.
      */
     void close() throws IOException {
-        writer.close();
+        try {
+            flush();
+        } finally {
+            if (writer != null)
+                writer.close();
+            else
+                channel.close();
+        }
     }
 
     /**
@@ -65,7 +133,7 @@ class XmlWriter {
      *         If there was an error writing into the underlying writer.
      */
     void writeXmlDeclaration() throws IOException {
-        writer.write("<?xml version=\"1.0\"?>");
+        write("<?xml version=\"1.0\"?>");
         insideDocument = true;
     }
 
@@ -80,7 +148,9 @@ class XmlWriter {
      *         If there was an error writing into the underlying writer.
      */
     void writeXmlDeclaration(String encoding) throws IOException {
-        writer.write("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>");
+        write("<?xml version=\"1.0\" encoding=\"");
+        write(encoding);
+        write("\"?>");
         insideDocument = true;
     }
 
@@ -98,8 +168,11 @@ class XmlWriter {
      *         If there was an error writing into the underlying writer.
      */
     void writeXmlDeclaration(boolean standalone, String encoding) throws IOException {
-        writer.write("<?xml version=\"1.0\" standalone=\"" + (standalone ? "yes" : "no")
-                + "\" encoding=\"" + encoding + "\"?>");
+        write("<?xml version=\"1.0\" standalone=\"");
+        write(standalone ? "yes" : "no");
+        write("\" encoding=\"");
+        write(encoding);
+        write("\"?>");
         insideDocument = true;
     }
 
@@ -113,12 +186,12 @@ class XmlWriter {
      */
     void openOpeningTag(String name) throws IOException {
         if (insideDocument)
-            writer.write('\n');
+            write('\n');
         else
             insideDocument = true;
         writeIndentation();
-        writer.write('<');
-        writer.write(name);
+        write('<');
+        write(name);
     }
 
     /**
@@ -133,11 +206,11 @@ class XmlWriter {
      *         If there was an error writing into the underlying writer.
      */
     void appendAttribute(String name, String value) throws IOException {
-        writer.write(' ');
-        writer.write(name);
-        writer.write("=\"");
-        writer.write(escapeAttributeValue(value));
-        writer.write('\"');
+        write(' ');
+        write(name);
+        write("=\"");
+        writeEscaped(value, true);
+        write('\"');
     }
 
     /**
@@ -147,7 +220,7 @@ class XmlWriter {
      *         If there was an error writing into the underlying writer.
      */
     void closeOpeningTag() throws IOException {
-        writer.write('>');
+        write('>');
         ++nestedLevel;
     }
 
@@ -158,7 +231,7 @@ class XmlWriter {
      *         If there was an error writing into the underlying writer.
      */
     void closeDegeneratedElement() throws IOException {
-        writer.write(" />");
+        write(" />");
     }
 
     /**
@@ -185,13 +258,13 @@ class XmlWriter {
     void closeElement(String name) throws IOException {
         --nestedLevel;
         if (!containsText) {
-            writer.write('\n');
+            write('\n');
             writeIndentation();
         } else
             containsText = false;
-        writer.write("</");
-        writer.write(name);
-        writer.write(">");
+        write("</");
+        write(name);
+        write('>');
     }
 
     /**
@@ -203,84 +276,128 @@ class XmlWriter {
      *         If there was an error writing into the underlying writer.
      */
     void writeText(String text) throws IOException {
-        writer.write(escapeCharacterData(text));
+        writeEscaped(text, false);
         containsText = true;
     }
 
     /**
-     * Replaces all special characters in an attrubte XML with the corresponding entity
-     * referenced and returns the result as a new String if necessary.
+     * Writes the text replacing all special characters with the corresponding entity
+     * references. Runs of characters which need no escaping are copied at once.
      * 
      * @param text
      *        Input text, possibly with special characters.
-     * @return Output text with no special characters.
+     * @param attribute
+     *        <tt>True</tt> if the text is an attribute value, where also quotes are to
+     *        be escaped, <tt>false</tt> if it is character data.
+     * @throws IOException
+     *         If there was an error writing into the underlying writer.
      */
-    String escapeAttributeValue(String text) {
-        if (text.indexOf('&') < 0 && text.indexOf('<') < 0 && text.indexOf('>') < 0
-                && text.indexOf('\"') < 0 && text.indexOf('\'') < 0)
-            return text;
-        int length = text.length();
-        StringBuffer result = new StringBuffer(length);
-        for (int i = 0; i != length; ++i) {
-            char ch = text.charAt(i);
-            switch (ch) {
+    private void writeEscaped(String text, boolean attribute) throws IOException {
+        int start = 0;
+        for (int i = 0, end = text.length(); i != end; ++i) {
+            String reference;
+            switch (text.charAt(i)) {
             case '&':
-                result.append("&amp;");
+                reference = "&amp;";
                 break;
             case '<':
-                result.append("&lt;");
+                reference = "&lt;";
                 break;
             case '>':
-                result.append("&gt;");
+                reference = "&gt;";
                 break;
             case '\"':
-                result.append("&quot;");
+                reference = attribute ? "&quot;" : null;
                 break;
             case '\'':
-                result.append("&apos;");
+                reference = attribute ? "&apos;" : null;
                 break;
             default:
-                result.append(ch);
+                reference = null;
             }
-        }
-        return result.toString();
-    }
-
-    /**
-     * Replaces all special characters in a character data node with the corresponding
-     * entity referenced and returns the result as a new String if necessary.
-     * 
-     * @param text
-     *        Input text, possibly with special characters.
-     * @return Output text with no special characters.
-     */
-    String escapeCharacterData(String text) {
-        if (text.indexOf('&') < 0 && text.indexOf('<') < 0 && text.indexOf('>') < 0)
-            return text;
-        int length = text.length();
-        StringBuffer result = new StringBuffer(length);
-        for (int i = 0; i != length; ++i) {
-            char ch = text.charAt(i);
-            switch (ch) {
-            case '&':
-                result.append("&amp;");
-                break;
-            case '<':
-                result.append("&lt;");
-                break;
-            case '>':
-                result.append("&gt;");
-                break;
-            default:
-                result.append(ch);
+            if (reference != null) {
+                write(text, start, i);
+                write(reference);
+                start = i + 1;
             }
         }
-        return result.toString();
+        write(text, start, text.length());
     }
 
     private void writeIndentation() throws IOException {
         for (int i = 0; i != nestedLevel; ++i)
-            writer.write("  ");
+            write("  ");
+    }
+
+    private void write(char ch) throws IOException {
+        if (length == buffer.length)
+            flushBuffer();
+        buffer[length++] = ch;
+    }
+
+    private void write(String text) throws IOException {
+        write(text, 0, text.length());
+    }
+
+    private void write(String text, int start, int end) throws IOException {
+        while (start != end) {
+            if (length == buffer.length)
+                flushBuffer();
+            int count = Math.min(end - start, buffer.length - length);
+            text.getChars(start, start + count, buffer, length);
+            length += count;
+            start += count;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.write(buffer, 0, length);
+            length = 0;
+        } else
+            encodeBuffer();
+    }
+
+    private void encodeBuffer() throws IOException {
+        byte[] array = bytes.array();
+        int position = 0;
+        int i = 0;
+        for (; i != length; ++i) {
+            char ch = buffer[i];
+            if (ch < 0x80)
+                array[position++] = (byte) ch;
+            else if (ch < 0x800) {
+                array[position++] = (byte) (0xC0 | ch >> 6);
+                array[position++] = (byte) (0x80 | ch & 0x3F);
+            } else if (ch >= 0xD800 && ch < 0xDC00) {
+                // a high surrogate split at the end of the buffer waits for the next one
+                if (i + 1 == length)
+                    break;
+                char low = buffer[i + 1];
+                if (low >= 0xDC00 && low < 0xE000) {
+                    int code = 0x10000 + ((ch - 0xD800) << 10) + (low - 0xDC00);
+                    array[position++] = (byte) (0xF0 | code >> 18);
+                    array[position++] = (byte) (0x80 | code >> 12 & 0x3F);
+                    array[position++] = (byte) (0x80 | code >> 6 & 0x3F);
+                    array[position++] = (byte) (0x80 | code & 0x3F);
+                    ++i;
+                } else
+                    array[position++] = '?';
+            } else if (ch >= 0xDC00 && ch < 0xE000)
+                array[position++] = '?';
+            else {
+                array[position++] = (byte) (0xE0 | ch >> 12);
+                array[position++] = (byte) (0x80 | ch >> 6 & 0x3F);
+                array[position++] = (byte) (0x80 | ch & 0x3F);
+            }
+        }
+        bytes.clear();
+        bytes.limit(position);
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        if (i != length)
+            buffer[0] = buffer[i];
+        length -= i;
     }
 
 }
@@ -0,0 +1,76 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeWatcherTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("watch", "");
+    assertTrue(directory.delete() && directory.mkdir());
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    for (int i = 0; i != files.length; ++i)
+      files[i].delete();
+    directory.delete();
+  }
+
+  @Test
+  public void testReportsKindsOfChangedFiles() throws IOException {
+    File preferences = new File(directory, "preferences.properties");
+    write(preferences, "a=1\n");
+    ChangeWatcher watcher = new ChangeWatcher();
+    watcher.watch(directory, ChangeWatcher.CLASS_PATH);
+    watcher.watch(preferences, ChangeWatcher.SETTINGS);
+    watcher.watch(preferences, ChangeWatcher.CONFIGURATION);
+    assertEquals(2, watcher.getWatchedFiles());
+    assertEquals(0, watcher.poll());
+
+    write(preferences, "a=12\n");
+    assertEquals(ChangeWatcher.SETTINGS | ChangeWatcher.CONFIGURATION, watcher.poll());
+    assertEquals(0, watcher.poll());
+
+    // the time of the directory may not change within its resolution
+    long stamp = directory.lastModified();
+    assertTrue(new File(directory, "a.jar").createNewFile());
+    assertTrue(directory.setLastModified(stamp));
+    assertEquals(ChangeWatcher.CLASS_PATH, watcher.poll());
+
+    assertTrue(preferences.delete());
+    assertEquals(ChangeWatcher.SETTINGS | ChangeWatcher.CONFIGURATION | ChangeWatcher.CLASS_PATH,
+        watcher.poll());
+  }
+
+  @Test
+  public void testWatchesMissingFiles() throws IOException {
+    File library = new File(directory, "lib");
+    ChangeWatcher watcher = new ChangeWatcher();
+    watcher.watch(library, ChangeWatcher.CLASS_PATH);
+    assertEquals(0, watcher.poll());
+    assertTrue(library.mkdir());
+    assertEquals(ChangeWatcher.CLASS_PATH, watcher.poll());
+  }
+
+  private static void write(File file, String content) throws IOException {
+    FileOutputStream output = new FileOutputStream(file);
+    try {
+      output.write(content.getBytes("ISO-8859-1"));
+    } finally {
+      output.close();
+    }
+  }
+}
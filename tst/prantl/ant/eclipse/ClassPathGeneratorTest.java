@@ -1,9 +1,22 @@
 package prantl.ant.eclipse;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+import org.apache.tools.ant.types.Reference;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class ClassPathGeneratorTest {
 
@@ -27,4 +40,198 @@ public class ClassPathGeneratorTest {
     assertEquals("/path, path, file", "/path/path/", classPathGenerator.extractPath("/path/path/File.ext"));
     assertEquals("path/path/path/", classPathGenerator.extractPath("path/path/path/File.ext"));
   }
+
+  @Test
+  public void testLastBinaryDefinitionWinsAndFirstPositionIsKept() {
+    ClassPathElement classPath = new ClassPathElement();
+    ClassPathEntryLibraryElement library = classPath.createLibrary();
+    library.setPath("lib/a.jar:lib/b.jar");
+    library = classPath.createLibrary();
+    library.setPath("lib/c.jar:lib/a.jar");
+    library.setExported(true);
+    library.setSource("lib/a-src.zip");
+
+    String output = generate(classPath);
+
+    int a = output.indexOf("<classpathentry kind=\"lib\" path=\"lib/a.jar\" exported=\"true\" sourcepath=\"lib/a-src.zip\" />");
+    int b = output.indexOf("<classpathentry kind=\"lib\" path=\"lib/b.jar\" />");
+    int c = output.indexOf("<classpathentry kind=\"lib\" path=\"lib/c.jar\" exported=\"true\" sourcepath=\"lib/a-src.zip\" />");
+    assertTrue(output, a >= 0 && b > a && c > b);
+    assertEquals(output, a, output.lastIndexOf("path=\"lib/a.jar\"") - "<classpathentry kind=\"lib\" ".length());
+  }
+
+  @Test
+  public void testStreamingMatchesMerging() {
+    ClassPathElement classPath = new ClassPathElement();
+    ClassPathEntryLibraryElement library = classPath.createLibrary();
+    library.setPath("lib/a.jar:lib/b.jar:lib/a.jar");
+    classPath.createVariable().setPath("lib/b.jar:lib/d.jar");
+    library = classPath.createLibrary();
+    library.setPath("lib/c.jar:lib/a.jar");
+    library.setExported(true);
+    library.setJavadoc("http://example.org/api");
+    String merged = generate(classPath);
+
+    classPath.setStreaming(true);
+    assertEquals(merged, generate(classPath));
+
+    classPath = new ClassPathElement();
+    classPath.createLibrary().setPath("lib/a.jar:lib/b.jar:lib/a.jar");
+    merged = generate(classPath);
+    classPath.setStreaming(true);
+    assertEquals(merged, generate(classPath));
+  }
+
+  @Test
+  public void testStreamingMatchesMergingWithFingerprint() {
+    ClassPathElement classPath = new ClassPathElement();
+    classPath.createLibrary().setPath("lib/a.jar:lib/b.jar:lib/a.jar");
+    classPath.createVariable().setPath("lib/b.jar:lib/d.jar");
+    String merged = generate(classPath, new File(System.getProperty("java.io.tmpdir")), 1, true);
+    assertTrue(merged, merged.contains("path=\"lib/d.jar\""));
+
+    classPath.setStreaming(true);
+    assertEquals(merged, generate(classPath, new File(System.getProperty("java.io.tmpdir")), 1, true));
+  }
+
+  @Test
+  public void testStreamingIteratesReferencedPaths() throws IOException {
+    File baseDir = File.createTempFile("streamed", "");
+    assertTrue(baseDir.delete() && baseDir.mkdir());
+    try {
+      for (int i = 0; i != 3; ++i)
+        assertTrue(new File(baseDir, "library" + i + ".jar").createNewFile());
+      Project project = new Project();
+      project.setBaseDir(baseDir);
+      Path path = new Path(project);
+      FileSet libraries = new FileSet();
+      libraries.setDir(baseDir);
+      libraries.setIncludes("*.jar");
+      path.addFileset(libraries);
+      project.addReference("libraries", path);
+      ClassPathElement classPath = new ClassPathElement();
+      classPath.createLibrary().setPathRef(new Reference(project, "libraries"));
+      classPath.createVariable().setPath("library1.jar");
+      String merged = generate(classPath, baseDir, 1);
+      assertTrue(merged, merged.contains("kind=\"lib\" path=\"library2.jar\""));
+
+      classPath.setStreaming(true);
+      assertEquals(merged, generate(classPath, baseDir, 1));
+      assertEquals(merged, generate(classPath, baseDir, 1, true));
+      // a path extended after it has been iterated is iterated again
+      path.createPathElement().setLocation(new File(baseDir, "added.jar"));
+      assertTrue(generate(classPath, baseDir, 1).contains("path=\"added.jar\""));
+    } finally {
+      File[] files = baseDir.listFiles();
+      for (int i = 0; i != files.length; ++i)
+        files[i].delete();
+      baseDir.delete();
+    }
+  }
+
+  @Test
+  public void testMergesManyDuplicateBinaryEntries() {
+    String output = generate(createDuplicatedLibraries(50000));
+    assertEquals(-1, output.indexOf("kind=\"var\""));
+    // the libraries follow the variables and override them at their positions
+    int position = output.indexOf("<classpathentry kind=\"src\"");
+    for (int i = 0; i != 25000; ++i) {
+      String entry = "<classpathentry kind=\"lib\" path=\"lib/library" + i + ".jar\" />";
+      int next = output.indexOf(entry, position);
+      assertTrue(entry, next > position);
+      position = next;
+    }
+    assertEquals(25000, count(output, "kind=\"lib\""));
+  }
+
+  @Test
+  public void testConcurrentSourceDiscoveryMatchesSerial() throws IOException {
+    File baseDir = File.createTempFile("sources", "");
+    assertTrue(baseDir.delete() && baseDir.mkdir());
+    try {
+      StringBuilder path = new StringBuilder();
+      for (int i = 0; i != 100; ++i) {
+        if (i != 0)
+          path.append(File.pathSeparatorChar);
+        path.append("library").append(i).append(".jar");
+        if (i % 3 == 0)
+          assertTrue(new File(baseDir, "library" + i + "-sources.jar").createNewFile());
+        else if (i % 3 == 1)
+          assertTrue(new File(baseDir, "library" + i + "-src.zip").createNewFile());
+      }
+      String serial = generate(createLibraries(path.toString(), "sources,src"), baseDir, 1);
+      String concurrent = generate(createLibraries(path.toString(), "sources,src"), baseDir, 8);
+      assertTrue(serial, serial.contains("path=\"library99.jar\" sourcepath=\"library99-sources.jar\""));
+      assertTrue(serial, serial.contains("path=\"library1.jar\" sourcepath=\"library1-src.zip\""));
+      assertEquals(serial, concurrent);
+    } finally {
+      File[] files = baseDir.listFiles();
+      for (int i = 0; i != files.length; ++i)
+        files[i].delete();
+      baseDir.delete();
+    }
+  }
+
+  private ClassPathElement createLibraries(String path, String sourcePattern) {
+    ClassPathElement classPath = new ClassPathElement();
+    ClassPathEntryLibraryElement library = classPath.createLibrary();
+    library.setPath(path);
+    library.setSourcePattern(sourcePattern);
+    return classPath;
+  }
+
+  private static int count(String text, String part) {
+    int count = 0;
+    for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length()))
+      ++count;
+    return count;
+  }
+
+  private ClassPathElement createDuplicatedLibraries(int count) {
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i != count / 2; ++i) {
+      if (i != 0)
+        path.append(File.pathSeparatorChar);
+      path.append("lib/library").append(i).append(".jar");
+    }
+    ClassPathElement classPath = new ClassPathElement();
+    classPath.createLibrary().setPath(path.toString());
+    classPath.createVariable().setPath(path.toString());
+    return classPath;
+  }
+
+  private String generate(ClassPathElement classPath) {
+    return generate(classPath, new File(System.getProperty("java.io.tmpdir")), 1);
+  }
+
+  private String generate(ClassPathElement classPath, File baseDir, int threads) {
+    return generate(classPath, baseDir, threads, false);
+  }
+
+  private String generate(ClassPathElement classPath, File baseDir, int threads, boolean fingerprint) {
+    final StringBuilder buf = new StringBuilder();
+    EclipseElement eclipse = new EclipseElement();
+    eclipse.setClassPath(classPath);
+    eclipse.setSourceDiscoveryThreads(threads);
+    if (fingerprint) {
+      EclipseElement.UpToDateCheck check = new EclipseElement.UpToDateCheck();
+      check.setValue("fingerprint");
+      eclipse.setUpToDateCheck(check);
+    }
+    EclipseOutput output = mock(EclipseOutput.class);
+    when(output.getEclipse()).thenReturn(eclipse);
+    when(output.isClassPathUpToDate()).thenReturn(false);
+    when(output.createClassPath()).thenAnswer(new Answer<OutputStream>() {
+
+      public OutputStream answer(InvocationOnMock invocation) throws Throwable {
+        return new AppendableOutputStream(buf);
+      }
+    });
+    EclipseTask task = new EclipseTask(output);
+    Project project = new Project();
+    project.setBaseDir(baseDir);
+    task.setProject(project);
+    new ClassPathGenerator(task).generate();
+    return buf.toString();
+  }
 }
@@ -0,0 +1,55 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirectoryIndexTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("index", "");
+    assertTrue(directory.delete() && directory.mkdir());
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    for (int i = 0; i != files.length; ++i)
+      files[i].delete();
+    directory.delete();
+  }
+
+  @Test
+  public void findsNamesDifferingInCaseWhenFileSystemDoes() throws IOException {
+    File file = new File(directory, "Library-Sources.jar");
+    assertTrue(file.createNewFile());
+    DirectoryIndex index = new DirectoryIndex();
+    assertTrue(index.contains(file));
+    File other = new File(directory, "LIBRARY-SOURCES.JAR");
+    assertEquals(other.canRead(), index.contains(other));
+    assertFalse(index.contains(new File(directory, "xLibrary-Sources.jar")));
+  }
+
+  @Test
+  public void doesNotNoticeFilesAddedAfterListing() throws IOException {
+    DirectoryIndex index = new DirectoryIndex();
+    assertTrue(index.isDirectory(directory));
+    File file = new File(directory, "library.jar");
+    assertTrue(file.createNewFile());
+    assertFalse(index.contains(file));
+    index.clear();
+    assertTrue(index.contains(file));
+    assertFalse(index.isDirectory(new File(directory, "missing")));
+  }
+
+}
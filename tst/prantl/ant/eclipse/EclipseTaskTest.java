@@ -21,6 +21,8 @@ package prantl.ant.eclipse;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -34,8 +36,10 @@ import java.util.StringTokenizer;
 import junit.framework.TestCase;
 
 import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildListener;
 import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.Reference;
 
 /**
  * Test fixture with unit test cases for the class <tt>EclipseTask</tt>.
@@ -101,6 +105,8 @@ public class EclipseTaskTest extends TestCase {
 
         private ByteArrayOutputStream classPath = null;
 
+        private Hashtable<String, String> fingerprints = new Hashtable<String, String>();
+
         /**
          * Creates a new instance of the output object.
          * 
@@ -192,6 +198,22 @@ public class EclipseTaskTest extends TestCase {
             return classPath = new ByteArrayOutputStream();
         }
 
+        /**
+         * @see EclipseOutput#getFingerprint(String)
+         * @since Ant-Eclipse 1.0
+         */
+        String getFingerprint(String name) {
+            return fingerprints.get(name);
+        }
+
+        /**
+         * @see EclipseOutput#setFingerprint(String, String)
+         * @since Ant-Eclipse 1.0
+         */
+        void setFingerprint(String name, String value) {
+            fingerprints.put(name, value);
+        }
+
     }
 
     /**
@@ -499,6 +521,621 @@ public class EclipseTaskTest extends TestCase {
                 .getLog());
     }
 
+    /**
+     * Tests executing the task twice with the following configuration, changing the
+     * project name before the third execution:
+     * 
+     * <pre>
+     *   &lt;eclipse uptodatecheck=&quot;fingerprint&quot;&gt;
+     *     &lt;settings&gt;
+     *       &lt;resources encoding=&quot;UTF-8&quot; /&gt;
+     *     &lt;/settings&gt;
+     *     &lt;project name=&quot;test&quot; /&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteWithFingerprintCheck() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        EclipseElement.UpToDateCheck check = new EclipseElement.UpToDateCheck();
+        check.setValue("fingerprint");
+        eclipse.setUpToDateCheck(check);
+        SettingsElement settings = new SettingsElement();
+        settings.createResources().setEncoding("UTF-8");
+        eclipse.setSettings(settings);
+        ProjectElement project = new ProjectElement();
+        project.setName("test");
+        eclipse.setProject(project);
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        MemoryLogListener logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertEquals(
+                "INFO    Writing the preferences for \"org.eclipse.core.resources\".\n"
+                        + "INFO    Writing the project definition in the mode \"java\".\n"
+                        + "WARNING There was no description of a classpath found.\n",
+                logListener.getLog());
+
+        task = new EclipseTaskTester(output);
+        logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertEquals(
+                "WARNING The preferences for \"org.eclipse.core.resources\" are up-to-date.\n"
+                        + "WARNING The project definition is up-to-date.\n"
+                        + "WARNING There was no description of a classpath found.\n",
+                logListener.getLog());
+
+        project.setName("changed");
+        task = new EclipseTaskTester(output);
+        logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertEquals(
+                "WARNING The preferences for \"org.eclipse.core.resources\" are up-to-date.\n"
+                        + "INFO    Writing the project definition in the mode \"java\".\n"
+                        + "WARNING There was no description of a classpath found.\n",
+                logListener.getLog());
+        assertTrue(streamToString(output.openProject()).indexOf("<name>changed</name>") > 0);
+    }
+
+    /**
+     * Tests executing the task three times with the following configuration, adding a
+     * source archive next to the library before the third execution:
+     * 
+     * <pre>
+     *   &lt;eclipse uptodatecheck=&quot;fingerprint&quot;&gt;
+     *     &lt;classpath&gt;
+     *       &lt;library path=&quot;lib/library.jar&quot; sourcepattern=&quot;sources&quot; /&gt;
+     *     &lt;/classpath&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteWithFingerprintCheckOfClassPath() throws Exception {
+        File baseDir = File.createTempFile("fingerprint", "");
+        assertTrue(baseDir.delete() && baseDir.mkdir());
+        File libDir = new File(baseDir, "lib");
+        File library = new File(libDir, "library.jar");
+        File sources = new File(libDir, "library-sources.jar");
+        try {
+            assertTrue(libDir.mkdir() && library.createNewFile());
+            EclipseElement eclipse = new EclipseElement();
+            EclipseElement.UpToDateCheck check = new EclipseElement.UpToDateCheck();
+            check.setValue("fingerprint");
+            eclipse.setUpToDateCheck(check);
+            ClassPathElement classPath = new ClassPathElement();
+            ClassPathEntryLibraryElement entry = classPath.createLibrary();
+            entry.setPath("lib/library.jar");
+            entry.setSourcePattern("sources");
+            eclipse.setClassPath(classPath);
+            MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+
+            assertEquals("INFO    Writing the classpath definition.\n", executeClassPath(
+                    output, baseDir));
+            assertTrue(streamToString(output.openClassPath()).indexOf(
+                    "path=\"lib/library.jar\" />") > 0);
+            assertEquals("WARNING The classpath definition is up-to-date.\n",
+                    executeClassPath(output, baseDir));
+
+            assertTrue(sources.createNewFile());
+            // the stamp of the directory may not change within its resolution
+            assertTrue(libDir.setLastModified(libDir.lastModified() + 60000));
+            assertEquals("INFO    Writing the classpath definition.\n", executeClassPath(
+                    output, baseDir));
+            assertTrue(streamToString(output.openClassPath()).indexOf(
+                    "sourcepath=\"lib/library-sources.jar\"") > 0);
+        } finally {
+            sources.delete();
+            library.delete();
+            libDir.delete();
+            baseDir.delete();
+        }
+    }
+
+    private static String executeClassPath(EclipseOutput output, File baseDir) {
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        task.getProject().setBaseDir(baseDir);
+        MemoryLogListener logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        // only the messages about the classpath are checked
+        StringBuffer log = new StringBuffer();
+        StringTokenizer lines = new StringTokenizer(logListener.getLog(), "\n");
+        while (lines.hasMoreTokens()) {
+            String line = lines.nextToken();
+            if (line.indexOf("classpath") > 0)
+                log.append(line).append('\n');
+        }
+        return log.toString();
+    }
+
+    /**
+     * Tests executing the task twice with the following configuration, changing the
+     * project name before the third execution:
+     * 
+     * <pre>
+     *   &lt;eclipse writeifchanged=&quot;true&quot;&gt;
+     *     &lt;project name=&quot;test&quot; /&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteWithWriteIfChanged() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        eclipse.setWriteIfChanged(true);
+        ProjectElement project = new ProjectElement();
+        project.setName("test");
+        eclipse.setProject(project);
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        MemoryLogListener logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertTrue(logListener.getLog().endsWith("INFO    Changed 1 of 1 generated files.\n"));
+        String projectOutput = streamToString(output.openProject());
+
+        task = new EclipseTaskTester(output);
+        logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertTrue(logListener.getLog().endsWith("INFO    Changed 0 of 1 generated files.\n"));
+        assertEquals(projectOutput, streamToString(output.openProject()));
+
+        project.setName("changed");
+        task = new EclipseTaskTester(output);
+        logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertTrue(logListener.getLog().endsWith("INFO    Changed 1 of 1 generated files.\n"));
+        assertTrue(streamToString(output.openProject()).indexOf("<name>changed</name>") > 0);
+    }
+
+    /**
+     * Tests executing the task twice with the following configuration:
+     * 
+     * <pre>
+     *   &lt;eclipse&gt;
+     *     &lt;settings deterministic=&quot;true&quot;&gt;
+     *       &lt;resources encoding=&quot;UTF-8&quot; /&gt;
+     *     &lt;/settings&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteWithDeterministicSettingsElement() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        SettingsElement settings = new SettingsElement();
+        settings.setDeterministic(true);
+        settings.createResources().setEncoding("UTF-8");
+        eclipse.setSettings(settings);
+
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+        new EclipseTaskTester(output).execute();
+        String settingsOutput = streamToString(output
+                .openPreferences(OrgEclipseCoreResourcesPreferencesElement
+                        .getPackageName()));
+        assertEquals("eclipse.preferences.version=1\n" + "encoding/<project>=UTF-8\n",
+                settingsOutput);
+        new EclipseTaskTester(output).execute();
+        assertEquals(settingsOutput, streamToString(output
+                .openPreferences(OrgEclipseCoreResourcesPreferencesElement
+                        .getPackageName())));
+    }
+
+    /**
+     * Tests executing the task with the following configuration, where the classpath
+     * refers to a missing path:
+     * 
+     * <pre>
+     *   &lt;eclipse parallel=&quot;true&quot; failonerror=&quot;false&quot; errorproperty=&quot;failed&quot;&gt;
+     *     &lt;settings deterministic=&quot;true&quot;&gt;
+     *       &lt;resources encoding=&quot;UTF-8&quot; /&gt;
+     *     &lt;/settings&gt;
+     *     &lt;project name=&quot;test&quot; /&gt;
+     *     &lt;classpath&gt;
+     *       &lt;library pathref=&quot;missing&quot; /&gt;
+     *     &lt;/classpath&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteInParallelWithErrorProperty() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        eclipse.setParallel(true);
+        eclipse.setFailOnError(false);
+        eclipse.setErrorProperty("failed");
+        SettingsElement settings = new SettingsElement();
+        settings.setDeterministic(true);
+        settings.createResources().setEncoding("UTF-8");
+        eclipse.setSettings(settings);
+        ProjectElement project = new ProjectElement();
+        project.setName("test");
+        eclipse.setProject(project);
+        eclipse.setClassPath(new ClassPathElement());
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        eclipse.getClassPath().createLibrary().setPathRef(
+                new Reference(task.getProject(), "missing"));
+        MemoryLogListener logListener = new MemoryLogListener(Project.MSG_ERR);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertEquals("true", task.getProject().getProperty("failed"));
+        assertEquals("ERROR   Reference missing not found.\n", logListener.getLog());
+        assertEquals("eclipse.preferences.version=1\n" + "encoding/<project>=UTF-8\n",
+                streamToString(output.openPreferences(OrgEclipseCoreResourcesPreferencesElement
+                        .getPackageName())));
+        assertTrue(streamToString(output.openProject()).indexOf("<name>test</name>") > 0);
+
+        eclipse.setFailOnError(true);
+        try {
+            new EclipseTaskTester(output).execute();
+            fail("The missing reference should have failed the task.");
+        } catch (BuildException exception) {
+            assertEquals("Reference missing not found.", exception.getMessage());
+        }
+    }
+
+    /**
+     * Tests executing the task with the following configuration, first into memory only,
+     * then with a batch written by two threads:
+     * 
+     * <pre>
+     *   &lt;eclipse buffered=&quot;true&quot; flushthreads=&quot;2&quot;&gt;
+     *     &lt;settings deterministic=&quot;true&quot;&gt;
+     *       &lt;resources encoding=&quot;UTF-8&quot; /&gt;
+     *     &lt;/settings&gt;
+     *     &lt;project name=&quot;test&quot; /&gt;
+     *     &lt;classpath /&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteBuffered() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        SettingsElement settings = new SettingsElement();
+        settings.setDeterministic(true);
+        settings.createResources().setEncoding("UTF-8");
+        eclipse.setSettings(settings);
+        ProjectElement project = new ProjectElement();
+        project.setName("test");
+        eclipse.setProject(project);
+        eclipse.setClassPath(new ClassPathElement());
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        BufferingEclipseOutput buffer = new BufferingEclipseOutput(task, null);
+        task = new EclipseTaskTester(buffer);
+        task.execute();
+        assertEquals(3, buffer.getPendingFiles());
+        assertEquals("eclipse.preferences.version=1\n" + "encoding/<project>=UTF-8\n",
+                streamToString(buffer.openPreferences(OrgEclipseCoreResourcesPreferencesElement
+                        .getPackageName())));
+        assertTrue(streamToString(buffer.openProject()).indexOf("<name>test</name>") > 0);
+        assertNull(output.openProject());
+
+        eclipse.setBuffered(true);
+        eclipse.setFlushThreads(2);
+        new EclipseTaskTester(output).execute();
+        assertEquals("eclipse.preferences.version=1\n" + "encoding/<project>=UTF-8\n",
+                streamToString(output.openPreferences(OrgEclipseCoreResourcesPreferencesElement
+                        .getPackageName())));
+        assertEquals(streamToString(buffer.openProject()), streamToString(output.openProject()));
+        assertEquals(streamToString(buffer.openClassPath()), streamToString(output
+                .openClassPath()));
+    }
+
+    /**
+     * Tests executing the task with the following configuration, which fails to
+     * generate the classpath but writes the other buffered files:
+     * 
+     * <pre>
+     *   &lt;eclipse buffered=&quot;true&quot; failonerror=&quot;false&quot;&gt;
+     *     &lt;settings deterministic=&quot;true&quot;&gt;
+     *       &lt;resources encoding=&quot;UTF-8&quot; /&gt;
+     *     &lt;/settings&gt;
+     *     &lt;project name=&quot;test&quot; /&gt;
+     *     &lt;classpath&gt;
+     *       &lt;library pathref=&quot;missing&quot; /&gt;
+     *     &lt;/classpath&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteBufferedWithError() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        eclipse.setBuffered(true);
+        eclipse.setFailOnError(false);
+        SettingsElement settings = new SettingsElement();
+        settings.setDeterministic(true);
+        settings.createResources().setEncoding("UTF-8");
+        eclipse.setSettings(settings);
+        ProjectElement project = new ProjectElement();
+        project.setName("test");
+        eclipse.setProject(project);
+        eclipse.setClassPath(new ClassPathElement());
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        eclipse.getClassPath().createLibrary().setPathRef(
+                new Reference(task.getProject(), "missing"));
+        MemoryLogListener logListener = new MemoryLogListener(Project.MSG_ERR);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertEquals("ERROR   Reference missing not found.\n", logListener.getLog());
+        assertEquals("eclipse.preferences.version=1\n" + "encoding/<project>=UTF-8\n",
+                streamToString(output.openPreferences(OrgEclipseCoreResourcesPreferencesElement
+                        .getPackageName())));
+        assertTrue(streamToString(output.openProject()).indexOf("<name>test</name>") > 0);
+        assertNull(output.openClassPath());
+    }
+
+    /**
+     * Tests flushing the buffered files into a target output, which fails to write the
+     * file .project; the other files are written and the target output is closed:
+     * 
+     * <pre>
+     *   &lt;eclipse&gt;
+     *     &lt;settings deterministic=&quot;true&quot;&gt;
+     *       &lt;resources encoding=&quot;UTF-8&quot; /&gt;
+     *     &lt;/settings&gt;
+     *     &lt;project name=&quot;test&quot; /&gt;
+     *     &lt;classpath /&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteBufferedWithFailedFile() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        SettingsElement settings = new SettingsElement();
+        settings.setDeterministic(true);
+        settings.createResources().setEncoding("UTF-8");
+        eclipse.setSettings(settings);
+        ProjectElement project = new ProjectElement();
+        project.setName("test");
+        eclipse.setProject(project);
+        eclipse.setClassPath(new ClassPathElement());
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+        final boolean[] closed = new boolean[1];
+        EclipseOutput target = new ForwardingEclipseOutput(eclipse, output) {
+
+            @Override
+            OutputStream createProject() {
+                throw new BuildException("The project cannot be written.");
+            }
+
+            @Override
+            void close() {
+                closed[0] = true;
+            }
+        };
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        task = new EclipseTaskTester(new BufferingEclipseOutput(task, target));
+        try {
+            task.execute();
+            fail("The failed file should have failed the task.");
+        } catch (BuildException exception) {
+            assertEquals("The project cannot be written.", exception.getMessage());
+        }
+        assertTrue(closed[0]);
+        assertEquals("eclipse.preferences.version=1\n" + "encoding/<project>=UTF-8\n",
+                streamToString(output.openPreferences(OrgEclipseCoreResourcesPreferencesElement
+                        .getPackageName())));
+        assertNull(output.openProject());
+        assertNotNull(output.openClassPath());
+    }
+
+    /**
+     * Tests executing the task with the following configuration:
+     * 
+     * <pre>
+     *   &lt;eclipse timingprefix=&quot;timing&quot; timingreport=&quot;...&quot;&gt;
+     *     &lt;settings&gt;
+     *       &lt;resources encoding=&quot;UTF-8&quot; /&gt;
+     *     &lt;/settings&gt;
+     *     &lt;project name=&quot;test&quot; /&gt;
+     *     &lt;classpath&gt;
+     *       &lt;source path=&quot;src&quot; /&gt;
+     *     &lt;/classpath&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteWithTiming() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        SettingsElement settings = new SettingsElement();
+        settings.createResources().setEncoding("UTF-8");
+        eclipse.setSettings(settings);
+        ProjectElement project = new ProjectElement();
+        project.setName("test");
+        eclipse.setProject(project);
+        eclipse.setClassPath(new ClassPathElement());
+        eclipse.getClassPath().createSource().setPath("src");
+        eclipse.setTimingPrefix("timing");
+        File report = File.createTempFile("timing", ".json");
+        eclipse.setTimingReport(report);
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        try {
+            task.execute();
+            Project ant = task.getProject();
+            assertNotNull(ant.getProperty("timing.total.ms"));
+            assertNotNull(ant.getProperty("timing.discovery.ms"));
+            assertNotNull(ant.getProperty("timing.rendering.ms"));
+            assertEquals("3", ant.getProperty("timing.files"));
+            assertEquals("3", ant.getProperty("timing.entries"));
+            assertEquals("2", ant.getProperty("timing.variables"));
+            int bytes = output.openProject().available() + output.openClassPath().available()
+                    + output.openPreferences(OrgEclipseCoreResourcesPreferencesElement
+                            .getPackageName()).available();
+            assertEquals(Integer.toString(bytes), ant.getProperty("timing.bytes"));
+            String json = streamToString(new FileInputStream(report));
+            assertTrue(json, json.indexOf("\"module\": \"test\"") > 0);
+            assertTrue(json, json.indexOf("\"files\": 3") > 0);
+            assertTrue(json, json.matches("(?s).*\"rendering\": \\{ \"ms\": \\d+, \"count\": 2 \\}.*"));
+        } finally {
+            report.delete();
+        }
+    }
+
+    /**
+     * Tests executing the task with the following configuration, timing the source
+     * discovery of a streamed classpath:
+     * 
+     * <pre>
+     *   &lt;eclipse timingreport=&quot;timing.json&quot;&gt;
+     *     &lt;classpath streaming=&quot;true&quot;&gt;
+     *       &lt;library path=&quot;lib/a.jar:lib/b.jar&quot; /&gt;
+     *     &lt;/classpath&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteWithTimingOfStreamedClassPath() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        eclipse.setClassPath(new ClassPathElement());
+        eclipse.getClassPath().setStreaming(true);
+        eclipse.getClassPath().createLibrary().setPath("lib/a.jar:lib/b.jar");
+        File report = File.createTempFile("timing", ".json");
+        eclipse.setTimingReport(report);
+
+        EclipseTaskTester task = new EclipseTaskTester(new MemoryEclipseOutput(eclipse));
+        try {
+            task.execute();
+            String json = streamToString(new FileInputStream(report));
+            assertTrue(json, json.matches("(?s).*\"discovery\": \\{ \"ms\": \\d+, \"count\": 2 \\}.*"));
+            assertTrue(json, json.matches("(?s).*\"rendering\": \\{ \"ms\": \\d+, \"count\": 1 \\}.*"));
+        } finally {
+            report.delete();
+        }
+    }
+
+    /**
+     * Tests executing the task with the following configuration, writing the files with
+     * preferences by three threads:
+     * 
+     * <pre>
+     *   &lt;eclipse settingsthreads=&quot;3&quot;&gt;
+     *     &lt;settings deterministic=&quot;true&quot;&gt;
+     *       &lt;general name=&quot;org.example.plugin0&quot;&gt;
+     *         &lt;variable name=&quot;org.example.plugin0.option&quot; value=&quot;0&quot; /&gt;
+     *       &lt;/general&gt;
+     *       ...
+     *       &lt;general name=&quot;org.example.plugin4&quot;&gt;
+     *         &lt;variable name=&quot;org.example.plugin4.option&quot; value=&quot;4&quot; /&gt;
+     *       &lt;/general&gt;
+     *     &lt;/settings&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteWithSettingsThreads() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        eclipse.setSettingsThreads(3);
+        SettingsElement settings = new SettingsElement();
+        settings.setDeterministic(true);
+        for (int i = 0; i != 5; ++i) {
+            GeneralPreferencesElement preferences = settings.createGeneral();
+            preferences.setName("org.example.plugin" + i);
+            VariableElement variable = preferences.createVariable();
+            variable.setName("org.example.plugin" + i + ".option");
+            variable.setValue(Integer.toString(i));
+        }
+        eclipse.setSettings(settings);
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        MemoryLogListener logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        String log = logListener.getLog();
+        for (int i = 0, last = -1; i != 5; ++i) {
+            int next = log.indexOf("Writing the preferences for \"org.example.plugin" + i
+                    + "\".");
+            assertTrue(log, next > last);
+            last = next;
+            assertEquals("eclipse.preferences.version=1\n" + "org.example.plugin" + i
+                    + ".option=" + i + "\n", streamToString(output
+                    .openPreferences("org.example.plugin" + i)));
+        }
+    }
+
+    /**
+     * Tests executing the task with the following configuration, merging the variables
+     * into a file with preferences changed in Eclipse:
+     * 
+     * <pre>
+     *   &lt;eclipse&gt;
+     *     &lt;settings merge=&quot;true&quot;&gt;
+     *       &lt;resources encoding=&quot;UTF-8&quot; /&gt;
+     *     &lt;/settings&gt;
+     *   &lt;/eclipse&gt;
+     * </pre>
+     * 
+     * @throws Exception
+     *         If the task execution fails.
+     */
+    public void testExecuteWithMergedSettingsElement() throws Exception {
+        EclipseElement eclipse = new EclipseElement();
+        SettingsElement settings = new SettingsElement();
+        settings.setMerge(true);
+        settings.createResources().setEncoding("UTF-8");
+        eclipse.setSettings(settings);
+        MemoryEclipseOutput output = new MemoryEclipseOutput(eclipse);
+        String name = OrgEclipseCoreResourcesPreferencesElement.getPackageName();
+        OutputStream stream = output.createPreferences(name);
+        stream.write(("#Sat Oct 17 10:00:00 CEST 2026\n" + "eclipse.preferences.version=1\n"
+                + "encoding//src/main=ISO-8859-1\n" + "encoding/<project>=Cp1252\n")
+                .getBytes("UTF-8"));
+        stream.close();
+
+        EclipseTaskTester task = new EclipseTaskTester(output);
+        MemoryLogListener logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        String merged = "#Sat Oct 17 10:00:00 CEST 2026\n" + "eclipse.preferences.version=1\n"
+                + "encoding//src/main=ISO-8859-1\n" + "encoding/<project>=UTF-8\n";
+        assertEquals(merged, streamToString(output.openPreferences(name)));
+        assertTrue(logListener.getLog(), logListener.getLog().indexOf(
+                "Merging the preferences for \"" + name + "\".") >= 0);
+
+        task = new EclipseTaskTester(output);
+        logListener = new MemoryLogListener(Project.MSG_INFO);
+        task.getProject().addBuildListener(logListener);
+        task.execute();
+        assertEquals(merged, streamToString(output.openPreferences(name)));
+        assertTrue(logListener.getLog(), logListener.getLog().indexOf(
+                "The preferences for \"" + name + "\" are up-to-date.") >= 0);
+    }
+
     private String streamToString(InputStream input) throws IOException {
         InputStreamReader reader = new InputStreamReader(input, "UTF-8");
         StringBuffer content = new StringBuffer();
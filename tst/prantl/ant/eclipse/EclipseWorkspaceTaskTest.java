@@ -0,0 +1,485 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.DirSet;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EclipseWorkspaceTaskTest {
+
+  private File workspace;
+
+  private Project project;
+
+  @Before
+  public void setUp() throws IOException {
+    workspace = File.createTempFile("workspace", "");
+    assertTrue(workspace.delete() && workspace.mkdir());
+    File lib = new File(workspace, "lib");
+    assertTrue(lib.mkdir());
+    assertTrue(new File(lib, "shared.jar").createNewFile());
+    assertTrue(new File(lib, "shared-sources.jar").createNewFile());
+    project = new Project();
+    project.setBaseDir(workspace);
+    project.setProperty("lib.dir", lib.getAbsolutePath());
+    Path shared = new Path(project);
+    shared.setPath(new File(lib, "shared.jar").getAbsolutePath());
+    project.addReference("shared.classpath", shared);
+  }
+
+  @After
+  public void tearDown() {
+    delete(workspace);
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null)
+      for (int i = 0; i != files.length; ++i)
+        delete(files[i]);
+    file.delete();
+  }
+
+  @Test
+  public void testGeneratesAllModules() throws IOException {
+    for (int i = 0; i != 5; ++i)
+      createModule("module" + i, "classpath.source=src\n" + "classpath.output=bin\n"
+          + "classpath.library=lib/own.jar\n" + "classpath.variable.pathref=shared.classpath\n"
+          + "classpath.variable.sourcepattern=sources\n" + "settings.deterministic=true\n"
+          + "settings.org.eclipse.core.resources=resources.properties\n");
+
+    execute(createTask(3));
+
+    for (int i = 0; i != 5; ++i) {
+      File module = new File(workspace, "module" + i);
+      String project = read(new File(module, ".project"));
+      assertTrue(project, project.contains("<name>module" + i + "</name>"));
+      String classPath = read(new File(module, ".classpath"));
+      assertTrue(classPath, classPath.contains("<classpathentry kind=\"lib\" path=\"lib/own.jar\" />"));
+      assertTrue(classPath, classPath.contains("sourcepath=\"" + new File(workspace, "lib/shared-sources.jar").getAbsolutePath()));
+      assertEquals("eclipse.preferences.version=1\nencoding/<project>=UTF-8\n", read(new File(module,
+          ".settings/org.eclipse.core.resources.prefs")));
+    }
+  }
+
+  @Test
+  public void testReadsNumberedEntriesAndKnownPreferences() throws IOException {
+    createModule("module", "classpath.source=src\n" + "classpath.library=lib/own.jar\n"
+        + "classpath.library.10=lib/tenth.jar\n" + "classpath.library.2=lib/second.jar\n"
+        + "classpath.library.2.exported=true\n" + "classpath.variable.1.pathref=shared.classpath\n"
+        + "settings.deterministic=true\n" + "settings.org.eclipse.jdt.core=core.properties\n");
+    File module = new File(workspace, "module");
+    write(new File(module, "core.properties"), "org.eclipse.jdt.core.compiler.compliance=1.8\n");
+
+    execute(createTask(1));
+
+    String classPath = read(new File(module, ".classpath"));
+    int own = classPath.indexOf("<classpathentry kind=\"lib\" path=\"lib/own.jar\" />");
+    int second = classPath.indexOf("<classpathentry kind=\"lib\" path=\"lib/second.jar\" exported=\"true\" />");
+    int tenth = classPath.indexOf("<classpathentry kind=\"lib\" path=\"lib/tenth.jar\" />");
+    assertTrue(classPath, own >= 0 && second > own && tenth > second);
+    assertTrue(classPath, classPath.contains("shared.jar"));
+    String core = read(new File(module, ".settings/org.eclipse.jdt.core.prefs"));
+    assertTrue(core, core.contains("org.eclipse.jdt.core.compiler.source=1.8\n"));
+  }
+
+  @Test
+  public void testRejectsPathWithPathRef() throws IOException {
+    createModule("module", "classpath.library=lib/own.jar\n"
+        + "classpath.library.pathref=shared.classpath\n");
+    EclipseWorkspaceTask task = createTask(1);
+    try {
+      execute(task);
+      fail("The path with the reference should have failed the build.");
+    } catch (BuildException exception) {
+      assertEquals("Generating 1 of 1 modules failed.", exception.getMessage());
+    }
+    assertFalse(new File(workspace, "module/.classpath").exists());
+  }
+
+  @Test
+  public void testReportsFailedModules() throws IOException {
+    createModule("good", "classpath.source=src\n");
+    createModule("bad", "classpath.variable.pathref=missing.classpath\n");
+    EclipseWorkspaceTask task = createTask(2);
+    try {
+      execute(task);
+      fail("The missing reference should have failed the build.");
+    } catch (BuildException exception) {
+      assertEquals("Generating 1 of 2 modules failed.", exception.getMessage());
+    }
+    assertTrue(new File(workspace, "good/.classpath").isFile());
+
+    task.setFailOnError(false);
+    task.setErrorProperty("workspace.failed");
+    execute(task);
+    assertEquals("true", project.getProperty("workspace.failed"));
+  }
+
+  @Test
+  public void testLogsModulesOneByOneInSubprojects() throws IOException {
+    for (int i = 0; i != 8; ++i)
+      createModule("module" + i, "classpath.source=src\n" + "classpath.library=lib/own.jar\n");
+    project.setUserProperty("workspace.user", "inherited");
+    final AtomicInteger logging = new AtomicInteger();
+    final AtomicInteger overlaps = new AtomicInteger();
+    final Set<String> properties = new TreeSet<String>();
+    project.addBuildListener(new DefaultLogger() {
+
+      @Override
+      public void messageLogged(BuildEvent event) {
+        if (logging.incrementAndGet() != 1)
+          overlaps.incrementAndGet();
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+        }
+        if (event.getProject() != project)
+          properties.add(event.getProject().getProperty("workspace.user") + ","
+              + (event.getProject().getProperty("java.version") != null));
+        logging.decrementAndGet();
+      }
+    });
+
+    execute(createTask(4));
+
+    assertEquals(0, overlaps.get());
+    assertEquals("[inherited,true]", properties.toString());
+  }
+
+  @Test
+  public void testRefreshesAugmentedPaths() throws IOException {
+    createModule("module", "classpath.library.pathref=shared.classpath\n");
+    execute(createTask(1));
+    File module = new File(workspace, "module");
+    assertFalse(read(new File(module, ".classpath")).contains("added.jar"));
+    // augmenting the path does not change the stamps of its directories
+    ((Path) project.getReference("shared.classpath")).createPathElement().setLocation(
+        new File(workspace, "lib/added.jar"));
+
+    EclipseWorkspaceTask task = createTask(1);
+    task.setRefreshPaths(true);
+    execute(task);
+
+    assertTrue(read(new File(module, ".classpath")).contains("lib/added.jar"));
+  }
+
+  @Test
+  public void testReplacesFilesWithoutLeavingTemporaryOnes() throws IOException {
+    createModule("module", "classpath.source=src\n");
+    File module = new File(workspace, "module");
+    write(new File(module, ".project"), "previous");
+    EclipseWorkspaceTask task = createTask(1);
+    task.setSync(true);
+    execute(task);
+
+    String project = read(new File(module, ".project"));
+    assertTrue(project, project.contains("<name>module</name>"));
+    assertTrue(new File(module, ".classpath").isFile());
+    String[] files = module.list();
+    for (int i = 0; i != files.length; ++i)
+      assertFalse(files[i], files[i].endsWith(".tmp"));
+  }
+
+  @Test
+  public void testGeneratesAllModulesInBatch() throws IOException {
+    for (int i = 0; i != 4; ++i)
+      createModule("module" + i, "classpath.source=src\n"
+          + "settings.org.eclipse.core.resources=resources.properties\n");
+    createModule("bad", "classpath.variable.pathref=missing.classpath\n");
+    EclipseWorkspaceTask task = createTask(2);
+    task.setBatch(true);
+    task.setFailOnError(false);
+    execute(task);
+
+    for (int i = 0; i != 4; ++i) {
+      File module = new File(workspace, "module" + i);
+      String project = read(new File(module, ".project"));
+      assertTrue(project, project.contains("<name>module" + i + "</name>"));
+      assertTrue(new File(module, ".classpath").isFile());
+      assertTrue(new File(module, ".settings/org.eclipse.core.resources.prefs").isFile());
+    }
+    assertFalse(new File(workspace, "bad/.project").exists());
+  }
+
+  @Test
+  public void testGeneratesModulesIntoArchives() throws IOException {
+    for (int i = 0; i != 3; ++i)
+      createModule("modules/module" + i, "classpath.source=src\n"
+          + "settings.org.eclipse.core.resources=resources.properties\n");
+    File zip = new File(workspace, "out/metadata.zip");
+    EclipseWorkspaceTask task = createTask(2);
+    task.setArchive(zip);
+    execute(task);
+
+    Set<String> names = new TreeSet<String>();
+    ZipFile archive = new ZipFile(zip);
+    try {
+      for (Enumeration<? extends ZipEntry> entries = archive.entries(); entries.hasMoreElements();)
+        names.add(entries.nextElement().getName());
+      String project = read(archive.getInputStream(archive.getEntry("modules/module1/.project")));
+      assertTrue(project, project.contains("<name>module1</name>"));
+    } finally {
+      archive.close();
+    }
+    assertEquals(9, names.size());
+    assertTrue(names.toString(), names.contains("modules/module0/.settings/org.eclipse.core.resources.prefs"));
+    assertTrue(names.toString(), names.contains("modules/module2/.classpath"));
+    assertFalse(new File(workspace, "modules/module0/.project").exists());
+
+    File tar = new File(workspace, "out/metadata.tar.gz");
+    task.setArchive(tar);
+    execute(task);
+
+    names.clear();
+    TarInputStream input = new TarInputStream(new GZIPInputStream(new FileInputStream(tar)));
+    try {
+      for (TarEntry entry; (entry = input.getNextEntry()) != null;) {
+        names.add(entry.getName());
+        if (entry.getName().equals("modules/module2/.settings/org.eclipse.core.resources.prefs"))
+          assertEquals("encoding/<project>=UTF-8\n", read(input).replaceFirst("^#.*\n", "")
+              .replaceFirst("eclipse.preferences.version=1\n", ""));
+      }
+    } finally {
+      input.close();
+    }
+    assertEquals(9, names.size());
+    assertTrue(names.toString(), names.contains("modules/module0/.project"));
+  }
+
+  @Test
+  public void testPlacesArchiveEntriesUnderTheDestinationDirectory() throws IOException {
+    createModule("modules/module0", "destdir=eclipse\nclasspath.source=src\n");
+    File zip = new File(workspace, "out/metadata.zip");
+    EclipseWorkspaceTask task = createTask(1);
+    task.setArchive(zip);
+    execute(task);
+
+    ZipFile archive = new ZipFile(zip);
+    try {
+      assertNotNull(archive.getEntry("modules/module0/eclipse/.project"));
+      assertNotNull(archive.getEntry("modules/module0/eclipse/.classpath"));
+      assertNull(archive.getEntry("modules/module0/.project"));
+    } finally {
+      archive.close();
+    }
+  }
+
+  @Test
+  public void testDiscardedArchiveEntryIsNotWritten() throws IOException {
+    File zip = new File(workspace, "out/metadata.zip");
+    ArchiveEclipseOutput.Archive archive = new ArchiveEclipseOutput.Archive(zip);
+    ArchiveEclipseOutput output = new ArchiveEclipseOutput(new EclipseElement(), archive,
+        "module");
+    OutputStream stream = output.createClassPath();
+    stream.write("<classpath>".getBytes("UTF-8"));
+    EclipseOutput.discard(stream);
+    stream = output.createProject();
+    stream.write("<projectDescription />".getBytes("UTF-8"));
+    stream.close();
+    archive.close();
+    assertEquals(1, archive.getEntries());
+
+    ZipFile file = new ZipFile(zip);
+    try {
+      assertNull(file.getEntry("module/.classpath"));
+      assertNotNull(file.getEntry("module/.project"));
+    } finally {
+      file.close();
+    }
+  }
+
+  @Test
+  public void testWatchesModulesForChanges() throws Exception {
+    createModule("module", "classpath.library.pathref=watched.classpath\n"
+        + "settings.org.eclipse.core.resources=resources.properties\n");
+    File module = new File(workspace, "module");
+    File libs = new File(module, "libs");
+    assertTrue(libs.mkdir());
+    assertTrue(new File(libs, "a.jar").createNewFile());
+    Path watched = new Path(project);
+    FileSet jars = new FileSet();
+    jars.setDir(libs);
+    jars.setIncludes("*.jar");
+    watched.addFileset(jars);
+    project.addReference("watched.classpath", watched);
+    final EclipseWorkspaceTask task = createTask(1);
+    task.setWatch(true);
+    task.setWatchInterval(20);
+    task.setWatchTimeout(3000);
+    final Exception[] failure = new Exception[1];
+    Thread watching = new Thread() {
+
+      public void run() {
+        try {
+          execute(task);
+        } catch (Exception exception) {
+          failure[0] = exception;
+        }
+      }
+    };
+    watching.start();
+    File classPath = new File(module, ".classpath");
+    File preferences = new File(module, ".settings/org.eclipse.core.resources.prefs");
+    waitFor(classPath, "a.jar");
+    assertTrue(read(classPath), read(classPath).contains("a.jar"));
+
+    // the stamps are moved forward not to depend on the resolution of the file time
+    assertTrue(new File(libs, "b.jar").createNewFile());
+    assertTrue(libs.setLastModified(libs.lastModified() + 2000));
+    write(new File(module, "resources.properties"), "encoding/<project>=ISO-8859-1\n");
+    assertTrue(new File(module, "resources.properties").setLastModified(
+        System.currentTimeMillis() + 2000));
+    waitFor(classPath, "b.jar");
+    waitFor(preferences, "ISO-8859-1");
+    watching.join();
+    if (failure[0] != null)
+      throw failure[0];
+  }
+
+  @Test
+  public void testSharesProfileAmongModules() throws IOException {
+    SettingsElement common = new SettingsElement();
+    common.setDeterministic(true);
+    common.createJdtCore().setCompilerCompliance("1.8");
+    common.createResources().setEncoding("ISO-8859-1");
+    project.addReference("common.settings", common);
+    for (int i = 0; i != 3; ++i)
+      createModule("module" + i, "classpath.source=src\n" + "settings.deterministic=true\n"
+          + "settings.profile=common.settings\n"
+          + (i == 0 ? "settings.org.eclipse.core.resources=resources.properties\n" : ""));
+
+    execute(createTask(3));
+
+    String core = read(new File(workspace, "module0/.settings/org.eclipse.jdt.core.prefs"));
+    assertTrue(core, core.contains("org.eclipse.jdt.core.compiler.source=1.8\n"));
+    for (int i = 1; i != 3; ++i) {
+      File module = new File(workspace, "module" + i);
+      assertEquals(core, read(new File(module, ".settings/org.eclipse.jdt.core.prefs")));
+      assertEquals("eclipse.preferences.version=1\nencoding/<project>=ISO-8859-1\n",
+          read(new File(module, ".settings/org.eclipse.core.resources.prefs")));
+    }
+    assertEquals("eclipse.preferences.version=1\nencoding/<project>=UTF-8\n",
+        read(new File(workspace, "module0/.settings/org.eclipse.core.resources.prefs")));
+  }
+
+  @Test
+  public void testWritesProfileInTheOrderOfTheModule() throws IOException {
+    for (int i = 0; i != 2; ++i) {
+      SettingsElement common = new SettingsElement();
+      common.setDeterministic(i == 0);
+      GeneralPreferencesElement general = common.createGeneral();
+      general.setName("org.example");
+      VariableElement variable = general.createVariable();
+      variable.setName("org.example.z");
+      variable.setValue("1");
+      variable = general.createVariable();
+      variable.setName("org.example.a");
+      variable.setValue("2");
+      project.addReference("common" + i + ".settings", common);
+      createModule("sorted" + i, "classpath.source=src\n" + "settings.deterministic=true\n"
+          + "settings.profile=common" + i + ".settings\n");
+      createModule("unsorted" + i, "classpath.source=src\n"
+          + "settings.profile=common" + i + ".settings\n");
+    }
+
+    execute(createTask(2));
+
+    for (int i = 0; i != 2; ++i) {
+      assertEquals("eclipse.preferences.version=1\norg.example.a=2\norg.example.z=1\n",
+          read(new File(workspace, "sorted" + i + "/.settings/org.example.prefs")));
+      String unsorted = read(new File(workspace, "unsorted" + i + "/.settings/org.example.prefs"));
+      assertTrue(unsorted, unsorted.startsWith("#")
+          && unsorted.contains("\norg.example.z=1\norg.example.a=2\n"));
+    }
+  }
+
+  private static void waitFor(File file, String text) throws Exception {
+    for (int i = 0; i != 200; ++i) {
+      if (file.isFile() && read(file).contains(text))
+        return;
+      Thread.sleep(10);
+    }
+    fail("The file \"" + file + "\" does not contain \"" + text + "\".");
+  }
+
+  private EclipseWorkspaceTask createTask(int threads) {
+    EclipseWorkspaceTask task = new EclipseWorkspaceTask();
+    task.setProject(project);
+    task.setThreads(threads);
+    task.setUpdateAlways(true);
+    DirSet modules = new DirSet();
+    modules.setDir(workspace);
+    modules.setIncludes("*,modules/*");
+    task.addDirSet(modules);
+    return task;
+  }
+
+  private void execute(EclipseWorkspaceTask task) {
+    task.execute();
+  }
+
+  private void createModule(String name, String descriptor) throws IOException {
+    File module = new File(workspace, name);
+    assertTrue(module.mkdirs());
+    write(new File(module, EclipseWorkspaceTask.DEFAULT_DESCRIPTOR), descriptor);
+    write(new File(module, "resources.properties"), "encoding/<project>=UTF-8\n");
+  }
+
+  private static void write(File file, String content) throws IOException {
+    OutputStream output = new FileOutputStream(file);
+    try {
+      output.write(content.getBytes("ISO-8859-1"));
+    } finally {
+      output.close();
+    }
+  }
+
+  private static String read(File file) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      return read(input);
+    } finally {
+      input.close();
+    }
+  }
+
+  private static String read(InputStream input) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int length; (length = input.read(buffer)) != -1;)
+      content.write(buffer, 0, length);
+    return content.toString("UTF-8");
+  }
+}
@@ -0,0 +1,126 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileEclipseOutputTest {
+
+  private static final String PREVIOUS = "<classpath />";
+
+  private File directory;
+
+  private File classPath;
+
+  private Project project;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("output", "");
+    assertTrue(directory.delete() && directory.mkdir());
+    classPath = new File(directory, ".classpath");
+    OutputStream output = new FileOutputStream(classPath);
+    try {
+      output.write(PREVIOUS.getBytes("UTF-8"));
+    } finally {
+      output.close();
+    }
+    project = new Project();
+    project.setBaseDir(directory);
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    for (int i = 0; i != files.length; ++i)
+      files[i].delete();
+    directory.delete();
+  }
+
+  @Test
+  public void testDiscardedFileKeepsPreviousContent() throws IOException {
+    EclipseTask task = new EclipseTask();
+    task.setProject(project);
+    OutputStream stream = new FileEclipseOutput(task).createClassPath();
+    stream.write("<classpath>".getBytes("UTF-8"));
+    EclipseOutput.discard(stream);
+    assertEquals(PREVIOUS, read(classPath));
+    assertEquals(1, directory.list().length);
+  }
+
+  @Test
+  public void testFailedGenerationKeepsPreviousFile() throws IOException {
+    EclipseTask owner = new EclipseTask();
+    owner.setProject(project);
+    FileEclipseOutput output = new FileEclipseOutput(owner) {
+
+      @Override
+      OutputStream createClassPath() {
+        return new FailingOutputStream(super.createClassPath());
+      }
+    };
+    EclipseTask task = new EclipseTask(output);
+    task.setProject(project);
+    task.setUpdateAlways(true);
+    task.createClassPath().createLibrary().setPath("lib/library.jar");
+    try {
+      task.execute();
+      fail("The generation should have failed.");
+    } catch (BuildException exception) {
+      assertTrue(exception.getMessage(), exception.getMessage().indexOf("classpath") > 0);
+    }
+    assertEquals(PREVIOUS, read(classPath));
+    String[] names = directory.list();
+    for (int i = 0; i != names.length; ++i)
+      assertFalse(names[i], names[i].endsWith(".tmp"));
+  }
+
+  private static String read(File file) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      byte[] content = new byte[(int) file.length()];
+      assertEquals(content.length, input.read(content));
+      return new String(content, "UTF-8");
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Writes a half of the first content and fails then, like a full disk.
+   */
+  private static final class FailingOutputStream extends FilterOutputStream implements
+      EclipseOutput.Discardable {
+
+    FailingOutputStream(OutputStream stream) {
+      super(stream);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len / 2);
+      throw new IOException("No space left on device");
+    }
+
+    public void discard() throws IOException {
+      ((EclipseOutput.Discardable) out).discard();
+    }
+
+  }
+
+}
@@ -0,0 +1,115 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MainTest {
+
+  private File module;
+
+  private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  private ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+  @Before
+  public void setUp() throws IOException {
+    module = File.createTempFile("module", "");
+    assertTrue(module.delete() && module.mkdir());
+  }
+
+  @After
+  public void tearDown() {
+    delete(module);
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null)
+      for (int i = 0; i != files.length; ++i)
+        delete(files[i]);
+    file.delete();
+  }
+
+  @Test
+  public void testGeneratesModuleFromDirectory() throws IOException {
+    write(new File(module, EclipseWorkspaceTask.DEFAULT_DESCRIPTOR), "name=${module.name}\n"
+        + "classpath.source=src\n" + "classpath.output=bin\n");
+
+    assertEquals(err.toString(), 0, run("-Dmodule.name=cli", "-quiet", module.getAbsolutePath()));
+    assertTrue(read(new File(module, ".project")).contains("<name>cli</name>"));
+    assertTrue(read(new File(module, ".classpath")).contains("<classpathentry kind=\"src\" path=\"src\" />"));
+  }
+
+  @Test
+  public void testDefinesPathsReferredByDescriptors() throws IOException {
+    write(new File(module, EclipseWorkspaceTask.DEFAULT_DESCRIPTOR), "classpath.output=bin\n"
+        + "classpath.library.pathref=libraries\n");
+    File first = new File(module, "first.jar");
+    File second = new File(module, "second.jar");
+
+    assertEquals(err.toString(), 0, run("-quiet", "-path", "libraries=" + first.getAbsolutePath()
+        + File.pathSeparator + second.getAbsolutePath(), module.getAbsolutePath()));
+    String classPath = read(new File(module, ".classpath"));
+    assertTrue(classPath, classPath.contains("path=\"first.jar\""));
+    assertTrue(classPath, classPath.contains("path=\"second.jar\""));
+    assertEquals(2, run("-path", "=" + first.getAbsolutePath(), module.getAbsolutePath()));
+  }
+
+  @Test
+  public void testReportsInvalidArguments() throws IOException {
+    assertEquals(2, run());
+    assertEquals(2, run("-unknown", module.getAbsolutePath()));
+    assertEquals(2, run("-threads", "0", module.getAbsolutePath()));
+    assertEquals(2, run(new File(module, "missing.properties").getAbsolutePath()));
+    assertTrue(err.toString(), err.toString().contains("missing.properties"));
+    assertEquals(0, run("-help"));
+    assertTrue(out.toString().startsWith("Usage:"));
+  }
+
+  @Test
+  public void testReportsFailedGeneration() throws IOException {
+    write(new File(module, "broken.properties"), "classpath.library.pathref=missing\n");
+
+    assertEquals(1, run(new File(module, "broken.properties").getAbsolutePath()));
+    assertTrue(err.toString(), err.toString().contains("modules failed"));
+  }
+
+  private int run(String... args) {
+    return Main.run(args, new PrintStream(out, true), new PrintStream(err, true));
+  }
+
+  private static void write(File file, String content) throws IOException {
+    OutputStream output = new FileOutputStream(file);
+    try {
+      output.write(content.getBytes("ISO-8859-1"));
+    } finally {
+      output.close();
+    }
+  }
+
+  private static String read(File file) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      for (int length; (length = input.read(buffer)) != -1;)
+        content.write(buffer, 0, length);
+      return content.toString("UTF-8");
+    } finally {
+      input.close();
+    }
+  }
+}
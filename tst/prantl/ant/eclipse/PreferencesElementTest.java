@@ -0,0 +1,112 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.tools.ant.BuildException;
+import org.junit.Test;
+
+public class PreferencesElementTest {
+
+  @Test
+  public void findsVariablesInTheOrderOfDefinition() {
+    GeneralPreferencesElement preferences = new SettingsElement().createGeneral();
+    VariableElement first = preferences.createVariable();
+    first.setName("b");
+    VariableElement second = preferences.createVariable();
+    second.setName("a");
+    assertSame(first, preferences.getVariable("b"));
+    assertSame(second, preferences.getVariable("a"));
+    assertNull(preferences.getVariable("c"));
+    assertSame(first, preferences.getVariables().get(0));
+    assertSame(second, preferences.getVariables().get(1));
+  }
+
+  @Test
+  public void reindexesRenamedVariables() {
+    GeneralPreferencesElement preferences = new SettingsElement().createGeneral();
+    VariableElement variable = preferences.createVariable();
+    variable.setName("a");
+    variable.setName("b");
+    assertNull(preferences.getVariable("a"));
+    assertSame(variable, preferences.getVariable("b"));
+    preferences.createVariable().setName("a");
+  }
+
+  @Test
+  public void rejectsDuplicateVariables() {
+    GeneralPreferencesElement preferences = new SettingsElement().createGeneral();
+    preferences.createVariable().setName("a");
+    try {
+      preferences.createVariable().setName("a");
+      fail();
+    } catch (BuildException exception) {
+      assertEquals("The variable named \"a\" has alredy been defined.", exception.getMessage());
+    }
+    preferences.setVersion("1");
+    try {
+      preferences.createVariable().setName("eclipse.preferences.version");
+      fail();
+    } catch (BuildException exception) {
+      assertEquals("The variable \"eclipse.preferences.version\" cannot be defined as an element"
+          + " if there has been an attribute \"version\" used for the whole preferences.",
+          exception.getMessage());
+    }
+  }
+
+  @Test
+  public void addsJdtCoreDefaultsForTheCompliance() {
+    OrgEclipseJdtCorePreferencesElement preferences = new SettingsElement().createJdtCore();
+    preferences.setCompilerCompliance("8.0");
+    preferences.validate();
+    assertEquals("8.0", preferences.getCompilerCompliance());
+    assertEquals("1.8", preferences.getVariable("org.eclipse.jdt.core.compiler.source").getValue());
+    assertEquals("error", preferences.getVariable("org.eclipse.jdt.core.compiler.problem.enumIdentifier").getValue());
+    preferences = new SettingsElement().createJdtCore();
+    preferences.setCompilerCompliance("17");
+    preferences.validate();
+    assertEquals("17", preferences.getVariable("org.eclipse.jdt.core.compiler.codegen.targetPlatform").getValue());
+  }
+
+  @Test
+  public void rederivesJdtCoreDefaultsOfAnOverriddenCompliance() {
+    SettingsElement common = new SettingsElement();
+    OrgEclipseJdtCorePreferencesElement shared = common.createJdtCore();
+    shared.setCompilerCompliance("1.8");
+    shared.internalCreateVariable("org.eclipse.jdt.core.compiler.codegen.unusedLocal", "optimize out");
+    PreferencesProfile profile = PreferencesProfile.get(common);
+
+    OrgEclipseJdtCorePreferencesElement preferences = new SettingsElement().createJdtCore();
+    preferences.setCompilerCompliance("1.4");
+    preferences.internalCreateVariable("org.eclipse.jdt.core.compiler.source", "1.4");
+    preferences.validateOverride();
+    assertNull(preferences.getVariable("org.eclipse.jdt.core.compiler.codegen.unusedLocal"));
+
+    Map<String, String> merged = new HashMap<String, String>();
+    VariableElement[] variables = profile.merge(preferences);
+    for (int i = 0; i != variables.length; ++i)
+      merged.put(variables[i].getName(), variables[i].getValue());
+    assertEquals("1.4", merged.get("org.eclipse.jdt.core.compiler.compliance"));
+    assertEquals("1.2", merged.get("org.eclipse.jdt.core.compiler.codegen.targetPlatform"));
+    assertEquals("warning", merged.get("org.eclipse.jdt.core.compiler.problem.assertIdentifier"));
+    assertEquals("1.4", merged.get("org.eclipse.jdt.core.compiler.source"));
+    assertEquals("optimize out", merged.get("org.eclipse.jdt.core.compiler.codegen.unusedLocal"));
+  }
+
+  @Test
+  public void listsTheCompliancesInTheirOrder() {
+    OrgEclipseJdtCorePreferencesElement preferences = new SettingsElement().createJdtCore();
+    try {
+      preferences.setCompilerCompliance("1.2");
+      fail();
+    } catch (BuildException exception) {
+      assertTrue(exception.getMessage().endsWith("Valid values are \"1.3\", \"1.4\", \"1.5\", \"5.0\", \"1.6\", \"6.0\", \"1.7\", \"7.0\", \"1.8\", \"8.0\", \"9\", \"10\", \"11\", \"12\", \"13\", \"14\", \"15\", \"16\", \"17\", \"18\", \"19\", \"20\" and \"21\"."));
+    }
+  }
+}
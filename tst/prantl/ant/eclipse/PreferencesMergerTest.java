@@ -0,0 +1,95 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class PreferencesMergerTest {
+
+  private static VariableElement[] createVariables(String... pairs) {
+    GeneralPreferencesElement preferences = new SettingsElement().createGeneral();
+    VariableElement[] variables = new VariableElement[pairs.length / 2];
+    for (int i = 0; i != variables.length; ++i) {
+      variables[i] = preferences.createVariable();
+      variables[i].setName(pairs[2 * i]);
+      variables[i].setValue(pairs[2 * i + 1]);
+    }
+    return variables;
+  }
+
+  private static String merge(String existing, VariableElement[] variables) throws IOException {
+    byte[] content = PreferencesMerger.merge(new ByteArrayInputStream(existing.getBytes("UTF-8")),
+        variables);
+    return content != null ? new String(content, "UTF-8") : null;
+  }
+
+  @Test
+  public void leavesUnchangedContentAlone() throws IOException {
+    assertNull(merge("#Sat Oct 17 10:00:00 CEST 2026\r\neclipse.preferences.version=1\r\n"
+        + "org.eclipse.jdt.core.formatter.lineSplit=120\r\nencoding/<project>=UTF-8\r\n",
+        createVariables("eclipse.preferences.version", "1", "encoding/<project>", "UTF-8")));
+  }
+
+  @Test
+  public void comparesUnescapedValues() throws IOException {
+    assertNull(merge("encoding/<project> \\\n    \\= UTF\\u002D8\n",
+        createVariables("encoding/<project>", "= UTF-8")));
+    assertNull(merge("org.example.path : c\\:\\\\temp\n",
+        createVariables("org.example.path", "c:\\temp")));
+  }
+
+  @Test
+  public void replacesManagedValuesAndKeepsTheRest() throws IOException {
+    assertEquals("#Sat Oct 17 10:00:00 CEST 2026\neclipse.preferences.version=1\n"
+        + "org.eclipse.jdt.core.formatter.lineSplit=120\nencoding/<project>=UTF-8\n"
+        + "org.example.added=yes\n",
+        merge("#Sat Oct 17 10:00:00 CEST 2026\neclipse.preferences.version=1\n"
+            + "org.eclipse.jdt.core.formatter.lineSplit=120\nencoding/<project>=ISO-8859-1\n"
+            + "encoding/<project>=Cp1252\n",
+            createVariables("eclipse.preferences.version", "1", "encoding/<project>", "UTF-8",
+                "org.example.added", "yes")));
+  }
+
+  @Test
+  public void escapesWrittenVariables() throws IOException {
+    assertEquals("org.example.path=c\\:\\\\temp\n" + "org\\ example\\=name=\\ a b\\n\\u00E9\\#\n",
+        merge("", createVariables("org.example.path", "c:\\temp", "org example=name", " a b\n\u00e9#")));
+  }
+
+  @Test
+  public void doesNotContinueComments() throws IOException {
+    assertEquals("# c:\\temp\\\nencoding/<project>=UTF-8\n",
+        merge("# c:\\temp\\\nencoding/<project>=ISO-8859-1\n",
+            createVariables("encoding/<project>", "UTF-8")));
+  }
+
+  @Test
+  public void generatesVariablesReadBackByProperties() throws IOException {
+    VariableElement[] variables = createVariables("org.example.path", "c:\\temp",
+        "org example=name", " a b\n\u00e9#", "org.example.tab", "\tx!", "org.example.key:", "=v");
+    byte[] content = SettingsGenerator.renderVariables(variables.clone(), false);
+    Properties properties = new Properties();
+    properties.load(new ByteArrayInputStream(content));
+    assertEquals(variables.length, properties.size());
+    for (int i = 0; i != variables.length; ++i)
+      assertEquals(variables[i].getValue(), properties.getProperty(variables[i].getName()));
+    String generated = new String(content, "UTF-8");
+    assertTrue(generated, generated.startsWith("org.example.path=c\\:\\\\temp\n"));
+    assertNull(generated, merge(generated, variables));
+  }
+
+  @Test
+  public void mergesItsOwnOutputWithoutChanges() throws IOException {
+    VariableElement[] variables = createVariables("org.example.path", "c:\\temp",
+        "org example=name", " a b\n\u00e9#", "org.example.tab", "\tx!", "encoding/<project>", "UTF-8");
+    String merged = merge("#Sat Oct 17 10:00:00 CEST 2026\nencoding/<project>=ISO-8859-1\n",
+        variables);
+    assertNull(merged, merge(merged, variables));
+  }
+}
@@ -0,0 +1,120 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+import org.apache.tools.ant.types.Reference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResolvedPathCacheTest {
+
+  private File directory;
+
+  private Project project;
+
+  private Reference reference;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("paths", "");
+    assertTrue(directory.delete() && directory.mkdir());
+    assertTrue(new File(directory, "lib").mkdir());
+    assertTrue(new File(directory, "lib/a.jar").createNewFile());
+    project = new Project();
+    project.setBaseDir(directory);
+    Path path = new Path(project);
+    FileSet libraries = new FileSet();
+    libraries.setDir(directory);
+    libraries.setIncludes("**/*.jar");
+    path.addFileset(libraries);
+    project.addReference("libraries", path);
+    reference = new Reference(project, "libraries");
+    ResolvedPathCache.clear();
+  }
+
+  @After
+  public void tearDown() {
+    delete(directory);
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null)
+      for (int i = 0; i != files.length; ++i)
+        delete(files[i]);
+    file.delete();
+  }
+
+  @Test
+  public void testResolvesOnlyOnce() {
+    String[] items = ResolvedPathCache.list(reference, project);
+    assertArrayEquals(new String[] { new File(directory, "lib/a.jar").getAbsolutePath() }, items);
+    assertSame(items, ResolvedPathCache.list(reference, new Project()));
+  }
+
+  @Test
+  public void testAddedLibraryInvalidatesEntry() throws IOException {
+    String[] items = ResolvedPathCache.list(reference, project);
+    File lib = new File(directory, "lib");
+    long stamp = lib.lastModified();
+    assertTrue(new File(lib, "b.jar").createNewFile());
+    // do not depend on the resolution of the file system timestamps
+    assertTrue(lib.setLastModified(stamp + 2000));
+    String[] changed = ResolvedPathCache.list(reference, project);
+    assertNotSame(items, changed);
+    assertEquals(2, changed.length);
+
+    File nested = new File(lib, "nested");
+    assertTrue(nested.mkdir());
+    assertTrue(new File(nested, "c.jar").createNewFile());
+    assertTrue(lib.setLastModified(stamp + 4000));
+    assertEquals(3, ResolvedPathCache.list(reference, project).length);
+  }
+
+  @Test
+  public void testFileAddedToFileSetBaseInvalidatesEntry() throws IOException {
+    String[] items = ResolvedPathCache.list(reference, project);
+    long stamp = directory.lastModified();
+    assertTrue(new File(directory, "top.jar").createNewFile());
+    // the base of the file set is outside of the directories of the listed items
+    assertTrue(directory.setLastModified(stamp + 2000));
+    String[] changed = ResolvedPathCache.list(reference, project);
+    assertNotSame(items, changed);
+    assertEquals(2, changed.length);
+  }
+
+  @Test
+  public void testForgetsOnlyTheReferencedPath() {
+    Path other = new Path(project);
+    other.setPath("lib/a.jar");
+    project.addReference("other", other);
+    Reference otherReference = new Reference(project, "other");
+    String[] items = ResolvedPathCache.list(reference, project);
+    String[] otherItems = ResolvedPathCache.list(otherReference, project);
+    ResolvedPathCache.forget(reference, project);
+    assertNotSame(items, ResolvedPathCache.list(reference, project));
+    assertSame(otherItems, ResolvedPathCache.list(otherReference, project));
+  }
+
+  @Test
+  public void testReplacedPathIsResolvedAgain() {
+    String[] items = ResolvedPathCache.list(reference, project);
+    Path path = new Path(project);
+    path.setPath("lib/b.jar");
+    project.addReference("libraries", path);
+    String[] replaced = ResolvedPathCache.list(reference, project);
+    assertNotSame(items, replaced);
+    assertArrayEquals(new String[] { new File(directory, "lib/b.jar").getAbsolutePath() }, replaced);
+  }
+}
@@ -0,0 +1,84 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SourceDiscoveryCacheTest {
+
+  private File directory;
+
+  private File binary;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("cache", "");
+    assertTrue(directory.delete() && directory.mkdir());
+    assertTrue(new File(directory, "lib").mkdir());
+    binary = new File(directory, "lib/library.jar");
+    assertTrue(binary.createNewFile());
+  }
+
+  @After
+  public void tearDown() {
+    delete(directory);
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null)
+      for (int i = 0; i != files.length; ++i)
+        delete(files[i]);
+    file.delete();
+  }
+
+  @Test
+  public void testStoredResultsSurviveReloading() throws IOException {
+    File file = new File(directory, "sources.cache");
+    SourceDiscoveryCache cache = SourceDiscoveryCache.getInstance(file);
+    assertNull(cache.lookup(binary, "sources"));
+    cache.store(binary, "sources", "sources.jar");
+    cache.store(binary, "src", "");
+    assertTrue(cache.save());
+    assertFalse(cache.save());
+
+    File copy = new File(directory, "copy.cache");
+    assertTrue(file.renameTo(copy));
+    cache = SourceDiscoveryCache.getInstance(copy);
+    assertEquals("sources.jar", cache.lookup(binary, "sources"));
+    assertEquals("", cache.lookup(binary, "src"));
+    assertNull(cache.lookup(binary, "sources,src"));
+  }
+
+  @Test
+  public void testChangedDirectoryEvictsTheEntry() throws IOException {
+    SourceDiscoveryCache cache = SourceDiscoveryCache.getInstance(new File(directory, "sources.cache"));
+    cache.store(binary, "sources", "sources.jar");
+    assertEquals("sources.jar", cache.lookup(binary, "sources"));
+    File library = binary.getParentFile();
+    assertTrue(library.setLastModified(library.lastModified() - 60000));
+    assertNull(cache.lookup(binary, "sources"));
+    assertTrue(library.setLastModified(library.lastModified() + 60000));
+    assertNull(cache.lookup(binary, "sources"));
+  }
+
+  @Test
+  public void testSavingLeavesNoTemporaryFile() throws IOException {
+    File file = new File(directory, "saved.cache");
+    SourceDiscoveryCache cache = SourceDiscoveryCache.getInstance(file);
+    cache.store(binary, "sources", "");
+    assertTrue(cache.save());
+    assertTrue(file.isFile());
+    String[] names = directory.list();
+    for (int i = 0; i != names.length; ++i)
+      assertFalse(names[i], names[i].endsWith(".tmp"));
+  }
+}
@@ -0,0 +1,106 @@
+package prantl.ant.eclipse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+public class XmlWriterTest {
+
+  private static final int ITERATIONS = 100000;
+
+  @Test
+  public void testEscaping() throws IOException {
+    StringWriter output = new StringWriter();
+    XmlWriter writer = new XmlWriter(output);
+    writer.openOpeningTag("entry");
+    writer.appendAttribute("path", "a&b<c>d\"e'f");
+    writer.closeOpeningTag();
+    writer.writeText("a&b<c>d\"e'f");
+    writer.closeElement("entry");
+    writer.close();
+    assertEquals("<entry path=\"a&amp;b&lt;c&gt;d&quot;e&apos;f\">"
+        + "a&amp;b&lt;c&gt;d\"e'f</entry>", output.toString());
+  }
+
+  @Test
+  public void testLongTextCrossesBuffer() throws IOException {
+    StringBuffer text = new StringBuffer();
+    for (int i = 0; i != 5000; ++i)
+      text.append("x&");
+    StringWriter output = new StringWriter();
+    XmlWriter writer = new XmlWriter(output);
+    writer.writeText(text.toString());
+    writer.close();
+    assertEquals(text.toString().replaceAll("&", "&amp;"), output.toString());
+  }
+
+  @Test
+  public void testUtf8Encoding() throws IOException {
+    StringBuffer text = new StringBuffer();
+    // let a surrogate pair cross the end of the internal buffer
+    for (int i = 0; i != 8191; ++i)
+      text.append('a');
+    text.append("\ud834\udd1e \u00e9\u20ac <\ud834\udd1e>");
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    XmlWriter writer = new XmlWriter(output);
+    writer.writeText(text.toString());
+    writer.close();
+    assertArrayEquals(text.toString().replaceAll("<", "&lt;").replaceAll(">", "&gt;")
+        .getBytes("UTF-8"), output.toByteArray());
+  }
+
+  @Test
+  public void testAttributeAllocation() throws IOException {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    XmlWriter writer = new XmlWriter(new NullWriter());
+    String clean = "/usr/share/java/commons-collections-3.2.jar";
+    String escaped = "${lib}/<generated> & \"quoted\" 'names'.jar";
+    // warm up to let the compiler settle and the measurement code load
+    measure(threads, writer, clean);
+    measure(threads, writer, escaped);
+    long cleanBytes = measure(threads, writer, clean);
+    long escapedBytes = measure(threads, writer, escaped);
+    // a few hundred bytes may come from the measurement itself, not the escaping
+    assertTrue("Writing clean attributes allocated " + cleanBytes + " bytes",
+        cleanBytes < ITERATIONS / 100);
+    assertTrue("Writing escaped attributes allocated " + escapedBytes + " bytes",
+        escapedBytes < ITERATIONS / 100);
+  }
+
+  private static long measure(com.sun.management.ThreadMXBean threads,
+      XmlWriter writer, String value) throws IOException {
+    long thread = Thread.currentThread().getId();
+    long start = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i != ITERATIONS; ++i)
+      writer.appendAttribute("path", value);
+    return threads.getThreadAllocatedBytes(thread) - start;
+  }
+
+  private static final class NullWriter extends Writer {
+
+    public void write(char[] buffer, int offset, int length) {
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+    }
+
+  }
+
+}